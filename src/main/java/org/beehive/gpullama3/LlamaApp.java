@@ -12,6 +12,9 @@ import static org.beehive.gpullama3.model.loader.ModelLoader.loadModel;
 public class LlamaApp {
     // Configuration flags for hardware acceleration and optimizations
     public static final boolean USE_VECTOR_API = Boolean.parseBoolean(System.getProperty("llama.VectorAPI", "true"));   // Enable Java Vector API for CPU acceleration
+    public static final String REQUANTIZE = System.getProperty("llama.Requantize", "");   // Requantize F32/F16/BF16 matrices to Q8_0 or Q4_0 at load time (CPU), e.g. -Dllama.Requantize=Q8_0
+    public static final String SAFETENSORS_PATH = System.getProperty("llama.SafeTensors", "");   // Load the weights from a SafeTensors checkpoint (file or directory), metadata and tokenizer from the GGUF file (CPU)
+    public static final String RESIDENCY = System.getProperty("llama.Residency", "");   // Page residency of the mapped weights (CPU): comma-separated prefetch, hugepages, mlock
     public static final boolean SHOW_PERF_INTERACTIVE = Boolean.parseBoolean(System.getProperty("llama.ShowPerfInteractive", "true")); // Show performance metrics in interactive mode
 
     private static void runSingleInstruction(Model model, Sampler sampler, Options options) {
@@ -3,8 +3,12 @@ package org.beehive.gpullama3;
 import java.io.PrintStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
-public record Options(Path modelPath, String prompt, String systemPrompt, String suffix, boolean interactive, float temperature, float topp, long seed, int maxTokens, boolean stream, boolean echo,
+public record Options(Path modelPath, String prompt, String systemPrompt, String suffix, boolean interactive, float temperature, float topp, int topk, float minp,
+                      float repeatPenalty, int repeatLastN, float frequencyPenalty, float presencePenalty, Map<Integer, Float> logitBias, String grammar,
+                      String jsonSchema, long seed, int maxTokens, boolean stream, boolean echo,
                       boolean useTornadovm) {
 
     public static final int DEFAULT_MAX_TOKENS = 1024;
@@ -13,6 +17,11 @@ public record Options(Path modelPath, String prompt, String systemPrompt, String
         require(interactive || prompt != null, "Missing argument: --prompt is required in --instruct mode e.g. --prompt \"Why is the sky blue?\"");
         require(0 <= temperature, "Invalid argument: --temperature must be non-negative");
         require(0 <= topp && topp <= 1, "Invalid argument: --top-p must be within [0, 1]");
+        require(0 <= topk, "Invalid argument: --top-k must be non-negative");
+        require(0 <= minp && minp <= 1, "Invalid argument: --min-p must be within [0, 1]");
+        require(0 < repeatPenalty, "Invalid argument: --repeat-penalty must be positive");
+        require(0 <= repeatLastN, "Invalid argument: --repeat-last-n must be non-negative");
+        require(grammar == null || jsonSchema == null, "Invalid argument: --grammar and --json-schema are mutually exclusive");
     }
 
     static void require(boolean condition, String messageFormat, Object... args) {
@@ -40,6 +49,15 @@ public record Options(Path modelPath, String prompt, String systemPrompt, String
         out.println("  --suffix <string>             suffix for fill-in-the-middle request (Codestral)");
         out.println("  --temperature, -temp <float>  temperature in [0,inf], default 0.1");
         out.println("  --top-p <float>               p value in top-p (nucleus) sampling in [0,1] default 0.95");
+        out.println("  --top-k <int>                 k value in top-k sampling, 0 = disabled, default 0");
+        out.println("  --min-p <float>               p value in min-p sampling in [0,1], 0 = disabled, default 0");
+        out.println("  --repeat-penalty <float>      divide (multiply) the positive (negative) logits of recent tokens, 1 = disabled, default 1");
+        out.println("  --repeat-last-n <int>         number of recent tokens the penalties look at, 0 = disabled, default 64");
+        out.println("  --frequency-penalty <float>   subtracted from a logit per occurrence in the recent tokens, default 0");
+        out.println("  --presence-penalty <float>    subtracted once from the logits of the recent tokens, default 0");
+        out.println("  --logit-bias <token=bias,...> add a bias to the logits of the given token ids, -inf bans a token");
+        out.println("  --grammar <path>              constrain the output to a GBNF grammar (start rule root)");
+        out.println("  --json-schema <path|json>     constrain the output to JSON valid under a JSON schema, {} = any JSON");
         out.println("  --seed <long>                 random seed, default System.nanoTime()");
         out.println("  --max-tokens, -n <int>        number of steps to run for < 0 = limited by context length, default " + DEFAULT_MAX_TOKENS);
         out.println("  --stream <boolean>            print tokens during generation; may cause encoding artifacts for non ASCII text, default true");
@@ -53,6 +71,15 @@ public record Options(Path modelPath, String prompt, String systemPrompt, String
         String suffix = null;
         float temperature = 0.1f;
         float topp = 0.95f;
+        int topk = 0;
+        float minp = 0f;
+        float repeatPenalty = 1f;
+        int repeatLastN = 64;
+        float frequencyPenalty = 0f;
+        float presencePenalty = 0f;
+        Map<Integer, Float> logitBias = Map.of();
+        String grammar = null;
+        String jsonSchema = null;
         Path modelPath = null;
         long seed = System.nanoTime();
         int maxTokens = DEFAULT_MAX_TOKENS;
@@ -61,7 +88,23 @@ public record Options(Path modelPath, String prompt, String systemPrompt, String
         boolean echo = false;
         boolean useTornadoVM = getDefaultTornadoVM();
 
-        return new Options(modelPath, prompt, systemPrompt, suffix, interactive, temperature, topp, seed, maxTokens, stream, echo, useTornadoVM);
+        return new Options(modelPath, prompt, systemPrompt, suffix, interactive, temperature, topp, topk, minp, repeatPenalty, repeatLastN, frequencyPenalty, presencePenalty, logitBias, grammar, jsonSchema, seed, maxTokens, stream, echo, useTornadoVM);
+    }
+
+    /**
+     * Parses {@code token=bias} pairs separated by commas, e.g. {@code 15043=2.5,29871=-inf}.
+     */
+    static Map<Integer, Float> parseLogitBias(String value) {
+        Map<Integer, Float> logitBias = new LinkedHashMap<>();
+        for (String pair : value.split(",")) {
+            String[] parts = pair.trim().split("=", 2);
+            require(parts.length == 2, "Invalid argument: --logit-bias expects token=bias pairs, got %s", pair);
+            int token = Integer.parseInt(parts[0].trim());
+            require(0 <= token, "Invalid argument: --logit-bias token ids must be non-negative, got %s", pair);
+            String bias = parts[1].trim();
+            logitBias.put(token, bias.equalsIgnoreCase("-inf") ? Float.NEGATIVE_INFINITY : Float.parseFloat(bias));
+        }
+        return logitBias;
     }
 
     public static Options parseOptions(String[] args) {
@@ -70,6 +113,15 @@ public record Options(Path modelPath, String prompt, String systemPrompt, String
         String suffix = null;
         float temperature = 0.1f;
         float topp = 0.95f;
+        int topk = 0;
+        float minp = 0f;
+        float repeatPenalty = 1f;
+        int repeatLastN = 64;
+        float frequencyPenalty = 0f;
+        float presencePenalty = 0f;
+        Map<Integer, Float> logitBias = Map.of();
+        String grammar = null;
+        String jsonSchema = null;
         Path modelPath = null;
         long seed = System.nanoTime();
         int maxTokens = DEFAULT_MAX_TOKENS;
@@ -105,6 +157,15 @@ public record Options(Path modelPath, String prompt, String systemPrompt, String
                         case "--suffix" -> suffix = nextArg;
                         case "--temperature", "--temp" -> temperature = Float.parseFloat(nextArg);
                         case "--top-p" -> topp = Float.parseFloat(nextArg);
+                        case "--top-k" -> topk = Integer.parseInt(nextArg);
+                        case "--min-p" -> minp = Float.parseFloat(nextArg);
+                        case "--repeat-penalty" -> repeatPenalty = Float.parseFloat(nextArg);
+                        case "--repeat-last-n" -> repeatLastN = Integer.parseInt(nextArg);
+                        case "--frequency-penalty" -> frequencyPenalty = Float.parseFloat(nextArg);
+                        case "--presence-penalty" -> presencePenalty = Float.parseFloat(nextArg);
+                        case "--logit-bias" -> logitBias = parseLogitBias(nextArg);
+                        case "--grammar" -> grammar = nextArg;
+                        case "--json-schema" -> jsonSchema = nextArg;
                         case "--model", "-m" -> modelPath = Paths.get(nextArg);
                         case "--seed", "-s" -> seed = Long.parseLong(nextArg);
                         case "--max-tokens", "-n" -> maxTokens = Integer.parseInt(nextArg);
@@ -123,6 +184,6 @@ public record Options(Path modelPath, String prompt, String systemPrompt, String
             useTornadovm = getDefaultTornadoVM();
         }
 
-        return new Options(modelPath, prompt, systemPrompt, suffix, interactive, temperature, topp, seed, maxTokens, stream, echo, useTornadovm);
+        return new Options(modelPath, prompt, systemPrompt, suffix, interactive, temperature, topp, topk, minp, repeatPenalty, repeatLastN, frequencyPenalty, presencePenalty, logitBias, grammar, jsonSchema, seed, maxTokens, stream, echo, useTornadovm);
     }
 }
@@ -0,0 +1,181 @@
+package org.beehive.gpullama3;
+
+import org.beehive.gpullama3.model.loader.ModelLoader;
+import org.beehive.gpullama3.tensor.GGMLTensorEntry;
+import org.beehive.gpullama3.tensor.GGMLType;
+import org.beehive.gpullama3.tensor.GGUF;
+import org.beehive.gpullama3.tensor.GGUFWriter;
+import org.beehive.gpullama3.tensor.MetadataValueType;
+import org.beehive.gpullama3.tensor.standard.FloatTensor;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Converts a GGUF model to {@link GGMLType#Q8_0} or {@link GGMLType#Q4_0}, the equivalent of llama.cpp {@code llama-quantize}.
+ * <p>
+ * The input is memory-mapped and every matrix is quantized straight into the memory-mapped output, one tensor after the other, each
+ * over all threads ({@code -Dllama.Threads}). Vectors (norms, biases) are copied unchanged. For Q4_0, {@code output.weight} is
+ * quantized to Q8_0 since the classifier is the most sensitive matrix (llama.cpp uses Q6_K). Already quantized matrices are
+ * copied as they are, unless {@code --allow-requantize} is given; if some of them keep a different quantized type (e.g. K-quants),
+ * {@code general.file_type} stays the input's.
+ */
+public class QuantizeApp {
+
+    private static final int QUANTIZATION_VERSION = 2; // general.quantization_version of the Q4_0/Q8_0 block layouts
+
+    static void printUsage(PrintStream out) {
+        out.println("Usage:  QuantizeApp [options] <input.gguf> <output.gguf> <type>");
+        out.println();
+        out.println("Types:");
+        out.println("  Q8_0, Q4_0");
+        out.println();
+        out.println("Options:");
+        out.println("  --allow-requantize            requantize matrices that are already quantized, e.g. Q8_0 to Q4_0");
+        out.println();
+    }
+
+    /**
+     * Output type of a tensor, the input type when it is copied unchanged.
+     */
+    static GGMLType outputType(GGUF.GGUFTensorInfo ti, GGMLType targetType, boolean allowRequantize) {
+        GGMLType inputType = ti.ggmlType();
+        int[] dimensions = ti.dimensions();
+        if (dimensions.length != 2 || dimensions[0] % targetType.getBlockSize() != 0) {
+            return inputType;
+        }
+        if (ti.name().equals("output.weight") && targetType == GGMLType.Q4_0) {
+            targetType = GGMLType.Q8_0;
+        }
+        return switch (inputType) {
+            case F32, F16, BF16 -> targetType;
+            // only to a smaller type
+            case Q8_0, Q4_0, Q4_K, Q5_K, Q6_K -> allowRequantize && bitsPerWeight(targetType) < bitsPerWeight(inputType) ? targetType : inputType;
+            default -> inputType;
+        };
+    }
+
+    /**
+     * Whether the output is a {@code targetType} model: no matrix keeps a different quantized type, as K-quants do without
+     * {@code --allow-requantize}. Otherwise {@code general.file_type} keeps the input's value so the loader does not pick the
+     * {@code targetType} path for tensors of another type.
+     */
+    static boolean isTargetTypeModel(List<GGUF.GGUFTensorInfo> tensorInfos, GGMLType targetType, boolean allowRequantize) {
+        for (GGUF.GGUFTensorInfo ti : tensorInfos) {
+            GGMLType outputType = outputType(ti, targetType, allowRequantize);
+            boolean classifier = ti.name().equals("output.weight") && targetType == GGMLType.Q4_0;
+            if (ti.dimensions().length == 2 && isQuantized(outputType) && outputType != targetType && !(classifier && outputType == GGMLType.Q8_0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isQuantized(GGMLType type) {
+        return switch (type) {
+            case F32, F16, BF16 -> false;
+            default -> true;
+        };
+    }
+
+    private static double bitsPerWeight(GGMLType type) {
+        return 8.0 * type.getTypeSize() / type.getBlockSize();
+    }
+
+    private static int fileType(GGMLType targetType) {
+        return switch (targetType) {
+            case Q8_0 -> 7; // MOSTLY_Q8_0
+            case Q4_0 -> 2; // MOSTLY_Q4_0
+            default -> throw new IllegalArgumentException("Unsupported quantization type " + targetType);
+        };
+    }
+
+    public static void quantize(Path input, Path output, GGMLType targetType, boolean allowRequantize) throws IOException {
+        if (Files.exists(output) && Files.isSameFile(input, output)) {
+            throw new IllegalArgumentException("Output file must differ from the input file: " + output);
+        }
+        GGUF gguf = GGUF.loadGGUFMetadata(input);
+        List<GGUF.GGUFTensorInfo> tensorInfos = gguf.getTensorInfos().values().stream().sorted(Comparator.comparingLong(GGUF.GGUFTensorInfo::offset)).toList();
+
+        GGUFWriter writer = new GGUFWriter().putAllMetadata(gguf)
+                .putMetadata("general.quantization_version", MetadataValueType.UINT32, QUANTIZATION_VERSION);
+        if (isTargetTypeModel(tensorInfos, targetType, allowRequantize)) {
+            writer.putMetadata("general.file_type", MetadataValueType.UINT32, fileType(targetType));
+        } else {
+            System.out.println("WARNING Some matrices keep their quantized type, general.file_type is copied from the input");
+        }
+        for (GGUF.GGUFTensorInfo ti : tensorInfos) {
+            writer.addTensor(ti.name(), outputType(ti, targetType, allowRequantize), ti.dimensions());
+        }
+
+        try (Arena arena = Arena.ofShared(); GGUFWriter.Output out = writer.create(output)) {
+            FileChannel fileChannel = gguf.getFileChannel();
+            MemorySegment tensorData = fileChannel.map(FileChannel.MapMode.READ_ONLY, gguf.getTensorDataOffset(), fileChannel.size() - gguf.getTensorDataOffset(), arena);
+            long inputBytes = 0;
+            long outputBytes = 0;
+            for (int i = 0; i < tensorInfos.size(); i++) {
+                GGUF.GGUFTensorInfo ti = tensorInfos.get(i);
+                GGMLType inputType = ti.ggmlType();
+                GGMLType outputType = outputType(ti, targetType, allowRequantize);
+                int numberOfElements = FloatTensor.numberOfElements(ti.dimensions());
+                MemorySegment src = tensorData.asSlice(ti.offset(), inputType.byteSizeFor(numberOfElements));
+                MemorySegment dst = out.tensorData(ti.name());
+                if (outputType == inputType) {
+                    MemorySegment.copy(src, 0, dst, 0, src.byteSize());
+                } else {
+                    FloatTensor source = ModelLoader.loadTensor(new GGMLTensorEntry(tensorData, ti.name(), inputType, ti.dimensions(), src));
+                    ModelLoader.quantize(source, ti.dimensions()[0], outputType, dst);
+                }
+                inputBytes += src.byteSize();
+                outputBytes += dst.byteSize();
+                System.out.printf("[%4d/%4d] %-32s %-16s %5s -> %-5s %10.2f MiB -> %10.2f MiB%n", i + 1, tensorInfos.size(), ti.name(), Arrays.toString(ti.dimensions()),
+                        inputType, outputType, src.byteSize() / 1048576.0, dst.byteSize() / 1048576.0);
+            }
+            System.out.printf("model size: %.2f MiB -> %.2f MiB%n", inputBytes / 1048576.0, outputBytes / 1048576.0);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean allowRequantize = false;
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("-"); i++) {
+            switch (args[i]) {
+                case "--allow-requantize" -> allowRequantize = true;
+                case "--help", "-h" -> {
+                    printUsage(System.out);
+                    return;
+                }
+                default -> {
+                    System.out.println("ERROR Unknown option: " + args[i]);
+                    printUsage(System.out);
+                    System.exit(-1);
+                }
+            }
+        }
+        if (args.length - i != 3) {
+            printUsage(System.out);
+            System.exit(-1);
+        }
+        GGMLType targetType = switch (args[i + 2].toUpperCase(Locale.ROOT)) {
+            case "Q8_0" -> GGMLType.Q8_0;
+            case "Q4_0" -> GGMLType.Q4_0;
+            default -> {
+                System.out.println("ERROR Unsupported type: " + args[i + 2]);
+                printUsage(System.out);
+                System.exit(-1);
+                yield null;
+            }
+        };
+        quantize(Paths.get(args[i]), Paths.get(args[i + 1]), targetType, allowRequantize);
+    }
+}
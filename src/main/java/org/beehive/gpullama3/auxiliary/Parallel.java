@@ -1,21 +1,53 @@
 package org.beehive.gpullama3.auxiliary;
 
 import java.util.function.IntConsumer;
-import java.util.function.LongConsumer;
 import java.util.stream.IntStream;
-import java.util.stream.LongStream;
 
 public final class Parallel {
-    public static void parallelFor(int startInclusive, int endExclusive, IntConsumer action) {
-        IntStream.range(startInclusive, endExclusive).parallel().forEach(action);
+
+    /** Number of compute threads, including the calling thread, used by {@link #parallelFor} and {@link #parallelForRange}. */
+    public static final int THREADS = Math.max(1, Integer.getInteger("llama.Threads", Runtime.getRuntime().availableProcessors()));
+
+    private static final WorkerPool POOL = THREADS > 1 ? new WorkerPool(THREADS) : null;
+
+    @FunctionalInterface
+    public interface RangeConsumer {
+        void accept(int fromInclusive, int toExclusive);
     }
 
+    public static void parallelFor(int startInclusive, int endExclusive, IntConsumer action) {
+        parallelForRange(startInclusive, endExclusive, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                action.accept(i);
+            }
+        });
+    }
 
-    public static void parallelForLong(long startInclusive, long endExclusive, LongConsumer action) {
-        if (startInclusive == 0 && endExclusive == 1) {
-            action.accept(0);
+    /**
+     * Splits {@code [startInclusive, endExclusive)} in one contiguous range per compute thread and waits for all of them.
+     * <p>
+     * Ranges are assigned statically, the same indices go to the same thread on every call. Nested calls, from inside
+     * an action, run sequentially on the current thread; calls from a second thread while the pool is in use fall back
+     * to the common fork/join pool.
+     */
+    public static void parallelForRange(int startInclusive, int endExclusive, RangeConsumer action) {
+        if (endExclusive - startInclusive <= 1 || POOL == null) {
+            if (startInclusive < endExclusive) {
+                action.accept(startInclusive, endExclusive);
+            }
             return;
         }
-        LongStream.range(startInclusive, endExclusive).parallel().forEach(action);
+        if (POOL.runsJob(Thread.currentThread())) {
+            action.accept(startInclusive, endExclusive);
+        } else if (!POOL.tryRun(startInclusive, endExclusive, action)) {
+            IntStream.range(0, THREADS).parallel().forEach(t -> {
+                long n = endExclusive - startInclusive;
+                int from = (int) (startInclusive + n * t / THREADS);
+                int to = (int) (startInclusive + n * (t + 1) / THREADS);
+                if (from < to) {
+                    action.accept(from, to);
+                }
+            });
+        }
     }
-}
\ No newline at end of file
+}
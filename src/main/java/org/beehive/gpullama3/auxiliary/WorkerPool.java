@@ -0,0 +1,150 @@
+package org.beehive.gpullama3.auxiliary;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed set of compute threads used by {@link Parallel}.
+ * <p>
+ * A call splits {@code [startInclusive, endExclusive)} into one contiguous chunk per thread, chunk {@code t} always
+ * goes to thread {@code t} (the calling thread runs chunk 0), so consecutive calls over the same rows touch the same
+ * cores. Idle workers spin for a short while before parking, which keeps the hand-off between the back-to-back calls
+ * of a forward pass cheap without burning CPU between tokens.
+ */
+final class WorkerPool {
+
+    // Number of Thread.onSpinWait() iterations before a waiting thread parks.
+    private static final int SPIN_LIMIT = Integer.getInteger("llama.WorkerSpin", 1 << 14);
+
+    private final int threads;
+    private final int spinLimit;
+    private final Worker[] workers;
+    private final AtomicBoolean busy = new AtomicBoolean();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    // Current job, published to the workers by the volatile write to epoch.
+    private Parallel.RangeConsumer action;
+    private int startInclusive;
+    private int endExclusive;
+    private volatile int epoch;
+    private volatile Thread caller;
+    private volatile Throwable failure;
+
+    WorkerPool(int threads) {
+        this.threads = threads;
+        // Spinning only pays off when every thread has a core of its own.
+        this.spinLimit = threads <= Runtime.getRuntime().availableProcessors() ? SPIN_LIMIT : 0;
+        this.workers = new Worker[threads - 1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i + 1);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Whether {@code thread} is running a chunk of the current job, a call from it is then nested.
+     */
+    boolean runsJob(Thread thread) {
+        return thread instanceof Worker || (busy.get() && caller == thread);
+    }
+
+    /**
+     * Runs {@code action} over {@code [startInclusive, endExclusive)} split in contiguous chunks, returns once all the chunks are done.
+     *
+     * @return {@code false} if the pool is already in use by another thread, the caller must then run the job on its own
+     */
+    boolean tryRun(int startInclusive, int endExclusive, Parallel.RangeConsumer action) {
+        if (!busy.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            this.action = action;
+            this.startInclusive = startInclusive;
+            this.endExclusive = endExclusive;
+            this.failure = null;
+            this.caller = Thread.currentThread();
+            pending.set(workers.length);
+            epoch++; // publish
+            for (Worker worker : workers) {
+                if (worker.sleeping) {
+                    LockSupport.unpark(worker);
+                }
+            }
+
+            runChunk(0);
+
+            int spins = 0;
+            while (pending.get() != 0) {
+                if (spins < spinLimit) {
+                    Thread.onSpinWait();
+                    spins++;
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+            this.action = null;
+            Throwable t = failure;
+            if (t instanceof RuntimeException e) {
+                throw e;
+            } else if (t instanceof Error e) {
+                throw e;
+            } else if (t != null) {
+                throw new RuntimeException(t);
+            }
+            return true;
+        } finally {
+            busy.set(false);
+        }
+    }
+
+    private void runChunk(int index) {
+        long n = endExclusive - startInclusive;
+        int from = (int) (startInclusive + n * index / threads);
+        int to = (int) (startInclusive + n * (index + 1) / threads);
+        if (from < to) {
+            try {
+                action.accept(from, to);
+            } catch (Throwable t) {
+                failure = t;
+            }
+        }
+    }
+
+    private final class Worker extends Thread {
+        private final int index;
+        private volatile boolean sleeping;
+
+        Worker(int index) {
+            super("llama-worker-" + index);
+            this.index = index;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int seen = 0;
+            while (true) {
+                int spins = 0;
+                while (epoch == seen) {
+                    if (spins < spinLimit) {
+                        Thread.onSpinWait();
+                        spins++;
+                    } else {
+                        sleeping = true;
+                        // Re-check after announcing: the caller bumps epoch before looking at the sleeping flag.
+                        if (epoch == seen) {
+                            LockSupport.park(WorkerPool.this);
+                        }
+                        sleeping = false;
+                    }
+                }
+                seen = epoch;
+                runChunk(index);
+                if (pending.decrementAndGet() == 0) {
+                    LockSupport.unpark(caller);
+                }
+            }
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package org.beehive.gpullama3.inference;
 
 import org.beehive.gpullama3.auxiliary.Parallel;
+import org.beehive.gpullama3.tensor.standard.ArrayFloatTensor;
 import org.beehive.gpullama3.tensor.standard.FloatTensor;
+import org.beehive.gpullama3.inference.sampler.LogitsCandidates;
 import org.beehive.gpullama3.inference.state.Phi3State;
 import org.beehive.gpullama3.inference.state.State;
 import org.beehive.gpullama3.inference.weights.standard.Phi3StandardWeights;
@@ -31,7 +33,9 @@ import java.lang.foreign.MemorySegment;
  * <ul>
  *   <li>{@code rmsnorm} – applies Root Mean Square Layer Normalization to input vectors</li>
  *   <li>{@code forwardJava} – executes a Forward pass for LLaMA and Mistral models on CPU</li>
+ *   <li>{@code forwardJavaBatch} – ingests a chunk of prompt tokens at once for LLaMA and Mistral models on CPU</li>
  *   <li>{@code forwardJavaQwen3} – executes a Forward pass for Qwen3 models on CPU</li>
+ *   <li>{@code forwardJavaBatchQwen2}, {@code forwardJavaBatchQwen3}, {@code forwardJavaBatchPhi3} – batched prompt prefill for Qwen2, Qwen3 and Phi3 models on CPU</li>
  *   <li>{@code forwardTornadoVM} – executes a Forward pass using TornadoVM for GPU acceleration</li>
  * </ul>
  * </p>
@@ -39,11 +43,24 @@ import java.lang.foreign.MemorySegment;
 
 public final class InferenceCore {
 
+    /** Number of prompt tokens processed together by {@link #forwardJavaBatch}, values {@code <= 1} disable batched prefill. */
+    public static final int PREFILL_BATCH_SIZE = Integer.getInteger("llama.PrefillBatchSize", 32);
+
+    /** Select the top-k logits while computing the classifier when the sampler only needs those (greedy, top-k), see {@link LogitsCandidates}; on the device for TornadoVM. */
+    public static final boolean FUSED_LOGITS_TOPK = Boolean.getBoolean("llama.FusedLogitsTopK");
+
+    /** Minimum number of positions per chunk when {@link #attention} splits the time dimension across threads. */
+    public static final int ATTENTION_SPLIT_LENGTH = Math.max(1, Integer.getInteger("llama.AttentionSplitLength", 512));
+
     private InferenceCore() {
         // prevent instantiation
     }
 
     public static void rmsnorm(FloatTensor out, FloatTensor x, FloatTensor weight, int offset, int size, float rmsNormEps) {
+        if (out instanceof ArrayFloatTensor outArray && x instanceof ArrayFloatTensor xArray && offset % size == 0) {
+            ArrayFloatTensor.rmsnorm(outArray, xArray, weight, offset, size, rmsNormEps);
+            return;
+        }
         // calculate sum of squares
         float ss = x.reduce(offset, size, 0f, (acc, xi) -> acc + xi * xi);
         ss /= size;
@@ -54,7 +71,212 @@ public final class InferenceCore {
         out.mapWithIndexInPlace(offset, size, (value, index) -> weight.getFloat(index % size) * (finalss * x.getFloat(index)));
     }
 
+    /**
+     * Fused q/k/v projections, CPU counterpart of the {@code fusedQKVMatmulX} TornadoVM kernel.
+     * <p>
+     * A single parallel pass over the row blocks of {@code wq}, {@code wk} and {@code wv} laid end to end, all reading the same input {@code x}.
+     * </p>
+     */
+    static void fusedQKVMatmul(FloatTensor x, FloatTensor wq, FloatTensor wk, FloatTensor wv, FloatTensor q, FloatTensor k, FloatTensor v, int qDim, int kvDim, int dim) {
+        int qBlocks = (qDim + FloatTensor.MATMUL_ROW_BLOCK - 1) / FloatTensor.MATMUL_ROW_BLOCK;
+        int kvBlocks = (kvDim + FloatTensor.MATMUL_ROW_BLOCK - 1) / FloatTensor.MATMUL_ROW_BLOCK;
+        Parallel.parallelForRange(0, qBlocks + 2 * kvBlocks, (fromBlock, toBlock) -> {
+            // a range can span several of the matrices
+            matmulBlocks(wq, x, q, qDim, dim, fromBlock, toBlock, 0, qBlocks);
+            matmulBlocks(wk, x, k, kvDim, dim, fromBlock, toBlock, qBlocks, kvBlocks);
+            matmulBlocks(wv, x, v, kvDim, dim, fromBlock, toBlock, qBlocks + kvBlocks, kvBlocks);
+        });
+    }
+
+    /**
+     * Computes the rows of {@code weight} that fall in {@code [fromBlock, toBlock)}, the matrix occupying blocks {@code [firstBlock, firstBlock + blocks)} of a fused range.
+     */
+    private static void matmulBlocks(FloatTensor weight, FloatTensor x, FloatTensor out, int dim0, int dim1, int fromBlock, int toBlock, int firstBlock, int blocks) {
+        int from = Math.max(fromBlock, firstBlock) - firstBlock;
+        int to = Math.min(toBlock, firstBlock + blocks) - firstBlock;
+        if (from < to) {
+            weight.matmulRows(x, out, dim1, from * FloatTensor.MATMUL_ROW_BLOCK, Math.min(dim0, to * FloatTensor.MATMUL_ROW_BLOCK));
+        }
+    }
+
+    /**
+     * Fused FFN gate/up projections with the SwiGLU non-linearity, CPU counterpart of the {@code fusedRmsNormFFNGateUp} TornadoVM kernel.
+     * <p>
+     * Each thread computes a range of rows of {@code w1·x} and {@code w3·x} and writes {@code silu(w1·x) * (w3·x)} into {@code hb} while the rows are still in cache,
+     * {@code hb2} is scratch space.
+     * </p>
+     */
+    static void fusedGateUpSiLU(FloatTensor x, FloatTensor w1, FloatTensor w3, FloatTensor hb, FloatTensor hb2, int hiddenDim, int dim) {
+        int blocks = (hiddenDim + FloatTensor.MATMUL_ROW_BLOCK - 1) / FloatTensor.MATMUL_ROW_BLOCK;
+        Parallel.parallelForRange(0, blocks, (fromBlock, toBlock) -> {
+            int from = fromBlock * FloatTensor.MATMUL_ROW_BLOCK;
+            int to = Math.min(hiddenDim, toBlock * FloatTensor.MATMUL_ROW_BLOCK);
+            w1.matmulRows(x, hb, dim, from, to);
+            w3.matmulRows(x, hb2, dim, from, to);
+            hb.siluInPlace(from, to - from);
+            hb.multiplyInPlace(from, hb2, from, to - from);
+        });
+    }
+
+    /**
+     * Multi-head attention over positions {@code [0, length)} of a layer's key/value caches, the output of head {@code h} goes to {@code out[h * headSizeV, (h + 1) * headSizeV)}.
+     * <p>
+     * Work is split per key/value head: a task handles the {@code kvMul} query heads sharing a key/value head, so each key and value row is read from the cache once
+     * per group instead of once per query head. When there are fewer key/value heads than compute threads and the context is long, the time dimension is also
+     * split in chunks of at least {@link #ATTENTION_SPLIT_LENGTH} positions (flash-decoding): each chunk produces a partial output with its own maximum and sum, in
+     * {@link State#attentionPartials}, which are merged per head afterwards.
+     * </p>
+     *
+     * @param kvMul
+     *         number of query heads sharing a key/value head
+     * @param headStride
+     *         offset between heads in {@code q} and between key heads in a cache row
+     * @param kvStride
+     *         size of a key/value cache row (one position)
+     */
+    static void attention(State state, FloatTensor q, FloatTensor keyCache, FloatTensor valueCache, FloatTensor out, int numberOfHeads, int kvMul, int headStride, int headSizeK, int headSizeV,
+            int kvStride, int length, float sqrtHeadSize) {
+        int numberOfKeyValueHeads = numberOfHeads / kvMul;
+        int splits = Math.min(attentionSplits(numberOfKeyValueHeads, length), state.attentionSplits);
+        float[] stats = state.attentionStats;
+        if (splits <= 1) {
+            Parallel.parallelFor(0, numberOfKeyValueHeads, kvHead -> {
+                int h = kvHead * kvMul;
+                attentionGroup(q, h * headStride, headStride, kvMul, keyCache, kvHead * headStride, valueCache, kvHead * headSizeV, kvStride, headSizeK, headSizeV, 0, length, sqrtHeadSize,
+                        out, h * headSizeV, headSizeV, stats, h, 1);
+                for (int g = 0; g < kvMul; g++) {
+                    out.divideInPlace((h + g) * headSizeV, headSizeV, stats[2 * (h + g) + 1]);
+                }
+            });
+            return;
+        }
+
+        FloatTensor partials = state.attentionPartials;
+        Parallel.parallelFor(0, numberOfKeyValueHeads * splits, w -> {
+            int kvHead = w / splits;
+            int split = w % splits;
+            int h = kvHead * kvMul;
+            int from = (int) ((long) length * split / splits);
+            int to = (int) ((long) length * (split + 1) / splits);
+            // partial result of head h and chunk split goes to slot h * splits + split
+            attentionGroup(q, h * headStride, headStride, kvMul, keyCache, kvHead * headStride, valueCache, kvHead * headSizeV, kvStride, headSizeK, headSizeV, from, to, sqrtHeadSize,
+                    partials, (h * splits + split) * headSizeV, splits * headSizeV, stats, h * splits + split, splits);
+        });
+
+        // merge the partial results of each head, rescaled to the head's maximum
+        Parallel.parallelFor(0, numberOfHeads, h -> {
+            int outOffset = h * headSizeV;
+            float maxScore = Float.NEGATIVE_INFINITY;
+            for (int split = 0; split < splits; split++) {
+                maxScore = Math.max(maxScore, stats[2 * (h * splits + split)]);
+            }
+            float sum = 0f;
+            out.fillInPlace(outOffset, headSizeV, 0f);
+            for (int split = 0; split < splits; split++) {
+                int w = h * splits + split;
+                float correction = (float) Math.exp(stats[2 * w] - maxScore);
+                sum += correction * stats[2 * w + 1];
+                out.saxpyInPlace(outOffset, partials, w * headSizeV, headSizeV, correction);
+            }
+            out.divideInPlace(outOffset, headSizeV, sum);
+        });
+    }
+
+    /**
+     * Number of chunks the time dimension of each key/value head is split into by {@link #attention}, 1 when the heads alone keep the compute threads busy or the
+     * context is short.
+     */
+    static int attentionSplits(int numberOfKeyValueHeads, int length) {
+        if (Parallel.THREADS <= numberOfKeyValueHeads) {
+            return 1;
+        }
+        int threadsPerHead = (Parallel.THREADS + numberOfKeyValueHeads - 1) / numberOfKeyValueHeads;
+        return Math.max(1, Math.min(threadsPerHead, length / ATTENTION_SPLIT_LENGTH));
+    }
+
+    /**
+     * Un-normalized attention over positions {@code [from, to)} of the {@code group} query heads sharing one key/value head.
+     * <p>
+     * Query head {@code g} of the group starts at {@code qOffset + g * qStride} and its result goes to {@code out[outOffset + g * outStride, + headSizeV)}. Every
+     * key and value row is loaded once and used by all the heads of the group while it is hot in cache. Single pass with an online softmax (running maximum and
+     * sum, as in FlashAttention): no per-position score buffer is needed and a head's weighted sum is rescaled whenever a larger score shows up.
+     * </p>
+     * <p>
+     * The running maximum and sum of head {@code g} are kept in {@code stats[2 * i]} and {@code stats[2 * i + 1]}, with {@code i = statsIndex + g * statsStride};
+     * the caller divides by the sum, or merges several partial results using both.
+     * </p>
+     *
+     * @param keyOffset
+     *         offset of the key head within a cache row, the key for position {@code t} starts at {@code keyOffset + t * kvStride}
+     * @param valueOffset
+     *         offset of the value head within a cache row, same layout as the keys
+     */
+    static void attentionGroup(FloatTensor q, int qOffset, int qStride, int group, FloatTensor keyCache, int keyOffset, FloatTensor valueCache, int valueOffset, int kvStride, int headSizeK,
+            int headSizeV, int from, int to, float sqrtHeadSize, FloatTensor out, int outOffset, int outStride, float[] stats, int statsIndex, int statsStride) {
+        for (int g = 0; g < group; g++) {
+            int i = statsIndex + g * statsStride;
+            stats[2 * i] = Float.NEGATIVE_INFINITY;
+            stats[2 * i + 1] = 0f;
+            out.fillInPlace(outOffset + g * outStride, headSizeV, 0f);
+        }
+        for (int t = from; t < to; t++) {
+            int keyRow = keyOffset + t * kvStride;
+            int valueRow = valueOffset + t * kvStride;
+            for (int g = 0; g < group; g++) {
+                int i = statsIndex + g * statsStride;
+                int headOut = outOffset + g * outStride;
+                // calculate the attention score as the dot product of q and k
+                float score = q.dot(qOffset + g * qStride, keyCache, keyRow, headSizeK) / sqrtHeadSize;
+                float maxScore = stats[2 * i];
+                float sum = stats[2 * i + 1];
+                if (score > maxScore) {
+                    if (sum != 0f) {
+                        // rescale what has been accumulated so far to the new maximum
+                        float correction = (float) Math.exp(maxScore - score);
+                        out.scaleInPlace(headOut, headSizeV, correction);
+                        sum *= correction;
+                    }
+                    maxScore = score;
+                }
+                // accumulate the weighted value
+                float weight = (float) Math.exp(score - maxScore);
+                out.saxpyInPlace(headOut, valueCache, valueRow, headSizeV, weight);
+                stats[2 * i] = maxScore;
+                stats[2 * i + 1] = sum + weight;
+            }
+        }
+    }
+
+    /**
+     * Forward pass for LLaMA and Mistral models on CPU, see {@link #forwardJava(Model, State, int, int, boolean)}.
+     *
+     * @return the output logits
+     */
     public static FloatTensor forwardJava(Model model, State state, int token, int position) {
+        return forwardJava(model, state, token, position, true);
+    }
+
+    /**
+     * Forward pass for LLaMA and Mistral models on CPU.
+     *
+     * <p>
+     * When {@code computeLogits} is {@code false} the final rmsnorm and the vocabulary projection ({@code wcls}, vocabularySize × dim) are skipped. This is meant for prompt ingestion,
+     * where only the key/value caches need to be updated and the logits are never sampled.
+     * </p>
+     *
+     * @param model
+     *         the model to run
+     * @param state
+     *         state of the model, mutated by this call
+     * @param token
+     *         input token
+     * @param position
+     *         position of the token in the context
+     * @param computeLogits
+     *         whether to compute the output logits
+     * @return the output logits, or {@code null} if {@code computeLogits} is {@code false}
+     */
+    public static FloatTensor forwardJava(Model model, State state, int token, int position, boolean computeLogits) {
         // a few convenience variables
         final Configuration config = model.configuration();
         final StandardWeights weights = (StandardWeights) model.weights();
@@ -74,9 +296,7 @@ public final class InferenceCore {
 
             // qkv matmuls for this position
 
-            weights.wq[l].matmul(state.xb, state.q, dim, dim);
-            weights.wk[l].matmul(state.xb, state.k, kvDim, dim);
-            weights.wv[l].matmul(state.xb, state.v, kvDim, dim);
+            fusedQKVMatmul(state.xb, weights.wq[l], weights.wk[l], weights.wv[l], state.q, state.k, state.v, dim, kvDim, dim);
 
             // RoPE relative positional encoding: complex-valued rotate q and k in each head
             for (int i = 0; i < dim; i += 2) {
@@ -102,46 +322,8 @@ public final class InferenceCore {
             int curLayer = l;
 
             // multihead attention. iterate over all heads
-            Parallel.parallelFor(0, config.numberOfHeads(), h -> {
-                // get the query vector for this head
-                // float* q = s.q + h * headSize;
-                int qOffset = h * headSize;
-
-                // attention scores for this head
-                // float* att = s.att + h * config.seq_len;
-                int attOffset = h * config.contextLength();
-
-                // iterate over all timesteps, including the current one
-                for (int t = 0; t <= position; t++) {
-                    // get the key vector for this head and at this timestep
-                    // float* k = s.key_cache + loff + t * dim + h * headSize;
-                    int keyCacheOffset = /* loff + */ t * kvDim + (h / kvMul) * headSize;
-                    // calculate the attention score as the dot product of q and k
-                    float score = state.q.dot(qOffset, state.keyCache[curLayer], keyCacheOffset, headSize);
-                    score /= sqrtHeadSize;
-                    // save the score to the attention buffer
-                    state.att.setFloat(attOffset + t, score);
-                }
-
-                // softmax the scores to get attention weights, from 0..position inclusively
-                state.att.softmaxInPlace(attOffset, position + 1);
-
-                // weighted sum of the values, store back into xb
-                // float* xb = s.xb + h * headSize;
-                int xbOffset = h * headSize;
-                // memset(xb, 0, headSize * sizeof(float));
-                state.xb.fillInPlace(xbOffset, headSize, 0f);
-
-                for (int t = 0; t <= position; t++) {
-                    // get the value vector for this head and at this timestep
-                    // float* v = s.value_cache + loff + t * dim + h * headSize;
-                    int vOffset = /* loff + */ t * kvDim + (h / kvMul) * headSize;
-                    // get the attention weight for this timestep
-                    float a = state.att.getFloat(attOffset + t);
-                    // accumulate the weighted value into xb
-                    state.xb.saxpyInPlace(xbOffset, state.valueCache[curLayer], vOffset, headSize, a);
-                }
-            });
+            // iterate over all timesteps, including the current one, the output of each head goes to xb
+            attention(state, state.q, state.keyCache[curLayer], state.valueCache[curLayer], state.xb, config.numberOfHeads(), kvMul, headSize, headSize, headSize, kvDim, position + 1, sqrtHeadSize);
 
             // final matmul to get the output of the attention
             weights.wo[l].matmul(state.xb, state.xb2, dim, dim);
@@ -153,16 +335,8 @@ public final class InferenceCore {
             rmsnorm(state.xb, state.x, weights.rms_ffn_weight[l], 0, dim, config.rmsNormEps());
 
             // Now for FFN in PyTorch we have: self.w2(F.silu(self.w1(x)) * self.w3(x))
-            // first calculate self.w1(x) and self.w3(x)
-            weights.w1[l].matmul(state.xb, state.hb, config.hiddenDim(), dim);
-            weights.w3[l].matmul(state.xb, state.hb2, config.hiddenDim(), dim);
-
-            // SwiGLU non-linearity
-            // silu(x)=x*σ(x), where σ(x) is the logistic sigmoid
-            state.hb.mapInPlace(value -> value / (float) (1.0 + Math.exp(-value)));
-
-            // elementwise multiply with w3(x)
-            state.hb.multiplyInPlace(state.hb2);
+            // hb = silu(w1(x)) * w3(x), computed in one pass, silu(x)=x*σ(x), where σ(x) is the logistic sigmoid
+            fusedGateUpSiLU(state.xb, weights.w1[l], weights.w3[l], state.hb, state.hb2, config.hiddenDim(), dim);
 
             // final matmul to get the output of the ffn
             weights.w2[l].matmul(state.hb, state.xb, dim, config.hiddenDim());
@@ -171,14 +345,179 @@ public final class InferenceCore {
             state.x.addInPlace(state.xb);
         }
 
+        if (!computeLogits) {
+            // prompt ingestion: the logits for this position are never sampled
+            return null;
+        }
+
         rmsnorm(state.x, state.x, weights.rms_final_weight, 0, dim, config.rmsNormEps());
 
-        weights.wcls.matmul(state.x, state.logits, config.vocabularySize(), dim);
+        classifier(state, weights.wcls, config.vocabularySize(), dim);
 
         return state.logits;
     }
 
+    /**
+     * Classifier into {@code state.logits}, also selecting the top-k logits into {@code state.logitsCandidates} if the sampler set it up.
+     */
+    static void classifier(State state, FloatTensor wcls, int vocabularySize, int dim) {
+        if (state.logitsCandidates != null) {
+            state.logitsCandidates.project(wcls, state.x, state.logits, vocabularySize, dim);
+        } else {
+            wcls.matmul(state.x, state.logits, vocabularySize, dim);
+        }
+    }
+
+    /**
+     * Batched prompt prefill for LLaMA and Mistral models on CPU.
+     *
+     * <p>
+     * Ingests {@code tokens} at positions {@code startPosition .. startPosition + tokens.length - 1}, in chunks of {@link #PREFILL_BATCH_SIZE} tokens held in the batch buffers of the state. Every weight matrix is streamed once per chunk
+     * (see {@link FloatTensor#matmul(int, FloatTensor[], FloatTensor[], int, int)}) instead of once per token, and the K/V rows of the whole chunk are written into the cache before attention runs.
+     * </p>
+     *
+     * <p>
+     * No logits are computed: the last prompt token is expected to go through {@link #forwardJava} to produce them.
+     * {@link #forwardJavaBatchQwen2}, {@link #forwardJavaBatchQwen3} and {@link #forwardJavaBatchPhi3} do the same for the other models.
+     * </p>
+     *
+     * @param model
+     *         the LLaMA/Mistral model
+     * @param state
+     *         state of the model, the key/value caches are updated for all the ingested positions
+     * @param tokens
+     *         prompt tokens to ingest
+     * @param startPosition
+     *         position of {@code tokens[0]} in the context
+     */
+    public static void forwardJavaBatch(Model model, State state, int[] tokens, int startPosition) {
+        // a few convenience variables
+        final Configuration config = model.configuration();
+        final StandardWeights weights = (StandardWeights) model.weights();
+        int dim = config.dim();
+        int headSize = config.headSize();
+        int kvDim = config.kvDim();
+        int kvMul = config.kvMul();
+        float sqrtHeadSize = (float) Math.sqrt(headSize);
+
+        // per-token activations for one chunk
+        state.allocateBatchBuffers();
+        final FloatTensor[] x = state.batchX, xb = state.batchXb, xb2 = state.batchXb2, q = state.batchQ, k = state.batchK, v = state.batchV, hb = state.batchHb, hb2 = state.batchHb2;
+        final int batchSize = x.length;
+
+        for (int chunkStart = 0; chunkStart < tokens.length; chunkStart += batchSize) {
+            final int n = Math.min(batchSize, tokens.length - chunkStart);
+            final int chunkPosition = startPosition + chunkStart;
+
+            // copy the token embeddings into x
+            for (int b = 0; b < n; b++) {
+                weights.token_embedding_table.copyTo(tokens[chunkStart + b] * dim, x[b], 0, dim);
+            }
+
+            // forward all the layers
+            for (int l = 0; l < config.numberOfLayers(); l++) {
+                // attention rmsnorm
+                for (int b = 0; b < n; b++) {
+                    rmsnorm(xb[b], x[b], weights.rms_att_weight[l], 0, dim, config.rmsNormEps());
+                }
+
+                // qkv matmuls for the whole chunk
+                weights.wq[l].matmul(n, xb, q, dim, dim);
+                weights.wk[l].matmul(n, xb, k, kvDim, dim);
+                weights.wv[l].matmul(n, xb, v, kvDim, dim);
+
+                // RoPE, then save key,value of every position of the chunk to our kv cache
+                for (int b = 0; b < n; b++) {
+                    int position = chunkPosition + b;
+                    for (int i = 0; i < dim; i += 2) {
+                        int head_dim = i % headSize;
+                        float fcr = weights.freq_cis_real.getFloat(position * (headSize / 2) + (head_dim / 2));
+                        float fci = weights.freq_cis_imag.getFloat(position * (headSize / 2) + (head_dim / 2));
+                        int rotn = i < kvDim ? 2 : 1; // how many vectors? 2 = q & k, 1 = q only
+                        for (int vi = 0; vi < rotn; vi++) {
+                            FloatTensor vec = vi == 0 ? q[b] : k[b]; // the vector to rotate (query or key)
+                            float v0 = vec.getFloat(i);
+                            float v1 = vec.getFloat(i + 1);
+                            vec.setFloat(i, v0 * fcr - v1 * fci);
+                            vec.setFloat(i + 1, v0 * fci + v1 * fcr);
+                        }
+                    }
+                    k[b].copyTo(0, state.keyCache[l], position * kvDim, kvDim);
+                    v[b].copyTo(0, state.valueCache[l], position * kvDim, kvDim);
+                }
+
+                // multihead attention, causal within the chunk: token b attends to positions 0..chunkPosition + b
+                attentionBatch(state, n, chunkPosition, q, state.keyCache[l], state.valueCache[l], xb, config.numberOfKeyValueHeads(), kvMul, headSize, headSize, headSize, kvDim, sqrtHeadSize);
+
+                // final matmul to get the output of the attention
+                weights.wo[l].matmul(n, xb, xb2, dim, dim);
+
+                for (int b = 0; b < n; b++) {
+                    // residual connection back into x
+                    x[b].addInPlace(xb2[b]);
+                    // ffn rmsnorm
+                    rmsnorm(xb[b], x[b], weights.rms_ffn_weight[l], 0, dim, config.rmsNormEps());
+                }
+
+                // self.w2(F.silu(self.w1(x)) * self.w3(x))
+                weights.w1[l].matmul(n, xb, hb, config.hiddenDim(), dim);
+                weights.w3[l].matmul(n, xb, hb2, config.hiddenDim(), dim);
+
+                for (int b = 0; b < n; b++) {
+                    // SwiGLU non-linearity
+                    hb[b].siluInPlace();
+                    // elementwise multiply with w3(x)
+                    hb[b].multiplyInPlace(hb2[b]);
+                }
+
+                // final matmul to get the output of the ffn
+                weights.w2[l].matmul(n, hb, xb, dim, config.hiddenDim());
+
+                // residual connection
+                for (int b = 0; b < n; b++) {
+                    x[b].addInPlace(xb[b]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Attention of the first {@code n} tokens of a prefill chunk starting at {@code chunkPosition}, causal within the chunk: token {@code b} attends to positions
+     * {@code 0 .. chunkPosition + b}, whose keys and values must already be in the cache. Head sizes and strides are those of {@link #attention}.
+     */
+    static void attentionBatch(State state, int n, int chunkPosition, FloatTensor[] q, FloatTensor keyCache, FloatTensor valueCache, FloatTensor[] out, int numberOfKeyValueHeads, int kvMul,
+            int headStride, int headSizeK, int headSizeV, int kvStride, float sqrtHeadSize) {
+        // one task per token and key/value head, each token keeps its own stats (numberOfHeads slots)
+        float[] stats = state.batchAttentionStats;
+        int numberOfHeads = numberOfKeyValueHeads * kvMul;
+        Parallel.parallelFor(0, n * numberOfKeyValueHeads, w -> {
+            int b = w / numberOfKeyValueHeads;
+            int kvHead = w % numberOfKeyValueHeads;
+            int h = kvHead * kvMul;
+            int position = chunkPosition + b;
+            int slot = b * numberOfHeads + h;
+            attentionGroup(q[b], h * headStride, headStride, kvMul, keyCache, kvHead * headStride, valueCache, kvHead * headSizeV, kvStride, headSizeK, headSizeV, 0, position + 1,
+                    sqrtHeadSize, out[b], h * headSizeV, headSizeV, stats, slot, 1);
+            for (int g = 0; g < kvMul; g++) {
+                out[b].divideInPlace((h + g) * headSizeV, headSizeV, stats[2 * (slot + g) + 1]);
+            }
+        });
+    }
+
+    /**
+     * Forward pass for Qwen2 models on CPU, see {@link #forwardJavaQwen2(Model, State, int, int, boolean)}.
+     *
+     * @return the output logits
+     */
     public static FloatTensor forwardJavaQwen2(Model model, State state, int token, int position) {
+        return forwardJavaQwen2(model, state, token, position, true);
+    }
+
+    /**
+     * Forward pass for Qwen2 models on CPU, the final rmsnorm and vocabulary projection are skipped if {@code computeLogits} is {@code false}
+     * (see {@link #forwardJava(Model, State, int, int, boolean)}).
+     */
+    public static FloatTensor forwardJavaQwen2(Model model, State state, int token, int position, boolean computeLogits) {
         final Qwen2Configuration config = (Qwen2Configuration) model.configuration();
         final Qwen2StandardWeights weights = (Qwen2StandardWeights) model.weights();
         int dim = config.dim();
@@ -196,9 +535,7 @@ public final class InferenceCore {
             rmsnorm(state.xb, state.x, weights.rms_att_weight[curLayer], 0, dim, config.rmsNormEps());
 
             // qkv matmuls for this position
-            weights.wq[l].matmul(state.xb, state.q, dim, dim);
-            weights.wk[l].matmul(state.xb, state.k, kvDim, dim);
-            weights.wv[l].matmul(state.xb, state.v, kvDim, dim);
+            fusedQKVMatmul(state.xb, weights.wq[l], weights.wk[l], weights.wv[l], state.q, state.k, state.v, dim, kvDim, dim);
 
             // qkv additions with qkv bias
             state.q.addInPlace(weights.q_bias[curLayer]);
@@ -230,46 +567,8 @@ public final class InferenceCore {
             state.v.copyTo(0, state.valueCache[curLayer], position * kvDim, kvDim);
 
             // multihead attention. iterate over all heads
-            Parallel.parallelFor(0, config.numberOfHeads(), h -> {
-                // get the query vector for this head
-                // float* q = s.q + h * headSize;
-                int qOffset = h * headSize;
-
-                // attention scores for this head
-                // float* att = s.att + h * config.seq_len;
-                int attOffset = h * config.contextLength();
-
-                // iterate over all timesteps, including the current one
-                for (int t = 0; t <= position; t++) {
-                    // get the key vector for this head and at this timestep
-                    // float* k = s.key_cache + loff + t * dim + h * headSize;
-                    int keyCacheOffset = /* loff + */ t * kvDim + (h / kvMul) * headSize;
-                    // calculate the attention score as the dot product of q and k
-                    float score = state.q.dot(qOffset, state.keyCache[curLayer], keyCacheOffset, headSize);
-                    score /= sqrtHeadSize;
-                    // save the score to the attention buffer
-                    state.att.setFloat(attOffset + t, score);
-                }
-
-                // softmax the scores to get attention weights, from 0..position inclusively
-                state.att.softmaxInPlace(attOffset, position + 1);
-
-                // weighted sum of the values, store back into xb
-                // float* xb = s.xb + h * headSize;
-                int xbOffset = h * headSize;
-                // memset(xb, 0, headSize * sizeof(float));
-                state.xb.fillInPlace(xbOffset, headSize, 0f);
-
-                for (int t = 0; t <= position; t++) {
-                    // get the value vector for this head and at this timestep
-                    // float* v = s.value_cache + loff + t * dim + h * headSize;C
-                    int vOffset = /* loff + */ t * kvDim + (h / kvMul) * headSize;
-                    // get the attention weight for this timestep
-                    float a = state.att.getFloat(attOffset + t);
-                    // accumulate the weighted value into xb
-                    state.xb.saxpyInPlace(xbOffset, state.valueCache[curLayer], vOffset, headSize, a);
-                }
-            });
+            // iterate over all timesteps, including the current one, the output of each head goes to xb
+            attention(state, state.q, state.keyCache[curLayer], state.valueCache[curLayer], state.xb, config.numberOfHeads(), kvMul, headSize, headSize, headSize, kvDim, position + 1, sqrtHeadSize);
 
             // final matmul to get the output of the attention
             weights.wo[l].matmul(state.xb, state.xb2, dim, dim);
@@ -281,16 +580,8 @@ public final class InferenceCore {
             rmsnorm(state.xb, state.x, weights.rms_ffn_weight[curLayer], 0, dim, config.rmsNormEps());
 
             // Now for FFN in PyTorch we have: self.w2(F.silu(self.w1(x)) * self.w3(x))
-            // first calculate self.w1(x) and self.w3(x)
-            weights.w1[l].matmul(state.xb, state.hb, config.hiddenDim(), dim);
-            weights.w3[l].matmul(state.xb, state.hb2, config.hiddenDim(), dim);
-
-            // SwiGLU non-linearity
-            // silu(x)=x*σ(x), where σ(x) is the logistic sigmoid
-            state.hb.mapInPlace(value -> value / (float) (1.0 + Math.exp(-value)));
-
-            // elementwise multiply with w3(x)
-            state.hb.multiplyInPlace(state.hb2);
+            // hb = silu(w1(x)) * w3(x), computed in one pass, silu(x)=x*σ(x), where σ(x) is the logistic sigmoid
+            fusedGateUpSiLU(state.xb, weights.w1[l], weights.w3[l], state.hb, state.hb2, config.hiddenDim(), dim);
 
             // final matmul to get the output of the ffn
             weights.w2[l].matmul(state.hb, state.xb, dim, config.hiddenDim());
@@ -300,16 +591,132 @@ public final class InferenceCore {
 
         }
 
+        if (!computeLogits) {
+            // prompt ingestion: the logits for this position are never sampled
+            return null;
+        }
+
         // final rmsnorm
         rmsnorm(state.x, state.x, weights.rms_final_weight, 0, dim, config.rmsNormEps());
 
         // classifier into logits
-        weights.wcls.matmul(state.x, state.logits, config.vocabularySize(), dim);
+        classifier(state, weights.wcls, config.vocabularySize(), dim);
 
         return state.logits;
     }
 
+    /**
+     * Batched prompt prefill for Qwen2 models on CPU, see {@link #forwardJavaBatch}: the q/k/v biases and the GPT-NeoX style RoPE of {@link #forwardJavaQwen2}.
+     */
+    public static void forwardJavaBatchQwen2(Model model, State state, int[] tokens, int startPosition) {
+        final Qwen2Configuration config = (Qwen2Configuration) model.configuration();
+        final Qwen2StandardWeights weights = (Qwen2StandardWeights) model.weights();
+        int dim = config.dim();
+        int headSize = config.headSize();
+        int kvDim = (config.dim() * config.numberOfKeyValueHeads()) / config.numberOfHeads();
+        int kvMul = config.numberOfHeads() / config.numberOfKeyValueHeads(); // integer multiplier of the kv sharing in multiquery
+        float sqrtHeadSize = (float) Math.sqrt(headSize);
+
+        // per-token activations for one chunk
+        state.allocateBatchBuffers();
+        final FloatTensor[] x = state.batchX, xb = state.batchXb, xb2 = state.batchXb2, q = state.batchQ, k = state.batchK, v = state.batchV, hb = state.batchHb, hb2 = state.batchHb2;
+        final int batchSize = x.length;
+
+        for (int chunkStart = 0; chunkStart < tokens.length; chunkStart += batchSize) {
+            final int n = Math.min(batchSize, tokens.length - chunkStart);
+            final int chunkPosition = startPosition + chunkStart;
+
+            for (int b = 0; b < n; b++) {
+                weights.token_embedding_table.copyTo(tokens[chunkStart + b] * dim, x[b], 0, dim);
+            }
+
+            // forward all the layers
+            for (int l = 0; l < config.numberOfLayers(); l++) {
+                // attention rmsnorm
+                for (int b = 0; b < n; b++) {
+                    rmsnorm(xb[b], x[b], weights.rms_att_weight[l], 0, dim, config.rmsNormEps());
+                }
+
+                // qkv matmuls for the whole chunk
+                weights.wq[l].matmul(n, xb, q, dim, dim);
+                weights.wk[l].matmul(n, xb, k, kvDim, dim);
+                weights.wv[l].matmul(n, xb, v, kvDim, dim);
+
+                for (int b = 0; b < n; b++) {
+                    int position = chunkPosition + b;
+
+                    // qkv additions with qkv bias
+                    q[b].addInPlace(weights.q_bias[l]);
+                    k[b].addInPlace(weights.k_bias[l]);
+                    v[b].addInPlace(weights.v_bias[l]);
+
+                    // GPT-NeoX style RoPE, real/imaginary components are stored with a headSize/2 offset per head
+                    for (int h = 0; h < config.numberOfHeads(); ++h) {
+                        int rotn = h < config.numberOfKeyValueHeads() ? 2 : 1; // how many vectors? 2 = q & k, 1 = q only
+                        int poffset = h * headSize;
+                        for (int i0 = 0; i0 < headSize; i0 += 2) {
+                            int ic = i0 / 2;
+                            float fcr = weights.freq_cis_real.getFloat(position * (headSize / 2) + ic);
+                            float fci = weights.freq_cis_imag.getFloat(position * (headSize / 2) + ic);
+                            for (int vi = 0; vi < rotn; vi++) {
+                                FloatTensor vec = (vi == 0) ? q[b] : k[b]; // the vector to rotate (query or key)
+                                float v0 = vec.getFloat(poffset + ic);
+                                float v1 = vec.getFloat(poffset + ic + headSize / 2);
+                                vec.setFloat(poffset + ic, v0 * fcr - v1 * fci);
+                                vec.setFloat(poffset + ic + headSize / 2, v0 * fci + v1 * fcr);
+                            }
+                        }
+                    }
+
+                    // save key,value of every position of the chunk to our kv cache
+                    k[b].copyTo(0, state.keyCache[l], position * kvDim, kvDim);
+                    v[b].copyTo(0, state.valueCache[l], position * kvDim, kvDim);
+                }
+
+                // multihead attention, causal within the chunk
+                attentionBatch(state, n, chunkPosition, q, state.keyCache[l], state.valueCache[l], xb, config.numberOfKeyValueHeads(), kvMul, headSize, headSize, headSize, kvDim, sqrtHeadSize);
+
+                // final matmul to get the output of the attention
+                weights.wo[l].matmul(n, xb, xb2, dim, dim);
+
+                for (int b = 0; b < n; b++) {
+                    // residual connection back into x
+                    x[b].addInPlace(xb2[b]);
+                    // ffn rmsnorm
+                    rmsnorm(xb[b], x[b], weights.rms_ffn_weight[l], 0, dim, config.rmsNormEps());
+                }
+
+                // self.w2(F.silu(self.w1(x)) * self.w3(x))
+                weights.w1[l].matmul(n, xb, hb, config.hiddenDim(), dim);
+                weights.w3[l].matmul(n, xb, hb2, config.hiddenDim(), dim);
+                for (int b = 0; b < n; b++) {
+                    hb[b].siluInPlace();
+                    hb[b].multiplyInPlace(hb2[b]);
+                }
+                weights.w2[l].matmul(n, hb, xb, dim, config.hiddenDim());
+
+                // residual connection
+                for (int b = 0; b < n; b++) {
+                    x[b].addInPlace(xb[b]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forward pass for Qwen3 models on CPU, see {@link #forwardJavaQwen3(Model, State, int, int, boolean)}.
+     *
+     * @return the output logits
+     */
     public static FloatTensor forwardJavaQwen3(Model model, State state, int token, int position) {
+        return forwardJavaQwen3(model, state, token, position, true);
+    }
+
+    /**
+     * Forward pass for Qwen3 models on CPU, the final rmsnorm and vocabulary projection are skipped if {@code computeLogits} is {@code false}
+     * (see {@link #forwardJava(Model, State, int, int, boolean)}).
+     */
+    public static FloatTensor forwardJavaQwen3(Model model, State state, int token, int position, boolean computeLogits) {
         // a few convenience variables
         final Qwen3Configuration config = (Qwen3Configuration) model.configuration();
         final Qwen3StandardWeights weights = (Qwen3StandardWeights) model.weights();
@@ -333,9 +740,7 @@ public final class InferenceCore {
             rmsnorm(state.xb, state.x, weights.rms_att_weight[curLayer], 0, dim, config.rmsNormEps());
 
             // qkv matmuls for this position
-            weights.wq[curLayer].matmul(state.xb, state.q, nEmbdHeadK * config.numberOfHeads(), dim);
-            weights.wk[curLayer].matmul(state.xb, state.k, nEmbdGqa, dim);
-            weights.wv[curLayer].matmul(state.xb, state.v, nEmbdGqa, dim);
+            fusedQKVMatmul(state.xb, weights.wq[curLayer], weights.wk[curLayer], weights.wv[curLayer], state.q, state.k, state.v, nEmbdHeadK * config.numberOfHeads(), nEmbdGqa, dim);
 
             // Qcur = ggml_reshape_3d(ctx0, Qcur, n_embd_head, n_head,    n_tokens);
             for (int i = 0; i < config.numberOfHeads(); i++) {
@@ -372,39 +777,9 @@ public final class InferenceCore {
             state.v.copyTo(0, state.valueCache[curLayer], position * nEmbdGqa, nEmbdGqa);
 
             // multihead attention. iterate over all heads
-            Parallel.parallelFor(0, config.numberOfHeads(), h -> {
-                // get the query vector for this head
-                int qOffset = h * nEmbdHead;
-                // attention scores for this head
-                int attOffset = h * config.contextLength();
-
-                // iterate over all timesteps, including the current one
-                for (int t = 0; t <= position; t++) {
-                    // get the key vector for this head and at this timestep
-                    int keyCacheOffset = /* loff + */ (t * nEmbdGqa + (h / gqa) * nEmbdHead);
-                    // calculate the attention score as the dot product of q and k
-                    float score = state.q.dot(qOffset, state.keyCache[curLayer], keyCacheOffset, nEmbdHeadK);
-                    score /= sqrtHeadSize;
-                    // save the score to the attention buffer
-                    state.att.setFloat(attOffset + t, score);
-                }
-
-                // softmax the scores to get attention weights, from 0..position inclusively
-                state.att.softmaxInPlace(attOffset, position + 1); // position + 0 + 1
-
-                // weighted sum of the values, store back into xb
-                int xbOffset = h * nEmbdHeadV;
-                state.xb.fillInPlace(xbOffset, nEmbdHeadV, 0f);
-
-                for (int t = 0; t <= position; t++) {
-                    // get the value vector for this head and at this timestep
-                    int vOffset = /* loff + */ t * nEmbdGqa + (h / gqa) * nEmbdHeadV;
-                    // get the attention weight for this timestep
-                    float a = state.att.getFloat(attOffset + t);
-                    // accumulate the weighted value into xb
-                    state.xb.saxpyInPlace(xbOffset, state.valueCache[curLayer], vOffset, nEmbdHeadV, a);
-                }
-            });
+            // iterate over all timesteps, including the current one, the output of each head goes to xb
+            attention(state, state.q, state.keyCache[curLayer], state.valueCache[curLayer], state.xb, config.numberOfHeads(), gqa, nEmbdHead, nEmbdHeadK, nEmbdHeadV, nEmbdGqa, position + 1,
+                    sqrtHeadSize);
 
             // final matmul to get the output of the attention
             weights.wo[l].matmul(state.xb, state.xb2, dim, nEmbdHeadK * config.numberOfHeads());
@@ -416,16 +791,8 @@ public final class InferenceCore {
             rmsnorm(state.xb, state.x, weights.rms_ffn_weight[curLayer], 0, dim, config.rmsNormEps());
 
             // Now for FFN in PyTorch we have: self.w2(F.silu(self.w1(x)) * self.w3(x))
-            // first calculate self.w1(x) and self.w3(x)
-            weights.w1[l].matmul(state.xb, state.hb, config.hiddenDim(), dim);
-            weights.w3[l].matmul(state.xb, state.hb2, config.hiddenDim(), dim);
-
-            // SwiGLU non-linearity
-            // silu(x)=x*σ(x), where σ(x) is the logistic sigmoid
-            state.hb.mapInPlace(value -> value / (float) (1.0 + Math.exp(-value)));
-
-            // elementwise multiply with w3(x)
-            state.hb.multiplyInPlace(state.hb2);
+            // hb = silu(w1(x)) * w3(x), computed in one pass, silu(x)=x*σ(x), where σ(x) is the logistic sigmoid
+            fusedGateUpSiLU(state.xb, weights.w1[l], weights.w3[l], state.hb, state.hb2, config.hiddenDim(), dim);
 
             // final matmul to get the output of the ffn
             weights.w2[l].matmul(state.hb, state.xb, dim, config.hiddenDim());
@@ -434,16 +801,139 @@ public final class InferenceCore {
             state.x.addInPlace(state.xb);
         }
 
+        if (!computeLogits) {
+            // prompt ingestion: the logits for this position are never sampled
+            return null;
+        }
+
         // final rmsnorm
         rmsnorm(state.x, state.x, weights.rms_final_weight, 0, dim, config.rmsNormEps());
 
         // classifier into logits
-        weights.wcls.matmul(state.x, state.logits, config.vocabularySize(), dim);
+        classifier(state, weights.wcls, config.vocabularySize(), dim);
 
         return state.logits;
     }
 
+    /**
+     * Batched prompt prefill for Qwen3 models on CPU, see {@link #forwardJavaBatch}: the per-head q/k rmsnorm and the GPT-NeoX style RoPE of {@link #forwardJavaQwen3}.
+     */
+    public static void forwardJavaBatchQwen3(Model model, State state, int[] tokens, int startPosition) {
+        final Qwen3Configuration config = (Qwen3Configuration) model.configuration();
+        final Qwen3StandardWeights weights = (Qwen3StandardWeights) model.weights();
+        int dim = config.dim();
+        int nHeadKv = config.numberOfKeyValueHeads();
+        int nEmbdHeadK = config.numberOfHeadsKey();
+        int nEmbdHeadV = config.numberOfHeadsValue();
+        int nEmbdHead = nEmbdHeadV;
+        int nEmbdGqa = nEmbdHeadV * nHeadKv;
+        int nComplEmbdHead = nEmbdHead / 2;
+        int qDim = nEmbdHeadK * config.numberOfHeads();
+        int gqa = config.numberOfHeads() / config.numberOfKeyValueHeads(); // integer multiplier of the kv sharing in multiquery
+        float sqrtHeadSize = (float) Math.sqrt(nEmbdHead);
+
+        // per-token activations for one chunk
+        state.allocateBatchBuffers();
+        final FloatTensor[] x = state.batchX, xb = state.batchXb, xb2 = state.batchXb2, q = state.batchQ, k = state.batchK, v = state.batchV, hb = state.batchHb, hb2 = state.batchHb2;
+        final int batchSize = x.length;
+
+        for (int chunkStart = 0; chunkStart < tokens.length; chunkStart += batchSize) {
+            final int n = Math.min(batchSize, tokens.length - chunkStart);
+            final int chunkPosition = startPosition + chunkStart;
+
+            for (int b = 0; b < n; b++) {
+                weights.token_embedding_table.copyTo(tokens[chunkStart + b] * dim, x[b], 0, dim);
+            }
+
+            // forward all the layers
+            for (int l = 0; l < config.numberOfLayers(); l++) {
+                // attention rmsnorm
+                for (int b = 0; b < n; b++) {
+                    rmsnorm(xb[b], x[b], weights.rms_att_weight[l], 0, dim, config.rmsNormEps());
+                }
+
+                // qkv matmuls for the whole chunk
+                weights.wq[l].matmul(n, xb, q, qDim, dim);
+                weights.wk[l].matmul(n, xb, k, nEmbdGqa, dim);
+                weights.wv[l].matmul(n, xb, v, nEmbdGqa, dim);
+
+                for (int b = 0; b < n; b++) {
+                    int position = chunkPosition + b;
+
+                    // per-head rmsnorm of q and k
+                    for (int i = 0; i < config.numberOfHeads(); i++) {
+                        rmsnorm(q[b], q[b], weights.attnQNorm[l], i * nEmbdHead, nEmbdHead, config.rmsNormEps());
+                    }
+                    for (int i = 0; i < config.numberOfKeyValueHeads(); i++) {
+                        rmsnorm(k[b], k[b], weights.attnKNorm[l], i * nEmbdHead, nEmbdHead, config.rmsNormEps());
+                    }
+
+                    // GPT-NeoX style RoPE, real/imaginary components are stored with a headSize/2 offset per head
+                    for (int h = 0; h < config.numberOfHeads(); ++h) {
+                        int rotn = h < config.numberOfKeyValueHeads() ? 2 : 1; // how many vectors? 2 = q & k, 1 = q only
+                        int poffset = h * nEmbdHead;
+                        for (int ic = 0; ic < nComplEmbdHead; ic++) {
+                            float fcr = weights.freq_cis_real.getFloat(position * nComplEmbdHead + ic);
+                            float fci = weights.freq_cis_imag.getFloat(position * nComplEmbdHead + ic);
+                            for (int vi = 0; vi < rotn; vi++) {
+                                FloatTensor vec = (vi == 0) ? q[b] : k[b]; // the vector to rotate (query or key)
+                                float v0 = vec.getFloat(poffset + ic);
+                                float v1 = vec.getFloat(poffset + ic + nComplEmbdHead);
+                                vec.setFloat(poffset + ic, v0 * fcr - v1 * fci);
+                                vec.setFloat(poffset + ic + nComplEmbdHead, v0 * fci + v1 * fcr);
+                            }
+                        }
+                    }
+
+                    // save key,value of every position of the chunk to our kv cache
+                    k[b].copyTo(0, state.keyCache[l], position * nEmbdGqa, nEmbdGqa);
+                    v[b].copyTo(0, state.valueCache[l], position * nEmbdGqa, nEmbdGqa);
+                }
+
+                // multihead attention, causal within the chunk
+                attentionBatch(state, n, chunkPosition, q, state.keyCache[l], state.valueCache[l], xb, nHeadKv, gqa, nEmbdHead, nEmbdHeadK, nEmbdHeadV, nEmbdGqa, sqrtHeadSize);
+
+                // final matmul to get the output of the attention
+                weights.wo[l].matmul(n, xb, xb2, dim, qDim);
+
+                for (int b = 0; b < n; b++) {
+                    // residual connection back into x
+                    x[b].addInPlace(xb2[b]);
+                    // ffn rmsnorm
+                    rmsnorm(xb[b], x[b], weights.rms_ffn_weight[l], 0, dim, config.rmsNormEps());
+                }
+
+                // self.w2(F.silu(self.w1(x)) * self.w3(x))
+                weights.w1[l].matmul(n, xb, hb, config.hiddenDim(), dim);
+                weights.w3[l].matmul(n, xb, hb2, config.hiddenDim(), dim);
+                for (int b = 0; b < n; b++) {
+                    hb[b].siluInPlace();
+                    hb[b].multiplyInPlace(hb2[b]);
+                }
+                weights.w2[l].matmul(n, hb, xb, dim, config.hiddenDim());
+
+                // residual connection
+                for (int b = 0; b < n; b++) {
+                    x[b].addInPlace(xb[b]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forward pass for Phi3 models on CPU, see {@link #forwardJavaPhi3(Model, Phi3State, int, int, boolean)}.
+     *
+     * @return the output logits
+     */
     public static FloatTensor forwardJavaPhi3(Model model, Phi3State state, int token, int position) {
+        return forwardJavaPhi3(model, state, token, position, true);
+    }
+
+    /**
+     * Forward pass for Phi3 models on CPU, the final rmsnorm and vocabulary projection are skipped if {@code computeLogits} is {@code false}
+     * (see {@link #forwardJava(Model, State, int, int, boolean)}).
+     */
+    public static FloatTensor forwardJavaPhi3(Model model, Phi3State state, int token, int position, boolean computeLogits) {
         Phi3Configuration config = (Phi3Configuration) model.configuration();
         Phi3StandardWeights weights = (Phi3StandardWeights) model.weights();
         int dim = config.dim();
@@ -492,29 +982,7 @@ public final class InferenceCore {
 
             int curLayer = l;
 
-            Parallel.parallelFor(0, config.numberOfHeads(), h -> {
-                int qOffset = h * headSize;
-
-                int attOffset = h * config.contextLength();
-
-                for (int t = 0; t <= position; t++) {
-                    int keyCacheOffset = /* loff + */ t * kvDim + (h / kvMul) * headSize;
-                    float score = state.q.dot(qOffset, state.keyCache[curLayer], keyCacheOffset, headSize);
-                    score /= sqrtHeadSize;
-                    state.att.setFloat(attOffset + t, score);
-                }
-
-                state.att.softmaxInPlace(attOffset, position + 1);
-
-                int xbOffset = h * headSize;
-                state.xb.fillInPlace(xbOffset, headSize, 0f);
-
-                for (int t = 0; t <= position; t++) {
-                    int vOffset = /* loff + */ t * kvDim + (h / kvMul) * headSize;
-                    float a = state.att.getFloat(attOffset + t);
-                    state.xb.saxpyInPlace(xbOffset, state.valueCache[curLayer], vOffset, headSize, a);
-                }
-            });
+            attention(state, state.q, state.keyCache[curLayer], state.valueCache[curLayer], state.xb, config.numberOfHeads(), kvMul, headSize, headSize, headSize, kvDim, position + 1, sqrtHeadSize);
 
             // final matmul to get the output of the attention
             weights.wo[l].matmul(state.xb, state.xb2, dim, dim);
@@ -528,7 +996,7 @@ public final class InferenceCore {
             copyChunk(state.hb, state.hbG, 2 * config.hiddenDim(), config.hiddenDim(), 2, 0);
             copyChunk(state.hb, state.hbU, 2 * config.hiddenDim(), config.hiddenDim(), 2, 1);
 
-            state.hbG.mapInPlace(value -> value / (float) (1.0 + Math.exp(-value)));
+            state.hbG.siluInPlace();
 
             state.hbU.multiplyInPlace(state.hbG);
 
@@ -537,15 +1005,111 @@ public final class InferenceCore {
             state.x.addInPlace(state.xb);
         }
 
+        if (!computeLogits) {
+            // prompt ingestion: the logits for this position are never sampled
+            return null;
+        }
+
         // final rmsnorm
         rmsnorm(state.x, state.x, weights.rms_final_weight, 0, dim, config.rmsNormEps());
 
         // classifier into logits
-        weights.wcls.matmul(state.x, state.logits, config.vocabularySize(), dim);
+        classifier(state, weights.wcls, config.vocabularySize(), dim);
 
         return state.logits;
     }
 
+    /**
+     * Batched prompt prefill for Phi3 models on CPU, see {@link #forwardJavaBatch}: the fused qkv and gate/up matrices of {@link #forwardJavaPhi3}.
+     */
+    public static void forwardJavaBatchPhi3(Model model, Phi3State state, int[] tokens, int startPosition) {
+        Phi3Configuration config = (Phi3Configuration) model.configuration();
+        Phi3StandardWeights weights = (Phi3StandardWeights) model.weights();
+        int dim = config.dim();
+        int hiddenDim = config.hiddenDim();
+        int headSize = config.headSize();
+        int kvDim = (config.dim() * config.numberOfKeyValueHeads()) / config.numberOfHeads();
+        int kvMul = config.numberOfHeads() / config.numberOfKeyValueHeads(); // integer multiplier of the kv sharing in multiquery
+        float sqrtHeadSize = (float) Math.sqrt(headSize);
+        final int opSize = dim + 2 * (config.numberOfKeyValueHeads() * headSize);
+        int dimHalf = headSize / 2;
+
+        // per-token activations for one chunk, hb holds gate and up
+        state.allocateBatchBuffers();
+        final FloatTensor[] x = state.batchX, xb = state.batchXb, xb2 = state.batchXb2, qkv = state.batchQkv, q = state.batchQ, k = state.batchK, v = state.batchV, hb = state.batchHb;
+        final int batchSize = x.length;
+
+        for (int chunkStart = 0; chunkStart < tokens.length; chunkStart += batchSize) {
+            final int n = Math.min(batchSize, tokens.length - chunkStart);
+            final int chunkPosition = startPosition + chunkStart;
+
+            for (int b = 0; b < n; b++) {
+                weights.token_embedding_table.copyTo(tokens[chunkStart + b] * dim, x[b], 0, dim);
+            }
+
+            // forward all the layers
+            for (int l = 0; l < config.numberOfLayers(); l++) {
+                for (int b = 0; b < n; b++) {
+                    rmsnorm(xb[b], x[b], weights.rms_att_weight[l], 0, dim, config.rmsNormEps());
+                }
+
+                weights.wqkv[l].matmul(n, xb, qkv, opSize, dim);
+
+                for (int b = 0; b < n; b++) {
+                    int position = chunkPosition + b;
+                    qkv[b].copyTo(0, q[b], 0, dim);
+                    qkv[b].copyTo(dim, k[b], 0, kvDim);
+                    qkv[b].copyTo(dim + kvDim, v[b], 0, kvDim);
+
+                    for (int i = 0; i < dim; i += 2) {
+                        int head_dim = i % headSize;
+                        int base = i - head_dim;
+                        int ic = base + head_dim / 2;
+                        float fcr = weights.freq_cis_real.getFloat(position * (headSize / 2) + (head_dim / 2));
+                        float fci = weights.freq_cis_imag.getFloat(position * (headSize / 2) + (head_dim / 2));
+                        int rotn = i < kvDim ? 2 : 1; // how many vectors? 2 = q & k, 1 = q only
+                        for (int vi = 0; vi < rotn; vi++) {
+                            FloatTensor vec = vi == 0 ? q[b] : k[b]; // the vector to rotate (query or key)
+                            float v0 = vec.getFloat(ic);
+                            float v1 = vec.getFloat(ic + dimHalf);
+                            vec.setFloat(ic, v0 * fcr - v1 * fci);
+                            vec.setFloat(ic + dimHalf, v0 * fci + v1 * fcr);
+                        }
+                    }
+
+                    // save key,value of every position of the chunk to our kv cache
+                    k[b].copyTo(0, state.keyCache[l], position * kvDim, kvDim);
+                    v[b].copyTo(0, state.valueCache[l], position * kvDim, kvDim);
+                }
+
+                // multihead attention, causal within the chunk
+                attentionBatch(state, n, chunkPosition, q, state.keyCache[l], state.valueCache[l], xb, config.numberOfKeyValueHeads(), kvMul, headSize, headSize, headSize, kvDim, sqrtHeadSize);
+
+                // final matmul to get the output of the attention
+                weights.wo[l].matmul(n, xb, xb2, dim, dim);
+
+                for (int b = 0; b < n; b++) {
+                    // residual connection back into x
+                    x[b].addInPlace(xb2[b]);
+                    rmsnorm(xb[b], x[b], weights.rms_ffn_weight[l], 0, dim, config.rmsNormEps());
+                }
+
+                // gate and up in one matmul, then silu(gate) * up into the first half of hb
+                weights.wGateUp[l].matmul(n, xb, hb, 2 * hiddenDim, dim);
+                for (int b = 0; b < n; b++) {
+                    hb[b].siluInPlace(0, hiddenDim);
+                    hb[b].multiplyInPlace(0, hb[b], hiddenDim, hiddenDim);
+                }
+
+                weights.wDown[l].matmul(n, hb, xb, dim, hiddenDim);
+
+                for (int b = 0; b < n; b++) {
+                    x[b].addInPlace(xb[b]);
+                }
+            }
+        }
+    }
+
     static void copyChunk(FloatTensor in, FloatTensor out, int dim1In, int dim1Out, int nChunks, int chunkNo) {
         assert (dim1In == dim1Out * nChunks);
         final int startOffsetInDim1 = chunkNo * dim1Out;
@@ -599,6 +1163,15 @@ public final class InferenceCore {
                 MemorySegment.copy(tokenEmbeddings, (long) token * bytesPerToken, state.embeddingX.getSegment(), 0, bytesPerToken);
 
             }
+            case Q4_0 -> {
+                MemorySegment tokenEmbeddings = weights.getTokenEmbeddingTable().asByteArray().getSegment();
+                int blockSize = 32;
+                int Q4_0_BLOCK_BYTES = 18; // 2 bytes scale + 16 bytes packed quants
+                int blocksPerToken = (configuration.dim() + blockSize - 1) / blockSize; // Ceiling division
+                long bytesPerToken = (long) blocksPerToken * Q4_0_BLOCK_BYTES;
+
+                MemorySegment.copy(tokenEmbeddings, (long) token * bytesPerToken, state.embeddingX.getSegment(), 0, bytesPerToken);
+            }
             default -> throw new IllegalArgumentException("Unsupported weight type: " + weights.getWeightType());
         }
 
@@ -1,6 +1,7 @@
 package org.beehive.gpullama3.inference;
 
 import org.beehive.gpullama3.auxiliary.LastRunMetrics;
+import org.beehive.gpullama3.inference.sampler.LogitsCandidates;
 import org.beehive.gpullama3.inference.sampler.Sampler;
 import org.beehive.gpullama3.inference.state.State;
 import org.beehive.gpullama3.model.Configuration;
@@ -71,6 +72,11 @@ public final class InferenceEngine {
         long inferenceStartNanos = 0;
 
         Object logits;
+        // Greedy and top-k samplers only need the top-k logits, selected while computing them
+        state.logitsCandidates = LogitsCandidates.forSampler(sampler);
+        // Penalties look back over the prompt too
+        sampler.acceptPrompt(promptTokens);
+
         // Validate and adjust maxTokens if necessary
         if (maxTokens < 0 || model.configuration().contextLength() < maxTokens) {
             maxTokens = model.configuration().contextLength();
@@ -85,9 +91,32 @@ public final class InferenceEngine {
         int promptIndex = 0;
         int pos = startPosition;
 
+        // Batched prefill: ingest the pending token and all prompt tokens except the last one in chunks,
+        // their logits are never sampled. The last prompt token goes through the regular loop below.
+        int prefillCount = Math.min(promptTokens.size(), maxTokens - pos);
+        if (InferenceCore.PREFILL_BATCH_SIZE > 1 && prefillCount > 1) {
+            int[] prefillTokens = new int[prefillCount];
+            prefillTokens[0] = currentToken;
+            for (int i = 1; i < prefillCount; i++) {
+                prefillTokens[i] = promptTokens.get(i - 1);
+            }
+            model.forwardBatchNoLogits(state, prefillTokens, pos);
+
+            if (echo) {
+                System.err.print(Tokenizer.replaceControlCharacters(model.tokenizer().decode(promptTokens.subList(0, prefillCount))));
+            }
+
+            // Update as if the prompt tokens had been consumed one by one
+            promptIndex = prefillCount;
+            currentToken = promptTokens.get(prefillCount - 1);
+            state.latestToken = currentToken;
+            pos += prefillCount;
+        }
+
         while (pos < maxTokens) {
 
-            logits = InferenceCore.forwardJava(model, state, currentToken, pos);
+            // Logits are only needed once the prompt has been fully ingested
+            logits = InferenceCore.forwardJava(model, state, currentToken, pos, promptIndex >= promptTokens.size());
 
             // Handle token processing
             if (promptIndex < promptTokens.size()) {
@@ -103,7 +132,7 @@ public final class InferenceEngine {
                 }
 
                 // Sample the next token
-                nextToken = sampler.sampleToken(logits);
+                nextToken = sampler.sampleToken(state.logitsCandidates != null ? state.logitsCandidates : logits);
 
                 // Output the token if echo is enabled
                 if (echo) {
@@ -146,6 +175,11 @@ public final class InferenceEngine {
         long startNanos = System.nanoTime();
         long inferenceStartNanos = 0;
 
+        // Greedy and top-k samplers only need the top-k logits, selected while computing them
+        state.logitsCandidates = LogitsCandidates.forSampler(sampler);
+        // Penalties look back over the prompt too
+        sampler.acceptPrompt(promptTokens);
+
         // Validate and adjust maxTokens if necessary
         if (maxTokens < 0 || model.configuration().contextLength() < maxTokens) {
             maxTokens = model.configuration().contextLength();
@@ -158,15 +192,31 @@ public final class InferenceEngine {
         int currentToken = state.latestToken; // BOS?
         int nextToken = 0;
         int promptIndex = 0;
+        int position = startPosition;
+
+        // Batched prefill: ingest all prompt tokens except the last one in chunks, their logits are never sampled.
+        // The last prompt token goes through the regular loop below.
+        int prefillCount = Math.min(promptTokens.size() - 1, maxTokens - position);
+        if (InferenceCore.PREFILL_BATCH_SIZE > 1 && prefillCount > 1) {
+            int[] prefillTokens = promptTokens.subList(0, prefillCount).stream().mapToInt(Integer::intValue).toArray();
+            model.forwardBatchNoLogits(state, prefillTokens, position);
+            promptIndex = prefillCount;
+            position += prefillCount;
+        }
 
-        for (int position = startPosition; position < maxTokens; ++position) {
+        for (; position < maxTokens; ++position) {
 
             // Handle token processing
             if (promptIndex < promptTokens.size()) {
                 // We're still processing the prompt tokens
                 final int token = promptTokens.get(promptIndex);
 
-                model.forward(state, token, position);
+                // Only the last prompt token produces logits that are sampled
+                if (promptIndex + 1 < promptTokens.size()) {
+                    model.forwardNoLogits(state, token, position);
+                } else {
+                    model.forward(state, token, position);
+                }
 
                 promptIndex++;
                 if (promptIndex < promptTokens.size()) {
@@ -187,7 +237,7 @@ public final class InferenceEngine {
             }
 
             // Sample the next token
-            nextToken = sampler.sampleToken(state.logits);
+            nextToken = sampler.sampleToken(state.logitsCandidates != null ? state.logitsCandidates : state.logits);
 
             // Output the token if echo is enabled
             if (echo) {
@@ -225,6 +275,12 @@ public final class InferenceEngine {
             IntConsumer onTokenGenerated) {
 
         long startNanos = System.nanoTime();
+
+        // Greedy and top-k samplers only need the top-k logits, selected while computing them
+        state.logitsCandidates = LogitsCandidates.forSampler(sampler);
+        // Penalties look back over the prompt too
+        sampler.acceptPrompt(promptTokens);
+
         if (maxTokens < 0 || model.configuration().contextLength() < maxTokens) {
             maxTokens = model.configuration().contextLength();
         }
@@ -232,10 +288,38 @@ public final class InferenceEngine {
         int token = state.latestToken; // BOS?
         int nextToken;
         int promptIndex = 0;
+        int position = startPosition;
+
+        // Batched prefill: ingest the pending token and all prompt tokens except the last one in chunks,
+        // their logits are never sampled. The last prompt token goes through the regular loop below.
+        int prefillCount = Math.min(promptTokens.size(), maxTokens - position);
+        if (InferenceCore.PREFILL_BATCH_SIZE > 1 && prefillCount > 1) {
+            int[] prefillTokens = new int[prefillCount];
+            prefillTokens[0] = token;
+            for (int i = 1; i < prefillCount; i++) {
+                prefillTokens[i] = promptTokens.get(i - 1);
+            }
+            model.forwardBatchNoLogits(state, prefillTokens, position);
+
+            if (echo) {
+                System.err.print(Tokenizer.replaceControlCharacters(model.tokenizer().decode(promptTokens.subList(0, prefillCount))));
+            }
+
+            // Update as if the prompt tokens had been consumed one by one
+            promptIndex = prefillCount;
+            state.latestToken = token = promptTokens.get(prefillCount - 1);
+            position += prefillCount;
+        }
+
         ByteArrayOutputStream baos = new ByteArrayOutputStream(5);
-        for (int position = startPosition; position < maxTokens; ++position) {
+        for (; position < maxTokens; ++position) {
 
-            model.forward(state, token, position);
+            if (promptIndex < promptTokens.size()) {
+                // The next token is forced from the prompt, logits are not needed
+                model.forwardNoLogits(state, token, position);
+            } else {
+                model.forward(state, token, position);
+            }
             if (promptIndex < promptTokens.size()) {
                 // Force-pick token from prompt.
                 nextToken = promptTokens.get(promptIndex++);
@@ -245,7 +329,7 @@ public final class InferenceEngine {
                     System.err.print(Tokenizer.replaceControlCharacters(model.tokenizer().decode(List.of(nextToken))));
                 }
             } else {
-                nextToken = sampler.sampleToken(state.logits);
+                nextToken = sampler.sampleToken(state.logitsCandidates != null ? state.logitsCandidates : state.logits);
                 if (echo) {
                     // log inferred token
                     System.err.print(Tokenizer.replaceControlCharacters(model.tokenizer().decode(List.of(nextToken))));
@@ -275,12 +359,29 @@ public final class InferenceEngine {
 
     }
 
+    /**
+     * Candidates to sample from on the TornadoVM path: set if the plan reduces the logits to the top-k on the device and the
+     * sampler only needs that many of them, {@code null} to sample from all the logits.
+     */
+    private static LogitsCandidates deviceLogitsCandidates(State state, Sampler sampler) {
+        LogitsCandidates candidates = LogitsCandidates.forSampler(sampler);
+        if (candidates == null || state.wrapLogitsTopKTokens == null || candidates.k() > state.wrapLogitsTopKTokens.getSize()) {
+            return null;
+        }
+        return candidates;
+    }
+
     public static List<Integer> generateTokensGPULlama(Model model, State state, int startPosition, List<Integer> promptTokens, Set<Integer> stopTokens, int maxTokens, Sampler sampler, boolean echo,
             IntConsumer onTokenGenerated, TornadoVMMasterPlan tornadoVMPlan) {
         // === Setup and Initialization ===
         long startNanos = System.nanoTime();
         long inferenceStartNanos = 0;
 
+        // Sample from the top-k reduced on the device if the plan does it and this sampler only needs those
+        state.logitsCandidates = deviceLogitsCandidates(state, sampler);
+        // Penalties look back over the prompt too
+        sampler.acceptPrompt(promptTokens);
+
         // Pre-validate the max tokens to avoid checking in the loop
         int actualMaxTokens = Math.min(maxTokens > 0 ? maxTokens : model.configuration().contextLength(), model.configuration().contextLength());
 
@@ -327,7 +428,7 @@ public final class InferenceEngine {
                 }
 
                 // Sample next token - use GPU sampling if available
-                nextToken = sampler.sampleToken(logits);
+                nextToken = sampler.sampleToken(state.logitsCandidates != null ? state.logitsCandidates : logits);
 
                 // Add token consumer support
                 if (onTokenGenerated != null) {
@@ -371,6 +472,11 @@ public final class InferenceEngine {
         long startNanos = System.nanoTime();
         long inferenceStartNanos = 0;
 
+        // Sample from the top-k reduced on the device if the plan does it and this sampler only needs those
+        state.logitsCandidates = deviceLogitsCandidates(state, sampler);
+        // Penalties look back over the prompt too
+        sampler.acceptPrompt(promptTokens);
+
         // Pre-validate the max tokens to avoid checking in the loop
         int actualMaxTokens = Math.min(maxTokens > 0 ? maxTokens : model.configuration().contextLength(), model.configuration().contextLength());
 
@@ -423,7 +529,7 @@ public final class InferenceEngine {
             }
 
             // Sample the next token
-            nextToken = sampler.sampleToken(state.wrapLogits);
+            nextToken = sampler.sampleToken(state.logitsCandidates != null ? state.logitsCandidates : state.wrapLogits);
 
             // Output the token if echo is enabled
             if (echo) {
@@ -463,6 +569,11 @@ public final class InferenceEngine {
         long startNanos = System.nanoTime();
         long inferenceStartNanos = 0;
 
+        // Sample from the top-k reduced on the device if the plan does it and this sampler only needs those
+        state.logitsCandidates = deviceLogitsCandidates(state, sampler);
+        // Penalties look back over the prompt too
+        sampler.acceptPrompt(promptTokens);
+
         // Validate and adjust maxTokens if necessary
         if (maxTokens < 0 || model.configuration().contextLength() < maxTokens) {
             maxTokens = model.configuration().contextLength();
@@ -495,7 +606,7 @@ public final class InferenceEngine {
                 }
 
                 // Sample the next token
-                nextToken = sampler.sampleToken(logits);
+                nextToken = sampler.sampleToken(state.logitsCandidates != null ? state.logitsCandidates : logits);
 
                 // Output the token if echo is enabled
                 if (echo) {
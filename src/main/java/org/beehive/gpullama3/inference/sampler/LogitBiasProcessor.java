@@ -0,0 +1,46 @@
+package org.beehive.gpullama3.inference.sampler;
+
+import org.beehive.gpullama3.tensor.standard.FloatTensor;
+import uk.ac.manchester.tornado.api.types.arrays.FloatArray;
+
+import java.util.Map;
+
+/**
+ * Adds a fixed bias to the logits of a few tokens, {@code -Infinity} bans a token. The biases are kept as two primitive
+ * arrays, only the biased tokens are touched.
+ */
+public final class LogitBiasProcessor implements LogitsProcessor {
+
+    private final int[] tokens;
+    private final float[] biases;
+
+    public LogitBiasProcessor(Map<Integer, Float> logitBias) {
+        this.tokens = new int[logitBias.size()];
+        this.biases = new float[logitBias.size()];
+        int i = 0;
+        for (Map.Entry<Integer, Float> entry : logitBias.entrySet()) {
+            tokens[i] = entry.getKey();
+            biases[i] = entry.getValue();
+            i++;
+        }
+    }
+
+    @Override
+    public void process(Object logits) {
+        if (logits instanceof FloatTensor tensor) {
+            for (int i = 0; i < tokens.length; i++) {
+                if (tokens[i] < tensor.size()) {
+                    tensor.setFloat(tokens[i], tensor.getFloat(tokens[i]) + biases[i]);
+                }
+            }
+        } else if (logits instanceof FloatArray array) {
+            for (int i = 0; i < tokens.length; i++) {
+                if (tokens[i] < array.getSize()) {
+                    array.set(tokens[i], array.get(tokens[i]) + biases[i]);
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported tensor type: " + (logits != null ? logits.getClass().getName() : "null"));
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.beehive.gpullama3.inference.sampler;
+
+import org.beehive.gpullama3.auxiliary.Parallel;
+import org.beehive.gpullama3.inference.InferenceCore;
+import org.beehive.gpullama3.tensor.standard.FloatTensor;
+import uk.ac.manchester.tornado.api.types.arrays.FloatArray;
+import uk.ac.manchester.tornado.api.types.arrays.IntArray;
+
+/**
+ * The {@code k} largest logits and their tokens, selected while the classifier computes them (CPU path).
+ * <p>
+ * {@link #project} splits the rows of the classifier in one slice per compute thread. Each thread computes its rows a few at a
+ * time and offers them, still in cache, to its own min-heap of size {@code k}; the per-thread heaps are merged at the end.
+ * Greedy and top-k samplers then read the {@code k} candidates instead of making a second pass over the whole vocabulary.
+ * The logits are still written, samplers that need the whole distribution are unaffected.
+ * <p>
+ * On the TornadoVM path the selection runs on the device at the end of the logits task graph, see {@link #load}.
+ */
+public final class LogitsCandidates {
+
+    // Rows computed before offering them to the heap, a multiple of FloatTensor.MATMUL_ROW_BLOCK
+    private static final int ROW_CHUNK = 64;
+
+    private final int k;
+    private final int slices;
+    private final float[][] sliceValues; // per-thread min-heaps
+    private final int[][] sliceTokens;
+    private final int[] sliceSizes;
+    private final float[] values;        // merged candidates, in descending order
+    private final int[] tokens;
+    private int size;
+
+    public LogitsCandidates(int k) {
+        this.k = k;
+        this.slices = Parallel.THREADS;
+        this.sliceValues = new float[slices][k];
+        this.sliceTokens = new int[slices][k];
+        this.sliceSizes = new int[slices];
+        this.values = new float[k];
+        this.tokens = new int[k];
+    }
+
+    /**
+     * Candidates for {@code sampler} if it only looks at the most likely tokens and {@code -Dllama.FusedLogitsTopK} is set,
+     * {@code null} if it needs the whole distribution.
+     */
+    public static LogitsCandidates forSampler(Sampler sampler) {
+        if (!InferenceCore.FUSED_LOGITS_TOPK) {
+            return null;
+        }
+        if (sampler == Sampler.TENSOR_ARGMAX) {
+            return new LogitsCandidates(1);
+        }
+        if (sampler instanceof TruncationSampler truncationSampler && truncationSampler.topk > 0) {
+            return new LogitsCandidates(truncationSampler.topk);
+        }
+        return null;
+    }
+
+    /**
+     * {@code logits = wcls * x}, as {@link FloatTensor#matmul}, keeping the {@code k} largest logits.
+     */
+    public void project(FloatTensor wcls, FloatTensor x, FloatTensor logits, int dim0, int dim1) {
+        int rowBlocks = (dim0 + FloatTensor.MATMUL_ROW_BLOCK - 1) / FloatTensor.MATMUL_ROW_BLOCK;
+        Parallel.parallelFor(0, slices, slice -> {
+            int fromRow = (int) ((long) rowBlocks * slice / slices) * FloatTensor.MATMUL_ROW_BLOCK;
+            int toRow = Math.min(dim0, (int) ((long) rowBlocks * (slice + 1) / slices) * FloatTensor.MATMUL_ROW_BLOCK);
+            sliceSizes[slice] = 0;
+            for (int row = fromRow; row < toRow; row += ROW_CHUNK) {
+                int end = Math.min(toRow, row + ROW_CHUNK);
+                wcls.matmulRows(x, logits, dim1, row, end);
+                for (int i = row; i < end; i++) {
+                    offer(slice, logits.getFloat(i), i);
+                }
+            }
+        });
+        merge();
+    }
+
+    /**
+     * Candidates selected on the device, sorted in descending order, token {@code -1} marks unused slots.
+     */
+    public void load(FloatArray deviceValues, IntArray deviceTokens) {
+        int n = 0;
+        while (n < k && deviceTokens.get(n) >= 0) {
+            values[n] = deviceValues.get(n);
+            tokens[n] = deviceTokens.get(n);
+            n++;
+        }
+        size = n;
+    }
+
+    /**
+     * Maximum number of candidates.
+     */
+    public int k() {
+        return k;
+    }
+
+    /**
+     * Number of candidates, {@code min(k, vocabulary size)}.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Token of the {@code i}-th most likely candidate, {@code token(0)} is the argmax.
+     */
+    public int token(int i) {
+        return tokens[i];
+    }
+
+    /**
+     * Logit of the {@code i}-th most likely candidate.
+     */
+    public float logit(int i) {
+        return values[i];
+    }
+
+    private void merge() {
+        // all candidates into slice 0's heap, then pop them smallest first
+        for (int slice = 1; slice < slices; slice++) {
+            for (int i = 0; i < sliceSizes[slice]; i++) {
+                offer(0, sliceValues[slice][i], sliceTokens[slice][i]);
+            }
+        }
+        float[] heapValues = sliceValues[0];
+        int[] heapTokens = sliceTokens[0];
+        size = sliceSizes[0];
+        for (int n = size - 1; n >= 0; n--) {
+            values[n] = heapValues[0];
+            tokens[n] = heapTokens[0];
+            heapValues[0] = heapValues[n];
+            heapTokens[0] = heapTokens[n];
+            siftDown(heapValues, heapTokens, 0, n);
+        }
+    }
+
+    private void offer(int slice, float value, int token) {
+        float[] heapValues = sliceValues[slice];
+        int[] heapTokens = sliceTokens[slice];
+        int n = sliceSizes[slice];
+        if (n < k) {
+            // sift up
+            int i = n;
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!less(value, token, heapValues[parent], heapTokens[parent])) {
+                    break;
+                }
+                heapValues[i] = heapValues[parent];
+                heapTokens[i] = heapTokens[parent];
+                i = parent;
+            }
+            heapValues[i] = value;
+            heapTokens[i] = token;
+            sliceSizes[slice] = n + 1;
+        } else if (less(heapValues[0], heapTokens[0], value, token)) {
+            heapValues[0] = value;
+            heapTokens[0] = token;
+            siftDown(heapValues, heapTokens, 0, n);
+        }
+    }
+
+    private static void siftDown(float[] heapValues, int[] heapTokens, int i, int n) {
+        float value = heapValues[i];
+        int token = heapTokens[i];
+        int child;
+        while ((child = 2 * i + 1) < n) {
+            if (child + 1 < n && less(heapValues[child + 1], heapTokens[child + 1], heapValues[child], heapTokens[child])) {
+                child++;
+            }
+            if (!less(heapValues[child], heapTokens[child], value, token)) {
+                break;
+            }
+            heapValues[i] = heapValues[child];
+            heapTokens[i] = heapTokens[child];
+            i = child;
+        }
+        heapValues[i] = value;
+        heapTokens[i] = token;
+    }
+
+    /**
+     * Candidate order: smaller logit first, on ties the larger token first (argmax keeps the first maximum).
+     */
+    private static boolean less(float value, int token, float otherValue, int otherToken) {
+        return value < otherValue || (value == otherValue && token > otherToken);
+    }
+}
@@ -0,0 +1,25 @@
+package org.beehive.gpullama3.inference.sampler;
+
+/**
+ * Modifies the logits in place before a {@link Sampler} picks the next token, see {@link LogitsProcessorChain}.
+ * Supports both FloatTensor and FloatArray logits. Implementations must not allocate per token.
+ */
+public interface LogitsProcessor {
+
+    /**
+     * Modifies {@code logits} ({@code FloatTensor} or {@code FloatArray}) in place.
+     */
+    void process(Object logits);
+
+    /**
+     * Called with every token picked by the sampler, after {@link #process}.
+     */
+    default void accept(int token) {
+    }
+
+    /**
+     * Called with every prompt token before the first {@link #process}, e.g. penalties count them but a grammar does not match them.
+     */
+    default void acceptPrompt(int token) {
+    }
+}
@@ -0,0 +1,41 @@
+package org.beehive.gpullama3.inference.sampler;
+
+import java.util.List;
+
+/**
+ * A {@link Sampler} that runs {@link LogitsProcessor}s over the logits, in order and in place, before delegating to another
+ * sampler, then reports the picked token back to the processors.
+ * <p>
+ * The processors need the whole distribution: {@link LogitsCandidates#forSampler} never fuses the top-k selection for a chain.
+ */
+public final class LogitsProcessorChain implements Sampler {
+
+    private final Sampler sampler;
+    private final LogitsProcessor[] processors;
+
+    public LogitsProcessorChain(Sampler sampler, List<LogitsProcessor> processors) {
+        this.sampler = sampler;
+        this.processors = processors.toArray(new LogitsProcessor[0]);
+    }
+
+    @Override
+    public int sampleToken(Object tensor) {
+        for (LogitsProcessor processor : processors) {
+            processor.process(tensor);
+        }
+        int token = sampler.sampleToken(tensor);
+        for (LogitsProcessor processor : processors) {
+            processor.accept(token);
+        }
+        return token;
+    }
+
+    @Override
+    public void acceptPrompt(List<Integer> promptTokens) {
+        for (LogitsProcessor processor : processors) {
+            for (int token : promptTokens) {
+                processor.acceptPrompt(token);
+            }
+        }
+    }
+}
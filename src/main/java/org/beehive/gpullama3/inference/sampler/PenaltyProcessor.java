@@ -0,0 +1,133 @@
+package org.beehive.gpullama3.inference.sampler;
+
+import org.beehive.gpullama3.tensor.standard.FloatTensor;
+import uk.ac.manchester.tornado.api.types.arrays.FloatArray;
+
+import java.util.Arrays;
+
+/**
+ * Repetition, frequency and presence penalties over the last {@code window} tokens, prompt tokens included (llama.cpp semantics):
+ * <ul>
+ *   <li>repetition: positive logits are divided by {@code repeatPenalty}, negative ones multiplied, {@code 1} disables it</li>
+ *   <li>frequency: {@code frequencyPenalty} times the number of occurrences is subtracted</li>
+ *   <li>presence: {@code presencePenalty} is subtracted once for every token in the window</li>
+ * </ul>
+ * The window is a ring buffer of tokens, their occurrences are counted in a small open-addressing map, so only the distinct
+ * tokens of the window are touched and nothing is allocated per token.
+ */
+public final class PenaltyProcessor implements LogitsProcessor {
+
+    private static final int EMPTY = -1;
+
+    private final float repeatPenalty;
+    private final float frequencyPenalty;
+    private final float presencePenalty;
+
+    private final int[] window; // ring buffer of the last tokens
+    private int head;
+    private int filled;
+
+    // token -> occurrences in the window, linear probing, at most half full
+    private final int[] keys;
+    private final int[] counts;
+    private final int mask;
+
+    public PenaltyProcessor(int window, float repeatPenalty, float frequencyPenalty, float presencePenalty) {
+        this.repeatPenalty = repeatPenalty;
+        this.frequencyPenalty = frequencyPenalty;
+        this.presencePenalty = presencePenalty;
+        this.window = new int[window];
+        int capacity = Integer.highestOneBit(Math.max(2, window) * 2 - 1) << 1;
+        this.keys = new int[capacity];
+        this.counts = new int[capacity];
+        this.mask = capacity - 1;
+        Arrays.fill(keys, EMPTY);
+    }
+
+    @Override
+    public void process(Object logits) {
+        if (logits instanceof FloatTensor tensor) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                int token = keys[slot];
+                if (token != EMPTY && token < tensor.size()) {
+                    tensor.setFloat(token, penalize(tensor.getFloat(token), counts[slot]));
+                }
+            }
+        } else if (logits instanceof FloatArray array) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                int token = keys[slot];
+                if (token != EMPTY && token < array.getSize()) {
+                    array.set(token, penalize(array.get(token), counts[slot]));
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported tensor type: " + (logits != null ? logits.getClass().getName() : "null"));
+        }
+    }
+
+    @Override
+    public void accept(int token) {
+        if (filled == window.length) {
+            decrement(window[head]);
+        } else {
+            filled++;
+        }
+        window[head] = token;
+        head = (head + 1) % window.length;
+        increment(token);
+    }
+
+    @Override
+    public void acceptPrompt(int token) {
+        accept(token);
+    }
+
+    private float penalize(float logit, int count) {
+        if (repeatPenalty != 1f) {
+            logit = logit > 0 ? logit / repeatPenalty : logit * repeatPenalty;
+        }
+        return logit - count * frequencyPenalty - presencePenalty;
+    }
+
+    private int slot(int token) {
+        int slot = home(token);
+        while (keys[slot] != EMPTY && keys[slot] != token) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int home(int token) {
+        int hash = token * 0x9E3779B9;
+        return (hash ^ hash >>> 16) & mask;
+    }
+
+    private void increment(int token) {
+        int slot = slot(token);
+        keys[slot] = token;
+        counts[slot]++;
+    }
+
+    private void decrement(int token) {
+        int hole = slot(token);
+        if (--counts[hole] > 0) {
+            return;
+        }
+        // backward shift deletion: move up the entries of the probe sequence that the hole would cut off
+        int next = hole;
+        while (true) {
+            next = (next + 1) & mask;
+            if (keys[next] == EMPTY) {
+                break;
+            }
+            int home = home(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                counts[hole] = counts[next];
+                hole = next;
+            }
+        }
+        keys[hole] = EMPTY;
+        counts[hole] = 0;
+    }
+}
@@ -1,11 +1,20 @@
 package org.beehive.gpullama3.inference.sampler;
 
 import org.beehive.gpullama3.Options;
+import org.beehive.gpullama3.inference.sampler.grammar.Grammar;
+import org.beehive.gpullama3.inference.sampler.grammar.GrammarProcessor;
+import org.beehive.gpullama3.inference.sampler.grammar.JsonSchemaGrammar;
 import org.beehive.gpullama3.tensor.standard.FloatTensor;
 import org.beehive.gpullama3.model.Model;
 import org.beehive.gpullama3.tornadovm.utils.FloatArrayUtils;
 import uk.ac.manchester.tornado.api.types.arrays.FloatArray;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.random.RandomGenerator;
 import java.util.random.RandomGeneratorFactory;
 
@@ -23,6 +32,8 @@ public interface Sampler {
             return ((FloatTensor) tensor).argmax();
         } else if (tensor instanceof FloatArray) {
             return argmaxFloatArray((FloatArray) tensor);
+        } else if (tensor instanceof LogitsCandidates) {
+            return ((LogitsCandidates) tensor).token(0);
         }
         throw new IllegalArgumentException("Unsupported tensor type: " + (tensor != null ? tensor.getClass().getName() : "null"));
     };
@@ -44,6 +55,7 @@ public interface Sampler {
      *   <li>Greedy sampling (temperature = 0): Always selects the most probable token</li>
      *   <li>Temperature sampling: Adjusts probability distribution sharpness</li>
      *   <li>Top-p (nucleus) sampling: Considers only tokens comprising the top p probability mass</li>
+     *   <li>Top-k and min-p sampling (the overload below): Considers only the k most likely tokens, or those at least min-p times as likely as the most likely one</li>
      * </ul>
      *
      * <p>The method handles both {@link FloatTensor} and {@link FloatArray} logits types
@@ -72,6 +84,18 @@ public interface Sampler {
      *         if logits are of an unsupported type
      */
     static Sampler selectSampler(int vocabularySize, float temperature, float topp, long rngSeed) {
+        return selectSampler(vocabularySize, temperature, topp, 0, 0f, rngSeed);
+    }
+
+    /**
+     * Same as {@link #selectSampler(int, float, float, long)}, with top-k and min-p truncation.
+     *
+     * @param topk
+     *         The number of most likely tokens to sample from, values ≤0 disable top-k sampling
+     * @param minp
+     *         The minimum probability of a token relative to the most likely one (0.0-1.0), values ≤0 disable min-p sampling
+     */
+    static Sampler selectSampler(int vocabularySize, float temperature, float topp, int topk, float minp, long rngSeed) {
         Sampler sampler;
         if (temperature == 0.0f) {
             // greedy argmax sampling: take the token with the highest probability
@@ -79,18 +103,13 @@ public interface Sampler {
         } else {
             // we sample from this distribution to get the next token
             RandomGenerator rng = RandomGeneratorFactory.getDefault().create(rngSeed);
-            Sampler innerSampler;
-            // Determine whether to use top-p (nucleus) sampling
-            if (topp <= 0 || topp >= 1) {
-                // If topp is outside (0,1), use standard categorical sampling
-                // This samples directly from the probability distribution
-                innerSampler = new CategoricalSampler(rng);
-            } else {
-                // Use top-p (nucleus) sampling with the specified threshold
-                // This restricts sampling to only the most likely tokens that
-                // cumulatively comprise the top p probability mass
-                innerSampler = new ToppSampler(vocabularySize, topp, rng);
+            if (topk > 0 || minp > 0 || (topp > 0 && topp < 1)) {
+                // Truncation (top-k, min-p, top-p) runs on the raw logits, the softmax only covers the surviving candidates
+                return new TruncationSampler(vocabularySize, temperature, topk, topp, minp, rng);
             }
+            // Otherwise use standard categorical sampling
+            // This samples directly from the probability distribution
+            Sampler innerSampler = new CategoricalSampler(rng);
 
             // Create a sampler that:
             // 1. Applies temperature scaling to the logits
@@ -122,7 +141,32 @@ public interface Sampler {
     }
 
     static Sampler createSampler(Model model, Options options) {
-        return selectSampler(model.configuration().vocabularySize(), options.temperature(), options.topp(), options.seed());
+        Sampler sampler = selectSampler(model.configuration().vocabularySize(), options.temperature(), options.topp(), options.topk(), options.minp(), options.seed());
+        // Logit bias, then penalties (as llama.cpp), in place before the sampler
+        List<LogitsProcessor> processors = new ArrayList<>();
+        if (!options.logitBias().isEmpty()) {
+            processors.add(new LogitBiasProcessor(options.logitBias()));
+        }
+        boolean penalties = options.repeatPenalty() != 1f || options.frequencyPenalty() != 0f || options.presencePenalty() != 0f;
+        if (penalties && options.repeatLastN() > 0) {
+            processors.add(new PenaltyProcessor(options.repeatLastN(), options.repeatPenalty(), options.frequencyPenalty(), options.presencePenalty()));
+        }
+        // Constrained decoding last, nothing can lift its mask
+        Grammar grammar = null;
+        try {
+            if (options.grammar() != null) {
+                grammar = Grammar.parse(Files.readString(Path.of(options.grammar())));
+            } else if (options.jsonSchema() != null) {
+                String schema = options.jsonSchema().strip();
+                grammar = JsonSchemaGrammar.compile(schema.startsWith("{") ? schema : Files.readString(Path.of(schema)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (grammar != null) {
+            processors.add(new GrammarProcessor(grammar, model.tokenizer(), model.configuration().vocabularySize(), model.chatFormat().getStopTokens()));
+        }
+        return processors.isEmpty() ? sampler : new LogitsProcessorChain(sampler, processors);
     }
 
     /**
@@ -155,4 +199,10 @@ public interface Sampler {
      * @return The selected token index
      */
     int sampleToken(Object tensor);
+
+    /**
+     * Called with the prompt tokens before the first {@link #sampleToken} of a generation, e.g. so that penalties also count them.
+     */
+    default void acceptPrompt(List<Integer> promptTokens) {
+    }
 }
\ No newline at end of file
@@ -0,0 +1,267 @@
+package org.beehive.gpullama3.inference.sampler;
+
+import org.beehive.gpullama3.tensor.standard.FloatTensor;
+import uk.ac.manchester.tornado.api.types.arrays.FloatArray;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Temperature sampling with top-k, min-p and top-p (nucleus) truncation, supporting both FloatTensor and FloatArray.
+ * <p>
+ * Works on the raw logits, which are left untouched: the candidates are copied once into primitive scratch arrays, top-k is
+ * selected with quickselect (or given as {@link LogitsCandidates}), and the softmax only runs over the surviving candidates. For top-p, the candidates left after min-p and the
+ * top-p cutoff are heap-sorted only as far as the nucleus goes. No allocation or boxing per token.
+ */
+public final class TruncationSampler implements Sampler {
+
+    // Sample of the logits used to pick a top-k pre-filter pivot
+    private static final int PIVOT_SAMPLE_SIZE = 1024;
+
+    final int[] indices;
+    final float[] values;
+    final float[] pivotSample = new float[PIVOT_SAMPLE_SIZE];
+    final float temperature;
+    final int topk;
+    final float topp;
+    final float minp;
+    final RandomGenerator rng;
+
+    /**
+     * @param topk keep the {@code topk} most likely tokens, {@code <= 0} disables top-k
+     * @param topp keep the smallest set of tokens whose probability mass exceeds {@code topp}, values outside (0,1) disable top-p
+     * @param minp drop tokens less likely than {@code minp} times the most likely one, {@code <= 0} disables min-p
+     */
+    public TruncationSampler(int maxNumberOfElements, float temperature, int topk, float topp, float minp, RandomGenerator rng) {
+        this.indices = new int[maxNumberOfElements];
+        this.values = new float[maxNumberOfElements];
+        this.temperature = temperature;
+        this.topk = topk;
+        this.topp = topp;
+        this.minp = minp;
+        this.rng = rng;
+    }
+
+    @Override
+    public int sampleToken(Object tensor) {
+        int n;
+        if (tensor instanceof FloatTensor logits) {
+            n = logits.size();
+            for (int i = 0; i < n; i++) {
+                values[i] = logits.getFloat(i);
+            }
+        } else if (tensor instanceof FloatArray logits) {
+            n = logits.getSize();
+            for (int i = 0; i < n; i++) {
+                values[i] = logits.get(i);
+            }
+        } else if (tensor instanceof LogitsCandidates candidates) {
+            // already the top-k, selected with the classifier
+            n = candidates.size();
+            for (int i = 0; i < n; i++) {
+                values[i] = candidates.logit(i);
+                indices[i] = candidates.token(i);
+            }
+            return sample(n);
+        } else {
+            throw new IllegalArgumentException("Unsupported tensor type: " + (tensor != null ? tensor.getClass().getName() : "null"));
+        }
+        for (int i = 0; i < n; i++) {
+            indices[i] = i;
+        }
+        return sample(n);
+    }
+
+    private int sample(int n) {
+        // top-k, O(n) on average: the k largest logits end up in front, in no particular order
+        if (topk > 0 && topk < n) {
+            n = selectTopK(n, topk);
+        }
+
+        // softmax over the candidates only, the probabilities stay unnormalized (relative to the most likely token)
+        float maxLogit = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < n; i++) {
+            maxLogit = Math.max(maxLogit, values[i]);
+        }
+        float sum = 0f;
+        for (int i = 0; i < n; i++) {
+            float p = (float) Math.exp((values[i] - maxLogit) / temperature);
+            values[i] = p;
+            sum += p;
+        }
+
+        // min-p, the most likely token has (unnormalized) probability 1
+        if (minp > 0) {
+            n = keepAtLeast(n, minp);
+            sum = sum(n);
+        }
+
+        // top-p: values smaller than (1 - topp) / (n - 1) cannot be part of the result,
+        // crop them before heap-sorting the remaining candidates, never the most likely one (1)
+        int first = 0;
+        float mass = sum;
+        if (topp > 0 && topp < 1) {
+            if (n > 1) {
+                n = keepAtLeast(n, Math.min(1f, (1f - topp) / (n - 1) * sum));
+            }
+            // build heap O(n)
+            for (int i = n / 2 - 1; i >= 0; --i) {
+                siftDown(i, n);
+            }
+            // pop the largest values to the back until their cumulative probability exceeds topp, O(k lg n)
+            float cumulative = 0f;
+            for (first = n - 1; first > 0; first--) {
+                swap(0, first);
+                cumulative += values[first];
+                if (cumulative > topp * sum) {
+                    break; // we've exceeded topp by including first
+                }
+                siftDown(0, first);
+            }
+            if (first == 0) {
+                cumulative += values[0];
+            }
+            mass = cumulative;
+        }
+
+        // sample from the truncated list [first, n)
+        float r = rng.nextFloat(1f) * mass;
+        float cdf = 0f;
+        for (int i = n - 1; i >= first; i--) {
+            cdf += values[i];
+            if (r < cdf) {
+                return indices[i];
+            }
+        }
+        return indices[first]; // in case of rounding errors
+    }
+
+    /**
+     * Max-heap sift down of {@code [from, n)}.
+     */
+    private void siftDown(int from, int n) {
+        int prev = from, next;
+        while ((next = 2 * prev + 1) < n) {
+            int r = next + 1;
+            if (r < n && values[r] > values[next]) {
+                next = r;
+            }
+            if (values[next] > values[prev]) {
+                swap(prev, next);
+                prev = next;
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Moves the candidates with a value {@code >= threshold} to the front, keeping their order, and returns their count.
+     * The most likely candidate always passes the thresholds used here.
+     */
+    private int keepAtLeast(int n, float threshold) {
+        int head = 0;
+        for (int i = 0; i < n; i++) {
+            if (values[i] >= threshold) {
+                values[head] = values[i];
+                indices[head] = indices[i];
+                head++;
+            }
+        }
+        return head;
+    }
+
+    private float sum(int n) {
+        float sum = 0f;
+        for (int i = 0; i < n; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Moves the {@code k} largest values to the front and returns {@code k}.
+     * For large {@code n}, a pivot estimated from a strided sample first moves the few values above it to the front in a
+     * single pass, quickselect then only runs over those (or over everything if the estimate was too high).
+     */
+    private int selectTopK(int n, int k) {
+        int candidates = n;
+        if (n >= 8 * PIVOT_SAMPLE_SIZE && k < n / 16) {
+            int stride = n / PIVOT_SAMPLE_SIZE;
+            for (int i = 0; i < PIVOT_SAMPLE_SIZE; i++) {
+                pivotSample[i] = values[i * stride];
+            }
+            Arrays.sort(pivotSample);
+            // rank of the pivot in the sample, about 2k (+ margin) values of the whole are expected above it
+            int rank = Math.min(PIVOT_SAMPLE_SIZE - 1, (int) (2L * k * PIVOT_SAMPLE_SIZE / n) + 8);
+            float pivot = pivotSample[PIVOT_SAMPLE_SIZE - 1 - rank];
+            int head = 0;
+            for (int i = 0; i < n; i++) {
+                if (values[i] >= pivot) {
+                    swap(head++, i);
+                }
+            }
+            if (head >= k) {
+                candidates = head;
+            }
+        }
+        select(0, candidates - 1, k - 1);
+        return k;
+    }
+
+    /**
+     * Quickselect (Hoare partition, median of three): reorders {@code [lo, hi]} in descending order of value
+     * up to position {@code k}, everything before {@code k} is {@code >=} the value at {@code k}.
+     */
+    private void select(int lo, int hi, int k) {
+        while (lo < hi) {
+            int p = partition(lo, hi);
+            if (k <= p) {
+                hi = p;
+            } else {
+                lo = p + 1;
+            }
+        }
+    }
+
+    /**
+     * Hoare partition in descending order, returns {@code p} such that {@code [lo, p]} {@code >=} {@code [p + 1, hi]}.
+     */
+    private int partition(int lo, int hi) {
+        int mid = (lo + hi) >>> 1;
+        // median of three as pivot
+        if (values[mid] > values[lo]) {
+            swap(lo, mid);
+        }
+        if (values[hi] > values[lo]) {
+            swap(lo, hi);
+        }
+        if (values[hi] > values[mid]) {
+            swap(mid, hi);
+        }
+        float pivot = values[mid];
+        int i = lo - 1;
+        int j = hi + 1;
+        while (true) {
+            do {
+                i++;
+            } while (values[i] > pivot);
+            do {
+                j--;
+            } while (values[j] < pivot);
+            if (i >= j) {
+                return j;
+            }
+            swap(i, j);
+        }
+    }
+
+    private void swap(int i, int j) {
+        float value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+        int index = indices[i];
+        indices[i] = indices[j];
+        indices[j] = index;
+    }
+}
@@ -0,0 +1,524 @@
+package org.beehive.gpullama3.inference.sampler.grammar;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A context-free grammar over Unicode code points, in the GBNF notation of llama.cpp, compiled into a pushdown automaton.
+ * <pre>
+ * root   ::= "{" ws pair ( "," ws pair )* "}"   # the start rule is always root
+ * pair   ::= [a-z]+ ws ":" ws ( digit+ | "null" )
+ * digit  ::= [0-9]
+ * ws     ::= [ \t\n]{0,8}
+ * </pre>
+ * Supported: string literals, character classes ({@code [a-z]}, {@code [^"\\]}, escapes {@code \n \t \r \\ \xHH \\uHHHH}), any
+ * character ({@code .}), rule references, groups, alternatives, {@code * + ?} and {@code {m}, {m,}, {m,n}} repetitions and
+ * {@code #} comments. Repetitions and groups are rewritten into extra rules, so the automaton only knows sequences of
+ * character classes and rule references. Left-recursive rules are rejected.
+ * <p>
+ * The automaton follows llama.cpp: a {@link GrammarState} is the set of parse stacks still alive, {@link #advance} matches one
+ * code point against the top of every stack and expands rule references until every stack again starts with a character
+ * class.
+ */
+public final class Grammar {
+
+    static final int END = Integer.MIN_VALUE; // end of an alternative
+
+    // Alternatives of all rules, flat, each one a sequence of elements terminated by END.
+    // An element >= 0 is a rule reference, an element < 0 is the character class -element - 1.
+    private final int[] elements;
+    private final int[][] alternatives; // rule -> offsets of its alternatives in elements
+    private final int[][] classRanges;  // character class -> inclusive code point ranges: lo0, hi0, lo1, hi1, ...
+    private final boolean[] classNegated;
+    private final GrammarState start;
+
+    private Grammar(int[] elements, int[][] alternatives, int[][] classRanges, boolean[] classNegated, int rootRule) {
+        this.elements = elements;
+        this.alternatives = alternatives;
+        this.classRanges = classRanges;
+        this.classNegated = classNegated;
+        List<int[]> stacks = new ArrayList<>();
+        for (int alternative : alternatives[rootRule]) {
+            expand(elements[alternative] == END ? new int[0] : new int[] { alternative }, stacks);
+        }
+        this.start = new GrammarState(stacks);
+    }
+
+    /**
+     * Compiles a grammar in GBNF notation, starting at the rule {@code root}.
+     *
+     * @throws IllegalArgumentException if the grammar is malformed, references undefined rules or is left-recursive
+     */
+    public static Grammar parse(String text) {
+        return new Parser(text).parse();
+    }
+
+    /**
+     * State before any text.
+     */
+    public GrammarState start() {
+        return start;
+    }
+
+    /**
+     * State after {@code codePoint}, {@code null} if the grammar does not allow it here.
+     */
+    public GrammarState advance(GrammarState state, int codePoint) {
+        List<int[]> next = new ArrayList<>();
+        for (int[] stack : state.stacks) {
+            if (stack.length == 0) {
+                continue;
+            }
+            int position = stack[stack.length - 1];
+            if (!matches(-elements[position] - 1, codePoint)) {
+                continue;
+            }
+            int[] rest = Arrays.copyOf(stack, stack.length - 1);
+            if (elements[position + 1] != END) {
+                rest = push(rest, position + 1);
+            }
+            expand(rest, next);
+        }
+        return next.isEmpty() ? null : new GrammarState(next);
+    }
+
+    /**
+     * State after all code points of {@code text}, {@code null} if the grammar does not allow it.
+     */
+    public GrammarState advance(GrammarState state, int[] text) {
+        for (int i = 0; i < text.length && state != null; i++) {
+            state = advance(state, text[i]);
+        }
+        return state;
+    }
+
+    private boolean matches(int characterClass, int codePoint) {
+        int[] ranges = classRanges[characterClass];
+        boolean inRange = false;
+        for (int i = 0; i < ranges.length && !inRange; i += 2) {
+            inRange = ranges[i] <= codePoint && codePoint <= ranges[i + 1];
+        }
+        return inRange != classNegated[characterClass];
+    }
+
+    /**
+     * Replaces a rule reference on top of {@code stack} by each of the rule's alternatives, until the top is a character
+     * class (or the stack is empty), and adds the resulting stacks to {@code out}.
+     */
+    private void expand(int[] stack, List<int[]> out) {
+        if (stack.length == 0 || elements[stack[stack.length - 1]] < 0) {
+            out.add(stack);
+            return;
+        }
+        int position = stack[stack.length - 1];
+        int[] rest = Arrays.copyOf(stack, stack.length - 1);
+        if (elements[position + 1] != END) {
+            rest = push(rest, position + 1);
+        }
+        for (int alternative : alternatives[elements[position]]) {
+            expand(elements[alternative] == END ? rest : push(rest, alternative), out);
+        }
+    }
+
+    private static int[] push(int[] stack, int position) {
+        int[] pushed = Arrays.copyOf(stack, stack.length + 1);
+        pushed[stack.length] = position;
+        return pushed;
+    }
+
+    /**
+     * Recursive descent parser of the GBNF notation, collects the rules as lists of element sequences.
+     */
+    private static final class Parser {
+
+        private final String text;
+        private int pos;
+        private final Map<String, Integer> ruleIds = new HashMap<>();
+        private final List<String> ruleNames = new ArrayList<>();
+        private final List<List<int[]>> rules = new ArrayList<>(); // rule -> alternatives, null until defined
+        private final Map<String, Integer> classIds = new HashMap<>();
+        private final List<int[]> classRanges = new ArrayList<>();
+        private final List<Boolean> classNegated = new ArrayList<>();
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Grammar parse() {
+            skipSpace();
+            while (pos < text.length()) {
+                String name = parseName();
+                skipSpace();
+                expect("::=");
+                int rule = ruleId(name);
+                if (rules.get(rule) != null) {
+                    throw error("Duplicate rule " + name);
+                }
+                rules.set(rule, parseAlternatives());
+                skipSpace();
+            }
+            Integer root = ruleIds.get("root");
+            if (root == null || rules.get(root) == null) {
+                throw new IllegalArgumentException("Grammar does not define the rule root");
+            }
+            for (int rule = 0; rule < rules.size(); rule++) {
+                if (rules.get(rule) == null) {
+                    throw new IllegalArgumentException("Grammar references the undefined rule " + ruleNames.get(rule));
+                }
+            }
+            checkLeftRecursion();
+            return compile(root);
+        }
+
+        private Grammar compile(int root) {
+            List<Integer> elements = new ArrayList<>();
+            int[][] alternatives = new int[rules.size()][];
+            for (int rule = 0; rule < rules.size(); rule++) {
+                List<int[]> ruleAlternatives = rules.get(rule);
+                alternatives[rule] = new int[ruleAlternatives.size()];
+                for (int i = 0; i < ruleAlternatives.size(); i++) {
+                    alternatives[rule][i] = elements.size();
+                    for (int element : ruleAlternatives.get(i)) {
+                        elements.add(element);
+                    }
+                    elements.add(END);
+                }
+            }
+            boolean[] negated = new boolean[classNegated.size()];
+            for (int i = 0; i < negated.length; i++) {
+                negated[i] = classNegated.get(i);
+            }
+            return new Grammar(elements.stream().mapToInt(Integer::intValue).toArray(), alternatives, classRanges.toArray(new int[0][]), negated, root);
+        }
+
+        private List<int[]> parseAlternatives() {
+            List<int[]> alternatives = new ArrayList<>();
+            alternatives.add(parseSequence());
+            while (peek() == '|') {
+                pos++;
+                alternatives.add(parseSequence());
+            }
+            return alternatives;
+        }
+
+        private int[] parseSequence() {
+            List<Integer> sequence = new ArrayList<>();
+            while (true) {
+                skipSpace();
+                int c = peek();
+                if (c == -1 || c == '|' || c == ')' || (isNameChar(c) && isRuleDefinitionAhead())) {
+                    break;
+                }
+                int[] primary = parsePrimary();
+                skipSpace();
+                primary = switch (peek()) {
+                    case '*' -> {
+                        pos++;
+                        yield new int[] { star(single(primary)) };
+                    }
+                    case '+' -> {
+                        pos++;
+                        int element = single(primary);
+                        yield new int[] { element, star(element) };
+                    }
+                    case '?' -> {
+                        pos++;
+                        yield new int[] { optional(single(primary), -1) };
+                    }
+                    case '{' -> parseRepetition(single(primary));
+                    default -> primary;
+                };
+                for (int element : primary) {
+                    sequence.add(element);
+                }
+            }
+            return sequence.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        private int[] parsePrimary() {
+            int c = peek();
+            if (c == '"') {
+                pos++;
+                List<Integer> literal = new ArrayList<>();
+                while (peek() != '"') {
+                    int codePoint = parseChar();
+                    literal.add(characterClass(new int[] { codePoint, codePoint }, false));
+                }
+                pos++;
+                return literal.stream().mapToInt(Integer::intValue).toArray();
+            }
+            if (c == '[') {
+                pos++;
+                boolean negated = peek() == '^';
+                if (negated) {
+                    pos++;
+                }
+                List<Integer> ranges = new ArrayList<>();
+                while (peek() != ']') {
+                    int lo = parseChar();
+                    int hi = lo;
+                    if (peek() == '-' && pos + 1 < text.length() && text.charAt(pos + 1) != ']') {
+                        pos++;
+                        hi = parseChar();
+                    }
+                    ranges.add(lo);
+                    ranges.add(hi);
+                }
+                pos++;
+                return new int[] { characterClass(ranges.stream().mapToInt(Integer::intValue).toArray(), negated) };
+            }
+            if (c == '.') {
+                pos++;
+                return new int[] { characterClass(new int[0], true) };
+            }
+            if (c == '(') {
+                pos++;
+                List<int[]> alternatives = parseAlternatives();
+                skipSpace();
+                expect(")");
+                return alternatives.size() == 1 ? alternatives.get(0) : new int[] { newRule(alternatives) };
+            }
+            if (isNameChar(c)) {
+                return new int[] { ruleId(parseName()) };
+            }
+            throw error("Unexpected character '" + Character.toString(c) + "'");
+        }
+
+        private int[] parseRepetition(int element) {
+            pos++; // {
+            skipSpace();
+            int min = parseInt();
+            int max = min;
+            skipSpace();
+            if (peek() == ',') {
+                pos++;
+                skipSpace();
+                max = Character.isDigit(peek()) ? parseInt() : -1;
+                skipSpace();
+            }
+            expect("}");
+            if (max != -1 && max < min) {
+                throw error("Invalid repetition {" + min + "," + max + "}");
+            }
+            List<Integer> sequence = new ArrayList<>();
+            for (int i = 0; i < min; i++) {
+                sequence.add(element);
+            }
+            if (max == -1) {
+                sequence.add(star(element));
+            } else if (max > min) {
+                // x{0,3} ::= ( x ( x ( x )? )? )?
+                int tail = -1;
+                for (int i = 0; i < max - min; i++) {
+                    tail = optional(element, tail);
+                }
+                sequence.add(tail);
+            }
+            return sequence.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        /**
+         * The elements as a single element, a new rule unless there is only one.
+         */
+        private int single(int[] elements) {
+            return elements.length == 1 ? elements[0] : newRule(List.of(elements));
+        }
+
+        /**
+         * {@code x*} as {@code r ::= x r |}, right recursion does not grow the parse stacks.
+         */
+        private int star(int element) {
+            int rule = newRule(null);
+            rules.set(rule, List.of(new int[] { element, rule }, new int[0]));
+            return rule;
+        }
+
+        /**
+         * {@code r ::= x tail |}, or {@code r ::= x |} if {@code tail} is -1.
+         */
+        private int optional(int element, int tail) {
+            return newRule(List.of(tail == -1 ? new int[] { element } : new int[] { element, tail }, new int[0]));
+        }
+
+        private int newRule(List<int[]> alternatives) {
+            int rule = rules.size();
+            ruleNames.add("<generated " + rule + ">");
+            rules.add(alternatives);
+            return rule;
+        }
+
+        private int ruleId(String name) {
+            return ruleIds.computeIfAbsent(name, n -> {
+                ruleNames.add(n);
+                rules.add(null);
+                return rules.size() - 1;
+            });
+        }
+
+        private int characterClass(int[] ranges, boolean negated) {
+            String key = negated + Arrays.toString(ranges);
+            return classIds.computeIfAbsent(key, k -> {
+                classRanges.add(ranges);
+                classNegated.add(negated);
+                return -classRanges.size(); // -index - 1
+            });
+        }
+
+        private void checkLeftRecursion() {
+            int n = rules.size();
+            // nullable rules: some alternative only references nullable rules
+            boolean[] nullable = new boolean[n];
+            for (boolean changed = true; changed; ) {
+                changed = false;
+                for (int rule = 0; rule < n; rule++) {
+                    if (!nullable[rule] && rules.get(rule).stream().anyMatch(alternative -> nullablePrefix(alternative, nullable) == alternative.length)) {
+                        nullable[rule] = changed = true;
+                    }
+                }
+            }
+            int[] visit = new int[n]; // 0: not visited, 1: on the path, 2: done
+            for (int rule = 0; rule < n; rule++) {
+                checkLeftRecursion(rule, nullable, visit);
+            }
+        }
+
+        private void checkLeftRecursion(int rule, boolean[] nullable, int[] visit) {
+            if (visit[rule] == 2) {
+                return;
+            }
+            if (visit[rule] == 1) {
+                throw new IllegalArgumentException("Grammar is left-recursive in rule " + ruleNames.get(rule));
+            }
+            visit[rule] = 1;
+            for (int[] alternative : rules.get(rule)) {
+                // rules that can be expanded without consuming a character first
+                int prefix = nullablePrefix(alternative, nullable);
+                for (int i = 0; i <= prefix && i < alternative.length; i++) {
+                    if (alternative[i] >= 0) {
+                        checkLeftRecursion(alternative[i], nullable, visit);
+                    }
+                }
+            }
+            visit[rule] = 2;
+        }
+
+        private static int nullablePrefix(int[] alternative, boolean[] nullable) {
+            int i = 0;
+            while (i < alternative.length && alternative[i] >= 0 && nullable[alternative[i]]) {
+                i++;
+            }
+            return i;
+        }
+
+        private int parseChar() {
+            if (pos >= text.length()) {
+                throw error("Unexpected end of grammar");
+            }
+            int c = text.codePointAt(pos);
+            pos += Character.charCount(c);
+            if (c != '\\') {
+                return c;
+            }
+            if (pos >= text.length()) {
+                throw error("Unexpected end of grammar");
+            }
+            char escaped = text.charAt(pos++);
+            return switch (escaped) {
+                case 'n' -> '\n';
+                case 'r' -> '\r';
+                case 't' -> '\t';
+                case 'x' -> parseHex(2);
+                case 'u' -> parseHex(4);
+                case 'U' -> parseHex(8);
+                default -> escaped; // \\ \" \[ \] \- ...
+            };
+        }
+
+        private int parseHex(int digits) {
+            if (pos + digits > text.length()) {
+                throw error("Invalid escape sequence");
+            }
+            try {
+                int value = Integer.parseUnsignedInt(text, pos, pos + digits, 16);
+                pos += digits;
+                return value;
+            } catch (NumberFormatException e) {
+                throw error("Invalid escape sequence");
+            }
+        }
+
+        private int parseInt() {
+            int start = pos;
+            while (Character.isDigit(peek())) {
+                pos++;
+            }
+            if (start == pos) {
+                throw error("Expected a number");
+            }
+            return Integer.parseInt(text, start, pos, 10);
+        }
+
+        private String parseName() {
+            int start = pos;
+            while (isNameChar(peek())) {
+                pos++;
+            }
+            if (start == pos) {
+                throw error("Expected a rule name");
+            }
+            return text.substring(start, pos);
+        }
+
+        private boolean isRuleDefinitionAhead() {
+            int saved = pos;
+            parseName();
+            skipSpace();
+            boolean definition = text.startsWith("::=", pos);
+            pos = saved;
+            return definition;
+        }
+
+        private static boolean isNameChar(int c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
+        }
+
+        private void skipSpace() {
+            while (pos < text.length()) {
+                char c = text.charAt(pos);
+                if (c == '#') {
+                    while (pos < text.length() && text.charAt(pos) != '\n') {
+                        pos++;
+                    }
+                } else if (Character.isWhitespace(c)) {
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+        }
+
+        private int peek() {
+            return pos < text.length() ? text.charAt(pos) : -1;
+        }
+
+        private void expect(String token) {
+            if (!text.startsWith(token, pos)) {
+                throw error("Expected " + token);
+            }
+            pos += token.length();
+        }
+
+        private IllegalArgumentException error(String message) {
+            int line = 1;
+            for (int i = 0; i < pos && i < text.length(); i++) {
+                if (text.charAt(i) == '\n') {
+                    line++;
+                }
+            }
+            return new IllegalArgumentException(message + " at line " + line + " of the grammar");
+        }
+    }
+}
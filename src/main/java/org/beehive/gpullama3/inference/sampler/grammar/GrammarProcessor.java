@@ -0,0 +1,186 @@
+package org.beehive.gpullama3.inference.sampler.grammar;
+
+import org.beehive.gpullama3.inference.sampler.LogitsProcessor;
+import org.beehive.gpullama3.tensor.standard.FloatTensor;
+import org.beehive.gpullama3.tokenizer.Tokenizer;
+import uk.ac.manchester.tornado.api.types.arrays.FloatArray;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Constrained decoding: masks (sets to {@code -Infinity}) the logits of every token the {@link Grammar} does not allow next,
+ * so the sampler can only produce sentences of the grammar, then advances the grammar with the picked token.
+ * <p>
+ * The tokens allowed in a {@link GrammarState} form a bitset over the vocabulary, computed the first time the state is seen
+ * and kept in an LRU cache ({@code -Dllama.GrammarMaskCacheSize}): inside a JSON string, for instance, the state is the same
+ * after every character, so the per-token cost is a cache lookup and the masking pass. To compute a mask, the decoded token
+ * texts are walked in sorted order, reusing the grammar states of the prefix shared with the previous token and skipping
+ * every token that shares a rejected prefix.
+ * <p>
+ * Stop tokens are only allowed once the text is a complete sentence, other special tokens never. Tokens are matched on
+ * their decoded text, a token holding part of a multi-byte character is seen as U+FFFD.
+ */
+public final class GrammarProcessor implements LogitsProcessor {
+
+    /** Number of grammar states whose token masks are kept, least recently used ones are dropped. */
+    static final int MASK_CACHE_SIZE = Integer.getInteger("llama.GrammarMaskCacheSize", 512);
+
+    private final Grammar grammar;
+    private final int[][] tokenText;   // code points of each token, null if never allowed (special or empty)
+    private final int[] sortedTokens;  // tokens with text, sorted by text
+    private final int[] sharedPrefix;  // length of the prefix shared with the previous sorted token
+    private final int[] stopTokens;
+    private final GrammarState[] prefixStates; // scratch: state after each prefix of the current token
+    private final int maskWords;
+    private final Map<GrammarState, long[]> masks;
+    private GrammarState state;
+
+    public GrammarProcessor(Grammar grammar, Tokenizer tokenizer, int vocabularySize, Set<Integer> stopTokens) {
+        this.grammar = grammar;
+        this.tokenText = new int[vocabularySize][];
+        int maxLength = 0;
+        for (int token = 0; token < vocabularySize; token++) {
+            if (!tokenizer.isSpecialToken(token) && !stopTokens.contains(token)) {
+                int[] text = tokenizer.decode(List.of(token)).codePoints().toArray();
+                if (text.length > 0) {
+                    tokenText[token] = text;
+                    maxLength = Math.max(maxLength, text.length);
+                }
+            }
+        }
+        this.sortedTokens = IntStream.range(0, vocabularySize)
+                .filter(token -> tokenText[token] != null)
+                .boxed()
+                .sorted(Comparator.comparing(token -> tokenText[token], Arrays::compare))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        this.sharedPrefix = new int[sortedTokens.length];
+        for (int i = 1; i < sortedTokens.length; i++) {
+            int[] previous = tokenText[sortedTokens[i - 1]];
+            int[] current = tokenText[sortedTokens[i]];
+            int mismatch = Arrays.mismatch(previous, current);
+            sharedPrefix[i] = mismatch == -1 ? current.length : mismatch;
+        }
+        this.stopTokens = stopTokens.stream().mapToInt(Integer::intValue).filter(token -> token < vocabularySize).toArray();
+        this.prefixStates = new GrammarState[maxLength + 1];
+        this.maskWords = (vocabularySize + 63) / 64;
+        this.masks = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<GrammarState, long[]> eldest) {
+                return size() > MASK_CACHE_SIZE;
+            }
+        };
+        this.state = grammar.start();
+        mask(state); // precompute the first mask
+    }
+
+    @Override
+    public void process(Object logits) {
+        long[] mask = mask(state);
+        if (logits instanceof FloatTensor tensor) {
+            int size = tensor.size();
+            for (int word = 0; word < maskWords; word++) {
+                long allowed = mask[word];
+                if (allowed == -1L) {
+                    continue;
+                }
+                for (int token = word * 64, end = Math.min(size, token + 64); token < end; token++) {
+                    if ((allowed & (1L << token)) == 0) {
+                        tensor.setFloat(token, Float.NEGATIVE_INFINITY);
+                    }
+                }
+            }
+        } else if (logits instanceof FloatArray array) {
+            int size = array.getSize();
+            for (int word = 0; word < maskWords; word++) {
+                long allowed = mask[word];
+                if (allowed == -1L) {
+                    continue;
+                }
+                for (int token = word * 64, end = Math.min(size, token + 64); token < end; token++) {
+                    if ((allowed & (1L << token)) == 0) {
+                        array.set(token, Float.NEGATIVE_INFINITY);
+                    }
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported tensor type: " + (logits != null ? logits.getClass().getName() : "null"));
+        }
+    }
+
+    @Override
+    public void accept(int token) {
+        for (int stopToken : stopTokens) {
+            if (token == stopToken) {
+                state = grammar.start(); // ready for the next response
+                return;
+            }
+        }
+        GrammarState next = tokenText[token] != null ? grammar.advance(state, tokenText[token]) : null;
+        if (next == null) {
+            throw new IllegalStateException("Token " + token + " is not allowed by the grammar");
+        }
+        state = next;
+    }
+
+    /**
+     * Whether the text generated so far is a complete sentence of the grammar.
+     */
+    public boolean isAccepting() {
+        return state.isAccepting();
+    }
+
+    private long[] mask(GrammarState state) {
+        long[] mask = masks.get(state);
+        if (mask == null) {
+            mask = computeMask(state);
+            masks.put(state, mask);
+        }
+        return mask;
+    }
+
+    /**
+     * The tokens allowed in {@code state}, one bit per token of the vocabulary.
+     */
+    long[] computeMask(GrammarState state) {
+        long[] mask = new long[maskWords];
+        if (!state.isComplete()) {
+            prefixStates[0] = state;
+            int known = 0;            // prefixStates[0..known] hold the states of the previous token's prefixes
+            boolean rejected = false; // whether the previous token's prefix of length known + 1 was rejected
+            for (int i = 0; i < sortedTokens.length; i++) {
+                int token = sortedTokens[i];
+                int[] text = tokenText[token];
+                if (rejected && sharedPrefix[i] > known) {
+                    continue; // starts with the rejected prefix
+                }
+                int length = Math.min(sharedPrefix[i], known);
+                rejected = false;
+                while (length < text.length) {
+                    GrammarState next = grammar.advance(prefixStates[length], text[length]);
+                    if (next == null) {
+                        rejected = true;
+                        break;
+                    }
+                    prefixStates[++length] = next;
+                }
+                known = length;
+                if (!rejected) {
+                    mask[token >>> 6] |= 1L << token;
+                }
+            }
+        }
+        if (state.isAccepting()) {
+            for (int stopToken : stopTokens) {
+                mask[stopToken >>> 6] |= 1L << stopToken;
+            }
+        }
+        return mask;
+    }
+}
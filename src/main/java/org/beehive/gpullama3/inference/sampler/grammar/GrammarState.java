@@ -0,0 +1,56 @@
+package org.beehive.gpullama3.inference.sampler.grammar;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable state of a {@link Grammar} automaton: the set of parse stacks still alive after the text so far.
+ * <p>
+ * Each stack holds positions in the grammar's elements, the top (last) one is the character class to match next; an empty
+ * stack means the text so far is a complete sentence. States are canonical (stacks sorted, no duplicates) so they can be
+ * compared and used as keys, e.g. to cache token masks.
+ */
+public final class GrammarState {
+
+    final int[][] stacks;
+    private final int hash;
+    private final boolean accepting;
+
+    GrammarState(List<int[]> stacks) {
+        int[][] sorted = stacks.toArray(new int[0][]);
+        Arrays.sort(sorted, Arrays::compare);
+        int n = 0;
+        for (int[] stack : sorted) {
+            if (n == 0 || !Arrays.equals(sorted[n - 1], stack)) {
+                sorted[n++] = stack;
+            }
+        }
+        this.stacks = Arrays.copyOf(sorted, n);
+        this.hash = Arrays.deepHashCode(this.stacks);
+        this.accepting = n > 0 && this.stacks[0].length == 0; // the empty stack sorts first
+    }
+
+    /**
+     * Whether the text so far is a complete sentence of the grammar.
+     */
+    public boolean isAccepting() {
+        return accepting;
+    }
+
+    /**
+     * Whether the text so far is complete and cannot be extended.
+     */
+    public boolean isComplete() {
+        return accepting && stacks.length == 1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof GrammarState other && hash == other.hash && Arrays.deepEquals(stacks, other.stacks);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
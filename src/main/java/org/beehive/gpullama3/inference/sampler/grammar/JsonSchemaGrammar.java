@@ -0,0 +1,451 @@
+package org.beehive.gpullama3.inference.sampler.grammar;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts a JSON schema into a {@link Grammar} (GBNF) accepting the JSON documents valid under the schema, an empty schema
+ * {@code {}} accepts any JSON value.
+ * <p>
+ * Supported: {@code type} (also a list of types), {@code properties} with {@code required} (required properties come first,
+ * optional ones follow in the declared order), {@code items} with {@code minItems/maxItems}, {@code minLength/maxLength},
+ * {@code enum}, {@code const}, {@code anyOf/oneOf} and local {@code $ref}s ({@code #/$defs/...}, {@code #/definitions/...}).
+ * Other keywords ({@code pattern}, {@code format}, numeric bounds, {@code additionalProperties}, ...) are ignored, objects
+ * only get their declared properties.
+ */
+public final class JsonSchemaGrammar {
+
+    // @formatter:off
+    private static final String JSON_RULES = """
+            value   ::= object | array | string | number | boolean | null
+            object  ::= "{" ws ( string ws ":" ws value ws ( "," ws string ws ":" ws value ws )* )? "}"
+            array   ::= "[" ws ( value ws ( "," ws value ws )* )? "]"
+            string  ::= "\\"" char* "\\""
+            char    ::= [^"\\\\\\x7F\\x00-\\x1F] | "\\\\" ( ["\\\\/bfnrt] | "u" [0-9a-fA-F]{4} )
+            number  ::= integer ( "." [0-9]+ )? ( [eE] [-+]? [0-9]+ )?
+            integer ::= "-"? ( "0" | [1-9] [0-9]{0,15} )
+            boolean ::= "true" | "false"
+            null    ::= "null"
+            ws      ::= | " " | "\\n" [ \\t]{0,20}
+            """;
+    // @formatter:on
+
+    private final Map<String, Object> root;
+    private final Map<String, String> rules = new LinkedHashMap<>();
+    private final Map<String, String> refRules = new HashMap<>();
+
+    private JsonSchemaGrammar(Map<String, Object> root) {
+        this.root = root;
+    }
+
+    /**
+     * Compiles the JSON schema {@code schema} into a grammar.
+     *
+     * @throws IllegalArgumentException if the schema is not valid JSON or uses unsupported constructs
+     */
+    public static Grammar compile(String schema) {
+        return Grammar.parse(toGbnf(schema));
+    }
+
+    /**
+     * The JSON schema {@code schema} as a grammar in GBNF notation.
+     */
+    public static String toGbnf(String schema) {
+        Object parsed = new JsonReader(schema).read();
+        Map<String, Object> root = parsed instanceof Map<?, ?> map ? asObject(map) : Map.of();
+        JsonSchemaGrammar converter = new JsonSchemaGrammar(root);
+        String expression = converter.visit(parsed, "root");
+        StringBuilder gbnf = new StringBuilder("root ::= ").append(expression).append('\n');
+        converter.rules.forEach((name, body) -> gbnf.append(name).append(" ::= ").append(body).append('\n'));
+        return gbnf.append(JSON_RULES).toString();
+    }
+
+    /**
+     * Returns a GBNF expression for {@code schema}, adding the rules it needs.
+     */
+    private String visit(Object schema, String name) {
+        if (schema instanceof Boolean accept) {
+            if (!accept) {
+                throw new IllegalArgumentException("JSON schema false accepts nothing");
+            }
+            return "value";
+        }
+        if (!(schema instanceof Map<?, ?> map)) {
+            throw new IllegalArgumentException("Invalid JSON schema at " + name);
+        }
+        Map<String, Object> node = asObject(map);
+        if (node.get("$ref") instanceof String ref) {
+            return ref(ref);
+        }
+        if (node.containsKey("const")) {
+            return literal(toJson(node.get("const")));
+        }
+        if (node.get("enum") instanceof List<?> values) {
+            List<String> alternatives = new ArrayList<>();
+            for (Object value : values) {
+                alternatives.add(literal(toJson(value)));
+            }
+            return rule(name, String.join(" | ", alternatives));
+        }
+        Object anyOf = node.containsKey("anyOf") ? node.get("anyOf") : node.get("oneOf");
+        if (anyOf instanceof List<?> schemas) {
+            List<String> alternatives = new ArrayList<>();
+            for (int i = 0; i < schemas.size(); i++) {
+                alternatives.add(visit(schemas.get(i), name + "-" + i));
+            }
+            return rule(name, String.join(" | ", alternatives));
+        }
+        if (node.containsKey("allOf")) {
+            throw new IllegalArgumentException("Unsupported JSON schema keyword allOf at " + name);
+        }
+        Object type = node.get("type");
+        if (type instanceof List<?> types) {
+            List<String> alternatives = new ArrayList<>();
+            for (Object t : types) {
+                Map<String, Object> single = new LinkedHashMap<>(node);
+                single.put("type", t);
+                alternatives.add(visit(single, name + "-" + t));
+            }
+            return rule(name, String.join(" | ", alternatives));
+        }
+        if (type == null) {
+            type = node.containsKey("properties") ? "object" : node.containsKey("items") ? "array" : null;
+        }
+        if (type == null) {
+            return "value";
+        }
+        return switch (type.toString()) {
+            case "object" -> node.get("properties") instanceof Map<?, ?> properties ? object(name, asObject(properties), node.get("required")) : "object";
+            case "array" -> node.containsKey("items") || node.containsKey("minItems") || node.containsKey("maxItems") ? array(name, node) : "array";
+            case "string" -> node.containsKey("minLength") || node.containsKey("maxLength")
+                    ? rule(name, "\"\\\"\" char" + repetition(integer(node, "minLength", 0), integer(node, "maxLength", -1)) + " \"\\\"\"")
+                    : "string";
+            case "number", "integer", "boolean", "null" -> type.toString();
+            default -> throw new IllegalArgumentException("Unsupported JSON schema type " + type + " at " + name);
+        };
+    }
+
+    private String object(String name, Map<String, Object> properties, Object required) {
+        List<String> requiredMembers = new ArrayList<>();
+        List<String> optionalMembers = new ArrayList<>();
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            String key = property.getKey();
+            String value = visit(property.getValue(), name + "-" + key);
+            String member = rule(name + "-" + key + "-kv", literal(toJson(key)) + " ws \":\" ws " + value + " ws");
+            boolean isRequired = required instanceof List<?> list && list.contains(key);
+            (isRequired ? requiredMembers : optionalMembers).add(member);
+        }
+        StringBuilder body = new StringBuilder("\"{\" ws");
+        if (!requiredMembers.isEmpty()) {
+            body.append(' ').append(String.join(" \",\" ws ", requiredMembers));
+            for (String member : optionalMembers) {
+                body.append(" ( \",\" ws ").append(member).append(" )?");
+            }
+        } else if (!optionalMembers.isEmpty()) {
+            // no required member: the first member present has no leading comma
+            String first = null;
+            for (int i = optionalMembers.size() - 1; i >= 0; i--) {
+                StringBuilder alternative = new StringBuilder(optionalMembers.get(i));
+                for (int j = i + 1; j < optionalMembers.size(); j++) {
+                    alternative.append(" ( \",\" ws ").append(optionalMembers.get(j)).append(" )?");
+                }
+                first = rule(name + "-from-" + i, first == null ? alternative.toString() : alternative + " | " + first);
+            }
+            body.append(" ( ").append(first).append(" )?");
+        }
+        return rule(name, body.append(" \"}\"").toString());
+    }
+
+    private String array(String name, Map<String, Object> node) {
+        String item = node.containsKey("items") ? visit(node.get("items"), name + "-item") : "value";
+        int minItems = integer(node, "minItems", 0);
+        int maxItems = integer(node, "maxItems", -1);
+        if (maxItems == 0) {
+            return rule(name, "\"[\" ws \"]\"");
+        }
+        String rest = "( \",\" ws " + item + " ws )";
+        String tail = minItems <= 1 && maxItems == 1 ? "" : " " + rest + repetition(Math.max(0, minItems - 1), maxItems == -1 ? -1 : maxItems - 1);
+        String items = item + " ws" + tail;
+        return rule(name, "\"[\" ws " + (minItems == 0 ? "( " + items + " )?" : items) + " \"]\"");
+    }
+
+    private String ref(String ref) {
+        String rule = refRules.get(ref);
+        if (rule != null) {
+            return rule;
+        }
+        String[] path = ref.split("/");
+        if (path.length != 3 || !path[0].equals("#") || !(path[1].equals("$defs") || path[1].equals("definitions"))) {
+            throw new IllegalArgumentException("Unsupported JSON schema $ref " + ref + ", only #/$defs/... and #/definitions/... are supported");
+        }
+        Object definitions = root.get(path[1]);
+        Object definition = definitions instanceof Map<?, ?> map ? map.get(path[2]) : null;
+        if (definition == null) {
+            throw new IllegalArgumentException("Undefined JSON schema $ref " + ref);
+        }
+        // reserve the name first, the definition may reference itself
+        rule = uniqueName("ref-" + path[2]);
+        refRules.put(ref, rule);
+        rules.put(rule, "");
+        rules.put(rule, visit(definition, rule + "-def"));
+        return rule;
+    }
+
+    private String rule(String name, String body) {
+        String rule = uniqueName(name);
+        rules.put(rule, body);
+        return rule;
+    }
+
+    private String uniqueName(String name) {
+        String base = name.replaceAll("[^a-zA-Z0-9-]", "-");
+        String rule = base;
+        for (int i = 1; rules.containsKey(rule) || rule.equals("root") || JSON_RULES.contains("\n" + rule + " ") || JSON_RULES.startsWith(rule + " "); i++) {
+            rule = base + "-" + i;
+        }
+        return rule;
+    }
+
+    private static String repetition(int min, int max) {
+        if (max == -1) {
+            return min == 0 ? "*" : min == 1 ? "+" : "{" + min + ",}";
+        }
+        return min == max ? "{" + min + "}" : "{" + min + "," + max + "}";
+    }
+
+    private static int integer(Map<String, Object> node, String key, int defaultValue) {
+        return node.get(key) instanceof BigDecimal value ? value.intValueExact() : defaultValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asObject(Map<?, ?> map) {
+        return (Map<String, Object>) map;
+    }
+
+    /**
+     * {@code text} as a GBNF string literal.
+     */
+    private static String literal(String text) {
+        StringBuilder literal = new StringBuilder("\"");
+        text.codePoints().forEach(c -> {
+            switch (c) {
+                case '"' -> literal.append("\\\"");
+                case '\\' -> literal.append("\\\\");
+                case '\n' -> literal.append("\\n");
+                case '\r' -> literal.append("\\r");
+                case '\t' -> literal.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        literal.append(String.format("\\x%02X", c));
+                    } else {
+                        literal.appendCodePoint(c);
+                    }
+                }
+            }
+        });
+        return literal.append('"').toString();
+    }
+
+    /**
+     * {@code value} (as read by {@link JsonReader}) as compact JSON text.
+     */
+    private static String toJson(Object value) {
+        if (value == null) {
+            return "null";
+        }
+        if (value instanceof String string) {
+            StringBuilder json = new StringBuilder("\"");
+            for (int i = 0; i < string.length(); i++) {
+                char c = string.charAt(i);
+                switch (c) {
+                    case '"' -> json.append("\\\"");
+                    case '\\' -> json.append("\\\\");
+                    case '\n' -> json.append("\\n");
+                    case '\r' -> json.append("\\r");
+                    case '\t' -> json.append("\\t");
+                    case '\b' -> json.append("\\b");
+                    case '\f' -> json.append("\\f");
+                    default -> {
+                        if (c < 0x20) {
+                            json.append(String.format("\\u%04x", (int) c));
+                        } else {
+                            json.append(c);
+                        }
+                    }
+                }
+            }
+            return json.append('"').toString();
+        }
+        if (value instanceof BigDecimal number) {
+            return number.toString();
+        }
+        if (value instanceof List<?> list) {
+            List<String> elements = new ArrayList<>();
+            for (Object element : list) {
+                elements.add(toJson(element));
+            }
+            return "[" + String.join(",", elements) + "]";
+        }
+        if (value instanceof Map<?, ?> map) {
+            List<String> members = new ArrayList<>();
+            map.forEach((key, element) -> members.add(toJson(key) + ":" + toJson(element)));
+            return "{" + String.join(",", members) + "}";
+        }
+        return value.toString(); // Boolean
+    }
+
+    /**
+     * Minimal JSON reader for schemas: objects as {@link LinkedHashMap}, arrays as {@link List}, numbers as {@link BigDecimal}.
+     */
+    private static final class JsonReader {
+
+        private final String text;
+        private int pos;
+
+        JsonReader(String text) {
+            this.text = text;
+        }
+
+        Object read() {
+            Object value = readValue();
+            skipSpace();
+            if (pos != text.length()) {
+                throw error("Unexpected trailing characters");
+            }
+            return value;
+        }
+
+        private Object readValue() {
+            skipSpace();
+            if (pos >= text.length()) {
+                throw error("Unexpected end of input");
+            }
+            char c = text.charAt(pos);
+            switch (c) {
+                case '{' -> {
+                    pos++;
+                    Map<String, Object> object = new LinkedHashMap<>();
+                    skipSpace();
+                    if (peek() == '}') {
+                        pos++;
+                        return object;
+                    }
+                    do {
+                        skipSpace();
+                        String key = readString();
+                        skipSpace();
+                        expect(':');
+                        object.put(key, readValue());
+                        skipSpace();
+                    } while (consume(','));
+                    expect('}');
+                    return object;
+                }
+                case '[' -> {
+                    pos++;
+                    List<Object> array = new ArrayList<>();
+                    skipSpace();
+                    if (peek() == ']') {
+                        pos++;
+                        return array;
+                    }
+                    do {
+                        array.add(readValue());
+                        skipSpace();
+                    } while (consume(','));
+                    expect(']');
+                    return array;
+                }
+                case '"' -> {
+                    return readString();
+                }
+                default -> {
+                    for (String keyword : new String[] { "true", "false", "null" }) {
+                        if (text.startsWith(keyword, pos)) {
+                            pos += keyword.length();
+                            return keyword.equals("null") ? null : Boolean.valueOf(keyword);
+                        }
+                    }
+                    int start = pos;
+                    while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                        pos++;
+                    }
+                    try {
+                        return new BigDecimal(text.substring(start, pos));
+                    } catch (NumberFormatException e) {
+                        throw error("Invalid value");
+                    }
+                }
+            }
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder string = new StringBuilder();
+            while (true) {
+                if (pos >= text.length()) {
+                    throw error("Unterminated string");
+                }
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return string.toString();
+                }
+                if (c != '\\') {
+                    string.append(c);
+                    continue;
+                }
+                if (pos >= text.length()) {
+                    throw error("Unterminated string");
+                }
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case 'n' -> string.append('\n');
+                    case 'r' -> string.append('\r');
+                    case 't' -> string.append('\t');
+                    case 'b' -> string.append('\b');
+                    case 'f' -> string.append('\f');
+                    case 'u' -> {
+                        if (pos + 4 > text.length()) {
+                            throw error("Invalid escape sequence");
+                        }
+                        string.append((char) Integer.parseInt(text, pos, pos + 4, 16));
+                        pos += 4;
+                    }
+                    default -> string.append(escaped); // \" \\ \/
+                }
+            }
+        }
+
+        private void skipSpace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private int peek() {
+            return pos < text.length() ? text.charAt(pos) : -1;
+        }
+
+        private boolean consume(char c) {
+            if (peek() == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!consume(c)) {
+                throw error("Expected '" + c + "'");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid JSON schema: " + message + " at offset " + pos);
+        }
+    }
+}
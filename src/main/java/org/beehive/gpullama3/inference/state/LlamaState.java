@@ -39,7 +39,6 @@ public final class LlamaState extends State {
         fields.q = ArrayFloatTensor.allocate(config.dim());
         fields.k = ArrayFloatTensor.allocate(config.dim());
         fields.v = ArrayFloatTensor.allocate(config.dim());
-        fields.att = ArrayFloatTensor.allocate(config.numberOfHeads(), config.contextLength());
         fields.logits = ArrayFloatTensor.allocate(config.vocabularySize());
 
         // Key-value cache with Llama/Mistral dimensions
@@ -57,6 +56,10 @@ public final class LlamaState extends State {
         switch (config.quantization()) {
             case "FP16" -> fields.createActivationFP16(config.dim());
             case "Q8_0" -> fields.createActivationQ8_0(config.dim());
+            case "Q4_0" -> fields.createActivationQ4_0(config.dim());
+            case "Q4_K", "Q5_K", "Q6_K", "BF16" -> {
+                // CPU only, there are no TornadoVM weights for k-quants and BF16
+            }
             default -> throw new UnsupportedOperationException("Unsupported quantization format: " + config.quantization());
         }
         fields.wrapLogits = new FloatArray(config.vocabularySize());
@@ -13,6 +13,7 @@ import java.util.stream.Stream;
 public class Phi3State extends State {
     // Phi3-specific fields for QKV processing
     public FloatTensor qkv; // Combined QKV buffer: op_size = dim + 2 * (n_kv_heads * head_dim)
+    public FloatTensor[] batchQkv; // qkv of each token of a prefill chunk, null until allocateBatchBuffers
 
     // Phi3-specific fields for FFN gate/up processing
     public FloatTensor hbG; // Gate states buffer
@@ -42,6 +43,14 @@ public class Phi3State extends State {
         this.wrapHbU = new FloatArray(phi3Config.hiddenDim());
     }
 
+    @Override
+    public void allocateBatchBuffers() {
+        if (batchX == null) {
+            super.allocateBatchBuffers();
+            batchQkv = allocateBatch(qkv.size());
+        }
+    }
+
     @Override
     protected StateFields createStateFields(Configuration config) {
         StateFields fields = new StateFields();
@@ -70,7 +79,6 @@ public class Phi3State extends State {
         fields.q = ArrayFloatTensor.allocate(dim); // Query states
         fields.k = ArrayFloatTensor.allocate(kvDim); // Key states
         fields.v = ArrayFloatTensor.allocate(kvDim); // Value states
-        fields.att = ArrayFloatTensor.allocate(nHeads, contextLength); // Attention scores
 
         // Output logits
         fields.logits = ArrayFloatTensor.allocate(vocabSize);
@@ -83,6 +91,10 @@ public class Phi3State extends State {
         switch (config.quantization()) {
             case "FP16" -> fields.createActivationFP16(config.dim());
             case "Q8_0" -> fields.createActivationQ8_0(config.dim());
+            case "Q4_0" -> fields.createActivationQ4_0(config.dim());
+            case "Q4_K", "Q5_K", "Q6_K", "BF16" -> {
+                // CPU only, there are no TornadoVM weights for k-quants and BF16
+            }
             default -> throw new UnsupportedOperationException("Unsupported quantization format: " + config.quantization());
         }
         fields.wrapX = new FloatArray(dim);
@@ -33,7 +33,6 @@ public class Qwen2State extends State {
         fields.q = ArrayFloatTensor.allocate(config.dim());
         fields.k = ArrayFloatTensor.allocate(config.kvDim());
         fields.v = ArrayFloatTensor.allocate(config.kvDim());
-        fields.att = ArrayFloatTensor.allocate(config.numberOfHeads(), config.contextLength());
         fields.logits = ArrayFloatTensor.allocate(config.vocabularySize());
 
         // Key-value cache with Qwen2 dimensions
@@ -44,6 +43,10 @@ public class Qwen2State extends State {
         switch (config.quantization()) {
             case "FP16" -> fields.createActivationFP16(config.dim());
             case "Q8_0" -> fields.createActivationQ8_0(config.dim());
+            case "Q4_0" -> fields.createActivationQ4_0(config.dim());
+            case "Q4_K", "Q5_K", "Q6_K", "BF16" -> {
+                // CPU only, there are no TornadoVM weights for k-quants and BF16
+            }
             default -> throw new UnsupportedOperationException("Unsupported quantization format: " + config.quantization());
         }
         fields.wrapX = new FloatArray(config.dim());
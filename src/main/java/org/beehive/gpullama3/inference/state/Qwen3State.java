@@ -58,7 +58,6 @@ public final class Qwen3State extends State {
         fields.q = ArrayFloatTensor.allocate(nEmbdHeadK * config.numberOfHeads());
         fields.k = ArrayFloatTensor.allocate(nEmbdKGqa);
         fields.v = ArrayFloatTensor.allocate(nEmbdKGqa);
-        fields.att = ArrayFloatTensor.allocate(config.numberOfHeads(), config.contextLength());
         fields.logits = ArrayFloatTensor.allocate(config.vocabularySize());
 
         // Key-value cache with Qwen3 dimensions
@@ -70,6 +69,10 @@ public final class Qwen3State extends State {
         switch (config.quantization()) {
             case "FP16" -> fields.createActivationFP16(config.dim());
             case "Q8_0" -> fields.createActivationQ8_0(config.dim());
+            case "Q4_0" -> fields.createActivationQ4_0(config.dim());
+            case "Q4_K", "Q5_K", "Q6_K", "BF16" -> {
+                // CPU only, there are no TornadoVM weights for k-quants and BF16
+            }
             default -> throw new UnsupportedOperationException("Unsupported quantization format: " + config.quantization());
         }
 
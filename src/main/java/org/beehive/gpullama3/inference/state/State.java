@@ -1,5 +1,9 @@
 package org.beehive.gpullama3.inference.state;
 
+import org.beehive.gpullama3.auxiliary.Parallel;
+import org.beehive.gpullama3.inference.InferenceCore;
+import org.beehive.gpullama3.inference.sampler.LogitsCandidates;
+import org.beehive.gpullama3.tensor.standard.ArrayFloatTensor;
 import org.beehive.gpullama3.tensor.standard.FloatTensor;
 import org.beehive.gpullama3.model.Configuration;
 import uk.ac.manchester.tornado.api.types.HalfFloat;
@@ -36,8 +40,16 @@ public abstract class State {
     public final FloatTensor q;         // query (dim,)
     public final FloatTensor k;         // key (dim,)
     public final FloatTensor v;         // value (dim,)
-    public final FloatTensor att;       // buffer for scores/attention values (n_heads, seq_len)
     public final FloatTensor logits;    // output logits
+    public LogitsCandidates logitsCandidates; // top-k logits selected with the classifier, null unless the sampler uses them (see InferenceCore.FUSED_LOGITS_TOPK)
+    public final int attentionSplits;          // maximum number of chunks the positions of a head are split into (see InferenceCore.attention)
+    public final FloatTensor attentionPartials; // partial attention outputs, one per head and chunk (n_heads * attentionSplits, head_size)
+    public final float[] attentionStats;        // running maximum score and sum of weights of each head (and chunk)
+
+    // batched prompt prefill (see InferenceCore.forwardJavaBatch): one buffer per token of a chunk, sized like the buffers above,
+    // null until allocateBatchBuffers is called by the first batched prefill on CPU
+    public FloatTensor[] batchX, batchXb, batchXb2, batchHb, batchHb2, batchQ, batchK, batchV;
+    public float[] batchAttentionStats; // attentionStats of each token of a chunk (see InferenceCore.attentionBatch)
     public final int batchsize;
 
     // kv cache
@@ -69,6 +81,8 @@ public abstract class State {
     public FloatArray temp;         // Temporary buffer for intermediate calculations, size adjusted for local workgroup size.
     public FloatArray tempFFN;      // Temporary buffer for feed-forward network calculations, size adjusted for local workgroup size.
     public FloatArray tempLogits;   // Temporary buffer for logits calculations, size adjusted for local workgroup size.
+    public FloatArray wrapLogitsTopKValues; // Top-k logits reduced on the device, null unless logitsCandidates is set when the TornadoVM plan is built.
+    public IntArray wrapLogitsTopKTokens;   // Tokens of the top-k logits reduced on the device.
     public int latestToken;         // Keeps track of the most recent token processed by the model. Useful for stateful or autoregressive models.
 
     public HalfFloatArray wrapXFP16;
@@ -90,8 +104,11 @@ public abstract class State {
         this.q = fields.q;
         this.k = fields.k;
         this.v = fields.v;
-        this.att = fields.att;
         this.logits = fields.logits;
+        int kvHeads = config.numberOfKeyValueHeads();
+        this.attentionSplits = Parallel.THREADS > kvHeads ? (Parallel.THREADS + kvHeads - 1) / kvHeads : 1;
+        this.attentionPartials = attentionSplits > 1 ? ArrayFloatTensor.allocate(attentionSplits * fields.xb.size()) : null;
+        this.attentionStats = new float[2 * attentionSplits * config.numberOfHeads()];
         //int kvDim = (config.dim() * config.numberOfKeyValueHeads()) / config.numberOfHeads();
         this.keyCache = fields.keyCache;
         this.valueCache = fields.valueCache;
@@ -122,12 +139,43 @@ public abstract class State {
         this.tempLogits = fields.tempLogits;
     }
 
+    /**
+     * Allocates the batch buffers of {@link InferenceCore#PREFILL_BATCH_SIZE} tokens, once per state: only the CPU batched prefill calls this,
+     * states of the TornadoVM path never hold them.
+     */
+    public void allocateBatchBuffers() {
+        if (batchX != null) {
+            return;
+        }
+        batchX = allocateBatch(x.size());
+        batchXb = allocateBatch(xb.size());
+        batchXb2 = allocateBatch(xb2.size());
+        batchHb = allocateBatch(hb.size());
+        batchHb2 = allocateBatch(hb2.size());
+        batchQ = allocateBatch(q.size());
+        batchK = allocateBatch(k.size());
+        batchV = allocateBatch(v.size());
+        // a single (unsplit) attentionStats per token
+        batchAttentionStats = new float[InferenceCore.PREFILL_BATCH_SIZE * (attentionStats.length / attentionSplits)];
+    }
+
+    /**
+     * One buffer of {@code size} values per token of a prefill chunk.
+     */
+    protected static FloatTensor[] allocateBatch(int size) {
+        FloatTensor[] batch = new FloatTensor[InferenceCore.PREFILL_BATCH_SIZE];
+        for (int b = 0; b < batch.length; b++) {
+            batch[b] = ArrayFloatTensor.allocate(size);
+        }
+        return batch;
+    }
+
     // Abstract method - subclasses implement their specific allocation logic and sizes
     protected abstract StateFields createStateFields(Configuration config);
 
     // Helper class to hold all the state fields during construction
     protected static class StateFields {
-        public FloatTensor x, xb, xb2, hb, hb2, q, k, v, att, logits;
+        public FloatTensor x, xb, xb2, hb, hb2, q, k, v, logits;
         public FloatTensor[] keyCache, valueCache;
         public FloatArray wrapX, wrapXb, wrapXb2, wrapHb, wrapHb2, wrapLogits;
         public FloatArray wrapQ, wrapK, wrapV, wrapAtt, wrapKeyCache, wrapValueCache;
@@ -146,6 +194,14 @@ public abstract class State {
             int q8BytesNeeded = blocksNeeded * Q8_0_BLOCK_BYTES;
             this.embeddingX = new ByteArray(q8BytesNeeded);
         }
+
+        public void createActivationQ4_0(int size) {
+            int blockSize = 32;
+            int Q4_0_BLOCK_BYTES = 18; // 2 bytes scale + 16 bytes packed quants
+            int blocksNeeded = (size + blockSize - 1) / blockSize;
+            int q4BytesNeeded = blocksNeeded * Q4_0_BLOCK_BYTES;
+            this.embeddingX = new ByteArray(q4BytesNeeded);
+        }
         public HalfFloatArray wrapXFP16, wrapXbFP16;
     }
 
@@ -2,6 +2,7 @@ package org.beehive.gpullama3.model;
 
 import org.beehive.gpullama3.Options;
 import org.beehive.gpullama3.auxiliary.LastRunMetrics;
+import org.beehive.gpullama3.inference.sampler.LogitsCandidates;
 import org.beehive.gpullama3.inference.sampler.Sampler;
 import org.beehive.gpullama3.inference.state.State;
 import org.beehive.gpullama3.inference.weights.Weights;
@@ -60,6 +61,30 @@ public interface Model {
      */
     void forward(State state, int token, int position);
 
+    /**
+     * Forward pass that only updates the key/value caches, skipping the final normalization and vocabulary projection.
+     *
+     * <p>
+     * Used while ingesting prompt tokens whose logits are never sampled. Defaults to a regular {@link #forward}.
+     * </p>
+     */
+    default void forwardNoLogits(State state, int token, int position) {
+        forward(state, token, position);
+    }
+
+    /**
+     * Ingests prompt tokens at positions {@code startPosition .. startPosition + tokens.length - 1} without computing logits.
+     *
+     * <p>
+     * CPU models override it with a batched prefill ({@code InferenceCore.forwardJavaBatch}) when {@code InferenceCore.PREFILL_BATCH_SIZE > 1}; defaults to one {@link #forwardNoLogits} per token.
+     * </p>
+     */
+    default void forwardBatchNoLogits(State state, int[] tokens, int startPosition) {
+        for (int i = 0; i < tokens.length; i++) {
+            forwardNoLogits(state, tokens[i], startPosition + i);
+        }
+    }
+
     /**
      * Wrapper for invoking the model-specific {@code InferenceEngine.generateTokens} call.
      */
@@ -93,6 +118,7 @@ public interface Model {
 
         // Initialize TornadoVM plan once at the beginning if GPU path is enabled
         if (options.useTornadovm() && tornadoVMPlan == null) {
+            state.logitsCandidates = LogitsCandidates.forSampler(sampler); // size of the device top-k, fixed when the logits task graph is built
             tornadoVMPlan = TornadoVMMasterPlan.initializeTornadoVMPlan(state, this);
         }
 
@@ -202,6 +228,7 @@ public interface Model {
 
         // Initialize TornadoVM plan once at the beginning if GPU path is enabled
         if (options.useTornadovm() && tornadoVMPlan == null) {
+            state.logitsCandidates = LogitsCandidates.forSampler(sampler); // size of the device top-k, fixed when the logits task graph is built
             tornadoVMPlan = TornadoVMMasterPlan.initializeTornadoVMPlan(state, this);
         }
 
@@ -276,6 +303,7 @@ public interface Model {
 
         // Initialize TornadoVM plan once at the beginning if GPU path is enabled
         if (options.useTornadovm() && tornadoVMPlan == null) {
+            state.logitsCandidates = LogitsCandidates.forSampler(sampler); // size of the device top-k, fixed when the logits task graph is built
             tornadoVMPlan = TornadoVMMasterPlan.initializeTornadoVMPlan(state, this);
         }
 
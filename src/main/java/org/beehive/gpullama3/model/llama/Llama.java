@@ -60,6 +60,21 @@ public class Llama extends AbstractModel {
         InferenceCore.forwardJava(this, state, token, position);
     }
 
+    @Override
+    public void forwardNoLogits(State state, int token, int position) {
+        InferenceCore.forwardJava(this, state, token, position, false);
+    }
+
+    @Override
+    public void forwardBatchNoLogits(State state, int[] tokens, int startPosition) {
+        if (InferenceCore.PREFILL_BATCH_SIZE > 1) {
+            InferenceCore.forwardJavaBatch(this, state, tokens, startPosition);
+        } else {
+            // batched prefill disabled: one token at a time
+            super.forwardBatchNoLogits(state, tokens, startPosition);
+        }
+    }
+
     @Override
     public List<Integer> generateTokens(State state, int startPosition, List<Integer> promptTokens, Set<Integer> stopTokens, int maxTokens, Sampler sampler, boolean echo,
             IntConsumer onTokenGenerated) {
@@ -1,6 +1,10 @@
 package org.beehive.gpullama3.model.loader;
 
+import org.beehive.gpullama3.LlamaApp;
+import org.beehive.gpullama3.tensor.GGMLType;
 import org.beehive.gpullama3.tensor.GGUF;
+import org.beehive.gpullama3.tensor.PageResidency;
+import org.beehive.gpullama3.tensor.SafeTensors;
 import org.beehive.gpullama3.tensor.GGMLTensorEntry;
 import org.beehive.gpullama3.auxiliary.Pair;
 import org.beehive.gpullama3.inference.weights.Weights;
@@ -11,6 +15,9 @@ import org.beehive.gpullama3.tokenizer.Vocabulary;
 
 import java.io.IOException;
 import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
 
 /**
@@ -39,7 +46,13 @@ public abstract class AbstractModelLoader<M extends Model, C extends Configurati
         int modelQuantizationAsInt = (int) metadata.get("general.file_type");
         return switch (modelQuantizationAsInt) {
             case 1 -> "FP16";
+            case 2 -> "Q4_0";
             case 7 -> "Q8_0";
+            // k-quant files mix types (e.g. Q4_K_M also uses Q6_K), each tensor is loaded with its own type
+            case 14, 15 -> "Q4_K"; // Q4_K_S, Q4_K_M
+            case 16, 17 -> "Q5_K"; // Q5_K_S, Q5_K_M
+            case 18 -> "Q6_K";
+            case 32 -> "BF16";
             default -> throw new UnsupportedOperationException("Unsupported quantization format: " + modelQuantizationAsInt + " (as int).");
         };
     }
@@ -64,11 +77,16 @@ public abstract class AbstractModelLoader<M extends Model, C extends Configurati
 
             // Step 4: Load tensor entries
             Map<String, GGMLTensorEntry> tensorEntries;
-            if (useTornadovm) {
+            if (!LlamaApp.SAFETENSORS_PATH.isEmpty()) {
+                tensorEntries = loadSafeTensors(metadata, config);
+            } else if (useTornadovm) {
                 tensorEntries = GGUF.loadTensorsTornado(fileChannel, gguf.getTensorDataOffset(), gguf.getTensorInfos());
             } else {
                 tensorEntries = GGUF.loadTensorsStandard(fileChannel, gguf.getTensorDataOffset(), gguf.getTensorInfos());
             }
+            if (!useTornadovm && !LlamaApp.RESIDENCY.isEmpty()) {
+                PageResidency.manage(tensorEntries.values(), LlamaApp.RESIDENCY);
+            }
 
             // Step 4: Load weights
             Weights weights = loadWeights(tensorEntries, config);
@@ -81,6 +99,19 @@ public abstract class AbstractModelLoader<M extends Model, C extends Configurati
         }
     }
 
+    /**
+     * Maps the weights of the SafeTensors checkpoint given with {@code -Dllama.SafeTensors} under their GGUF names. The GGUF file
+     * (e.g. a vocab-only file from llama.cpp) still provides the metadata and tokenizer.
+     */
+    private Map<String, GGMLTensorEntry> loadSafeTensors(Map<String, Object> metadata, C config) throws IOException {
+        if (useTornadovm) {
+            throw new UnsupportedOperationException("SafeTensors weights are only supported on the CPU path");
+        }
+        // llama.cpp permutes the query/key rows of llama models (incl. Mistral) for the interleaved RoPE
+        boolean permuteQueryKey = "llama".equals(metadata.get("general.architecture"));
+        return SafeTensors.loadTensorsStandard(Path.of(LlamaApp.SAFETENSORS_PATH), config.numberOfHeads(), config.numberOfKeyValueHeads(), permuteQueryKey);
+    }
+
     /**
      * Load the vocabulary from GGUF metadata. Model-specific implementations should override this method.
      *
@@ -117,6 +148,15 @@ public abstract class AbstractModelLoader<M extends Model, C extends Configurati
         // Precompute RoPE frequencies
         Pair<float[], float[]> ropeFreqs = precomputeRopeFrequencies(config);
 
+        // Optionally requantize the matrices of a float model (CPU path)
+        GGMLType requantizeType = requantizeType();
+        if (requantizeType != null) {
+            if (useTornadovm) {
+                throw new UnsupportedOperationException("-Dllama.Requantize is only supported on the CPU path");
+            }
+            tensorEntries = requantizeWeights(tensorEntries, requantizeType);
+        }
+
         // Get token embeddings and output weights
         GGMLTensorEntry tokenEmbeddings = getTokenEmbeddings(tensorEntries);
         GGMLTensorEntry outputWeight = getOutputWeight(tensorEntries, tokenEmbeddings);
@@ -129,6 +169,42 @@ public abstract class AbstractModelLoader<M extends Model, C extends Configurati
         }
     }
 
+    /**
+     * Weight type requested with {@code -Dllama.Requantize}, {@code null} if none.
+     */
+    private static GGMLType requantizeType() {
+        return switch (LlamaApp.REQUANTIZE.toUpperCase(Locale.ROOT)) {
+            case "" -> null;
+            case "Q8_0" -> GGMLType.Q8_0;
+            case "Q4_0" -> GGMLType.Q4_0;
+            default -> throw new IllegalArgumentException("Unsupported requantization type: " + LlamaApp.REQUANTIZE + " (expected Q8_0 or Q4_0)");
+        };
+    }
+
+    /**
+     * Returns a copy of the tensor entries where every F32/F16/BF16 matrix is quantized to {@code targetType}, one tensor after the
+     * other, each over all threads. Vectors (norms, biases) and the token embeddings, which are only read one row at a time, keep
+     * their original type. The classifier is quantized to Q8_0 even for Q4_0, as llama.cpp keeps it at a higher precision; with
+     * tied embeddings a quantized copy of the token embeddings is added as {@code output.weight}.
+     */
+    protected Map<String, GGMLTensorEntry> requantizeWeights(Map<String, GGMLTensorEntry> tensorEntries, GGMLType targetType) {
+        GGMLTensorEntry tokenEmbeddings = getTokenEmbeddings(tensorEntries);
+        Map<String, GGMLTensorEntry> requantized = new LinkedHashMap<>(tensorEntries);
+        if (!tensorEntries.containsKey("output.weight") && ModelLoader.canRequantize(tokenEmbeddings, GGMLType.Q8_0)) {
+            requantized.put("output.weight", ModelLoader.requantize(tokenEmbeddings, GGMLType.Q8_0));
+        }
+        for (GGMLTensorEntry entry : tensorEntries.values()) {
+            if (entry == tokenEmbeddings) {
+                continue;
+            }
+            GGMLType type = entry.name().equals("output.weight") ? GGMLType.Q8_0 : targetType;
+            if (ModelLoader.canRequantize(entry, type)) {
+                requantized.put(entry.name(), ModelLoader.requantize(entry, type));
+            }
+        }
+        return requantized;
+    }
+
     /**
      * Create the final model instance.
      *
@@ -1,6 +1,7 @@
 package org.beehive.gpullama3.model.loader;
 
 import org.beehive.gpullama3.Options;
+import org.beehive.gpullama3.auxiliary.Parallel;
 import org.beehive.gpullama3.tensor.GGMLType;
 import org.beehive.gpullama3.tensor.GGUF;
 import org.beehive.gpullama3.tensor.*;
@@ -9,12 +10,14 @@ import org.beehive.gpullama3.model.ModelType;
 import org.beehive.gpullama3.tensor.standard.*;
 import org.beehive.gpullama3.tensor.tornado.FP16TornadoTensor;
 import org.beehive.gpullama3.tensor.tornado.FP32TornadoTensor;
+import org.beehive.gpullama3.tensor.tornado.Q4_0TornadoTensor;
 import org.beehive.gpullama3.tensor.tornado.Q8_0TornadoTensor;
 import org.beehive.gpullama3.tensor.tornado.TornadoTensor;
 import uk.ac.manchester.tornado.api.types.HalfFloat;
 import uk.ac.manchester.tornado.api.types.arrays.*;
 
 import java.io.IOException;
+import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
 import java.nio.ByteOrder;
@@ -112,11 +115,52 @@ public abstract class ModelLoader {
             case F32 -> new FP32FloatTensor(FloatTensor.numberOfElements(entry.shape()), entry.memorySegment());
             case Q8_0 -> new Q8_0FloatTensor(FloatTensor.numberOfElements(entry.shape()), entry.memorySegment());
             case Q4_0 -> new Q4_0FloatTensor(FloatTensor.numberOfElements(entry.shape()), entry.memorySegment());
+            case Q4_K -> new Q4_KFloatTensor(FloatTensor.numberOfElements(entry.shape()), entry.memorySegment());
+            case Q5_K -> new Q5_KFloatTensor(FloatTensor.numberOfElements(entry.shape()), entry.memorySegment());
+            case Q6_K -> new Q6_KFloatTensor(FloatTensor.numberOfElements(entry.shape()), entry.memorySegment());
             case F16 -> new FP16FloatTensor(FloatTensor.numberOfElements(entry.shape()), entry.memorySegment());
+            case BF16 -> new BF16FloatTensor(FloatTensor.numberOfElements(entry.shape()), entry.memorySegment());
             default -> throw new UnsupportedOperationException("Quantization format " + ggmlType);
         };
     }
 
+    /**
+     * Whether a tensor is a matrix that {@link #requantize} can convert: an F32/F16/BF16 matrix whose rows are whole blocks.
+     */
+    public static boolean canRequantize(GGMLTensorEntry entry, GGMLType targetType) {
+        return switch (entry.ggmlType()) {
+            case F32, F16, BF16 -> entry.shape().length == 2 && entry.shape()[0] % targetType.getBlockSize() == 0;
+            default -> false;
+        };
+    }
+
+    /**
+     * Quantizes a matrix to {@link GGMLType#Q8_0} or {@link GGMLType#Q4_0} into a new off-heap segment, rows are quantized in parallel.
+     * The returned entry is loaded by {@link #loadTensor} as any Q8_0/Q4_0 tensor read from a GGUF file.
+     * Used in CPU-path.
+     */
+    public static GGMLTensorEntry requantize(GGMLTensorEntry entry, GGMLType targetType) {
+        assert canRequantize(entry, targetType);
+        FloatTensor source = loadTensor(entry);
+        MemorySegment segment = Arena.ofAuto().allocate(targetType.byteSizeFor(source.size()), 64);
+        quantize(source, entry.shape()[0], targetType, segment);
+        return new GGMLTensorEntry(segment, entry.name(), targetType, entry.shape(), segment);
+    }
+
+    /**
+     * Quantizes the rows of {@code source} to {@link GGMLType#Q8_0} or {@link GGMLType#Q4_0} blocks written to {@code dst}, in parallel.
+     * {@code rowSize} must be a multiple of the block size.
+     */
+    public static void quantize(FloatTensor source, int rowSize, GGMLType targetType, MemorySegment dst) {
+        int rows = source.size() / rowSize;
+        long rowBytes = targetType.byteSizeFor(rowSize);
+        switch (targetType) {
+            case Q8_0 -> Parallel.parallelFor(0, rows, row -> Q8_0FloatTensor.quantize(source, row * rowSize, dst, row * rowBytes, rowSize));
+            case Q4_0 -> Parallel.parallelFor(0, rows, row -> Q4_0FloatTensor.quantize(source, row * rowSize, dst, row * rowBytes, rowSize));
+            default -> throw new UnsupportedOperationException("Quantization to " + targetType);
+        }
+    }
+
     /**
      * Dispatcher method for loading a standard tensor array based on type.
      * Used in CPU-path.
@@ -140,11 +184,40 @@ public abstract class ModelLoader {
             case F32 -> FP32TornadoTensor.fromTornadoMemorySegment(entry.memorySegment());
             case F16 -> FP16TornadoTensor.fromTornadoMemorySegment(entry.memorySegment());
             case Q8_0 -> Q8_0TornadoTensor.fromTornadoMemorySegment(entry.memorySegment());
-            case Q4_0 -> throw new UnsupportedOperationException("Q4 format not supported yet");
+            case Q4_0 -> Q4_0TornadoTensor.fromTornadoMemorySegment(entry.memorySegment());
             default -> throw new UnsupportedOperationException("Quantization format " + ggmlType);
         };
     }
 
+    /**
+     * Weight type of the TornadoVM path.
+     * Q4_0 files keep {@code output.weight} at a higher precision (usually Q6_K), so Q4_0 is detected from the token embeddings.
+     */
+    public static GGMLType tornadoWeightType(GGMLTensorEntry tokenEmbeddings, GGMLTensorEntry outputWeight) {
+        return tokenEmbeddings.ggmlType() == GGMLType.Q4_0 ? GGMLType.Q4_0 : outputWeight.ggmlType();
+    }
+
+    /**
+     * Loads the classifier weights for the TornadoVM path.
+     * For Q4_0 models an output weight without a TornadoVM kernel (e.g. Q6_K) is requantized to Q8_0 once at load time.
+     * Used in GPU-path.
+     */
+    public static TornadoTensor loadTornadoOutputTensor(GGMLTensorEntry outputWeight, GGMLType weightType) {
+        GGMLType ggmlType = outputWeight.ggmlType();
+        if (weightType != GGMLType.Q4_0 || ggmlType == GGMLType.Q4_0 || ggmlType == GGMLType.Q8_0) {
+            return loadTornadoTensor(outputWeight);
+        }
+        // skip the TornadoNativeArray header in front of the tensor data
+        MemorySegment data = outputWeight.memorySegment().asSlice(TornadoNativeArray.ARRAY_HEADER);
+        FloatTensor source = loadTensor(new GGMLTensorEntry(data, outputWeight.name(), ggmlType, outputWeight.shape(), data));
+        int rowSize = outputWeight.shape()[0];
+        int rows = source.size() / rowSize;
+        long rowBytes = GGMLType.Q8_0.byteSizeFor(rowSize);
+        MemorySegment segment = Arena.ofAuto().allocate(TornadoNativeArray.ARRAY_HEADER + rows * rowBytes);
+        Parallel.parallelFor(0, rows, row -> Q8_0FloatTensor.quantize(source, row * rowSize, segment, TornadoNativeArray.ARRAY_HEADER + row * rowBytes, rowSize));
+        return Q8_0TornadoTensor.fromTornadoMemorySegment(segment);
+    }
+
     /**
      * Dispatcher method for loading a TornadoVM tensor array based on type.
      * Used in GPU-path.
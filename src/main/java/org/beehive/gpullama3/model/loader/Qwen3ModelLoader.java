@@ -133,7 +133,7 @@ public class Qwen3ModelLoader extends AbstractModelLoader<Qwen3, Qwen3Configurat
             System.out.println("Loading model weights in TornadoVM format (loading " + outputWeight.ggmlType() + " -> " + GGMLType.F16 + ")");
         }
 
-        GGMLType ggmlType = outputWeight.ggmlType();
+        GGMLType ggmlType = tornadoWeightType(tokenEmbeddings, outputWeight);
 
         final int nl = config.numberOfLayers();
 
@@ -154,7 +154,7 @@ public class Qwen3ModelLoader extends AbstractModelLoader<Qwen3, Qwen3Configurat
                 loadTornadoTensor(tensorEntries.get("output_norm.weight")),                                     // fp32
                 new FP32TornadoTensor(FloatArray.fromArray(ropeFreqs.first())),
                 new FP32TornadoTensor(FloatArray.fromArray(ropeFreqs.second())),
-                loadTornadoTensor(outputWeight),
+                loadTornadoOutputTensor(outputWeight, ggmlType),
                 ggmlType
         );
 
@@ -70,6 +70,25 @@ public class Qwen3 extends AbstractModel {
         }
     }
 
+    @Override
+    public void forwardNoLogits(State state, int token, int position) {
+        if (plan == null) {
+            InferenceCore.forwardJavaQwen3(this, state, token, position, false);
+        } else {
+            InferenceCore.forwardTornadoVM(this, state, token, position, tornadoVMPlan());
+        }
+    }
+
+    @Override
+    public void forwardBatchNoLogits(State state, int[] tokens, int startPosition) {
+        if (plan == null && InferenceCore.PREFILL_BATCH_SIZE > 1) {
+            InferenceCore.forwardJavaBatchQwen3(this, state, tokens, startPosition);
+        } else {
+            // TornadoVM (or batched prefill disabled): one token at a time
+            super.forwardBatchNoLogits(state, tokens, startPosition);
+        }
+    }
+
     @Override
     public List<Integer> generateTokens(State state, int startPosition, List<Integer> promptTokens, Set<Integer> stopTokens, int maxTokens, Sampler sampler, boolean echo,
             IntConsumer onTokenGenerated) {
@@ -9,34 +9,49 @@ import java.io.IOException;
 import java.lang.foreign.Arena;
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
-import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.WRITE;
 
+/**
+ * GGUF file reader.
+ * <p>
+ * The header is parsed from a read-only mapping of the file with bulk reads. Metadata arrays, e.g. the hundreds of thousands of
+ * strings of {@code tokenizer.ggml.tokens} and {@code tokenizer.ggml.merges}, are only skipped over while parsing: the metadata
+ * map keeps their offset in the mapping and decodes them on first access.
+ */
 public final class GGUF {
-    private static FileChannel fileChannel;
+    private FileChannel fileChannel;
     private static final int GGUF_MAGIC = 0x46554747;
     private static final int DEFAULT_ALIGNMENT = 32; // must be a power of 2
     private static final List<Integer> SUPPORTED_GGUF_VERSIONS = List.of(2, 3);
-    private final ByteBuffer BB_1 = ByteBuffer.allocate(Byte.BYTES).order(ByteOrder.LITTLE_ENDIAN);
-    private final ByteBuffer BB_2 = ByteBuffer.allocate(Short.BYTES).order(ByteOrder.LITTLE_ENDIAN);
-    private final ByteBuffer BB_4 = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
-    private final ByteBuffer BB_8 = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfShort JAVA_SHORT_LE = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfInt JAVA_INT_LE = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfLong JAVA_LONG_LE = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfFloat JAVA_FLOAT_LE = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private static final ValueLayout.OfDouble JAVA_DOUBLE_LE = ValueLayout.JAVA_DOUBLE_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+    private MemorySegment mapping; // the whole file, read-only
+    private long position; // read position in the mapping
     private int magic;
     private int version;
     private int tensorCount; // uint64_t
     private int alignment;
     private int metadata_kv_count; // uint64_t
-    private Map<String, Object> metadata;
+    private LazyMetadata metadata;
+    private Map<String, MetadataValueType> metadataValueTypes;
+    private Map<String, MetadataValueType> metadataArrayTypes; // element type of ARRAY values
     private Map<String, GGUFTensorInfo> tensorInfos;
     private long tensorDataOffset;
 
@@ -48,10 +63,9 @@ public final class GGUF {
         }
 
         // Open file
+        FileChannel fileChannel;
         try {
             fileChannel = FileChannel.open(modelPath, READ, WRITE);
-            // Ensure we start reading from the beginning of the file
-            fileChannel.position(0);
         } catch (Exception e) {
             throw new RuntimeException("Failed to open file channel for " + modelPath, e);
         }
@@ -59,20 +73,24 @@ public final class GGUF {
         // Read and store the gguf metadata
         try {
             GGUF gguf = new GGUF();
+            gguf.fileChannel = fileChannel;
+            // Only the pages of the header are touched, lazily decoded arrays keep the mapping alive.
+            gguf.mapping = fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size(), Arena.ofAuto());
+            gguf.position = 0;
             // The header of the file.
-            gguf.readHeader(fileChannel); // gguf_header_t header;
+            gguf.readHeader(); // gguf_header_t header;
             // Tensor infos, which can be used to locate the tensor data.
             // gguf_tensor_info_t tensor_infos[header.tensor_count];
             gguf.tensorInfos = HashMap.newHashMap(gguf.tensorCount);
             for (int i = 0; i < gguf.tensorCount; ++i) {
-                GGUF.GGUFTensorInfo ti = gguf.readTensorInfo(fileChannel);
+                GGUF.GGUFTensorInfo ti = gguf.readTensorInfo();
                 assert !gguf.tensorInfos.containsKey(ti.name);
                 gguf.tensorInfos.put(ti.name, ti);
             }
             // Padding to the nearest multiple of `ALIGNMENT`.
             // uint8_t _padding[ALIGNMENT - (sizeof(header + tensor_infos) % ALIGNMENT)];
-            long _padding = (gguf.getAlignment() - (fileChannel.position() % gguf.getAlignment())) % gguf.getAlignment();
-            fileChannel.position(fileChannel.position() + _padding);
+            long _padding = (gguf.getAlignment() - (gguf.position % gguf.getAlignment())) % gguf.getAlignment();
+            gguf.position += _padding;
             // Tensor data.
             //
             // This is arbitrary binary data corresponding to the weights of the model. This data should be close
@@ -84,7 +102,7 @@ public final class GGUF {
             // The offset of each tensor's data must be a multiple of `ALIGNMENT`, and the space between tensors
             // should be padded to `ALIGNMENT` bytes.
             // uint8_t tensor_data[];
-            gguf.tensorDataOffset = fileChannel.position();
+            gguf.tensorDataOffset = gguf.position;
             return gguf;
         } catch (Exception e) {
             throw new RuntimeException("Unexpected error while loading GGUF model from " + modelPath, e);
@@ -205,81 +223,107 @@ public final class GGUF {
         return metadata;
     }
 
+    /**
+     * Type of a metadata value as stored in the file, e.g. to tell {@code UINT32} from {@code INT32} when writing it back.
+     */
+    public MetadataValueType getMetadataValueType(String key) {
+        return metadataValueTypes.get(key);
+    }
+
+    /**
+     * Element type of an {@link MetadataValueType#ARRAY} metadata value, {@code null} for other values.
+     */
+    public MetadataValueType getMetadataArrayType(String key) {
+        return metadataArrayTypes.get(key);
+    }
+
     public FileChannel getFileChannel() {
         return fileChannel;
     }
 
-    private GGMLType readGGMLType(FileChannel fileChannel) throws IOException {
-        int ggmlTypeId = readInt(fileChannel); // ggml_type type;
+    private GGMLType readGGMLType() {
+        int ggmlTypeId = readInt(); // ggml_type type;
         return GGMLType.fromId(ggmlTypeId);
     }
 
-    private GGUF.GGUFTensorInfo readTensorInfo(FileChannel fileChannel) throws IOException {
+    private GGUF.GGUFTensorInfo readTensorInfo() {
         // The name of the tensor. It is a standard GGUF string, with the caveat that
         // it must be at most 64 bytes long.
-        String name = readString(fileChannel); // gguf_string_t name;
+        String name = readString(); // gguf_string_t name;
         assert name.length() <= 64;
         // The number of dimensions in the tensor.
         // Currently at most 4, but this may change in the future.
-        int n_dimensions = readInt(fileChannel); // uint32_t n_dimensions;
+        int n_dimensions = readInt(); // uint32_t n_dimensions;
         assert n_dimensions <= 4;
         // The dimensions of the tensor.
         int[] dimensions = new int[n_dimensions]; // uint64_t dimensions[n_dimensions];
         for (int i = 0; i < n_dimensions; ++i) {
-            dimensions[i] = Math.toIntExact(readLong(fileChannel));
+            dimensions[i] = Math.toIntExact(readLong());
         }
         // The type of the tensor.
-        GGMLType ggmlType = readGGMLType(fileChannel); // ggml_type type;
+        GGMLType ggmlType = readGGMLType(); // ggml_type type;
         // The offset of the tensor's data in this file in bytes.
         // This offset is relative to `tensor_data`, not to the start
         // of the file, to make it easier for writers to write the file.
         // Readers should consider exposing this offset relative to the
         // file to make it easier to read the data.
         // Must be a multiple of `ALIGNMENT`.
-        long offset = readLong(fileChannel); // uint64_t offset;
+        long offset = readLong(); // uint64_t offset;
         assert offset % getAlignment() == 0;
         return new GGUF.GGUFTensorInfo(name, dimensions, ggmlType, offset);
     }
 
-    private String readString(FileChannel fileChannel) throws IOException {
+    private String readString() {
         // A string in GGUF.
         // The length of the string, in bytes.
-        int len = Math.toIntExact(readLong(fileChannel)); // uint64_t len;
+        int len = Math.toIntExact(readLong()); // uint64_t len;
         // The string as a UTF-8 non-null-terminated string.
         byte[] bytes = new byte[len]; // char string[len];
-        int bytesRead = fileChannel.read(ByteBuffer.wrap(bytes));
-        assert len == bytesRead;
+        MemorySegment.copy(mapping, ValueLayout.JAVA_BYTE, position, bytes, 0, len);
+        position += len;
         return new String(bytes, StandardCharsets.UTF_8);
     }
 
-    private Pair<String, Object> readKeyValuePair(FileChannel fileChannel) throws IOException {
+    private void skipString() {
+        long len = readLong();
+        position += len;
+    }
+
+    private Pair<String, Object> readKeyValuePair() {
         // The key of the metadata. It is a standard GGUF string, with the following caveats:
         // - It must be a valid ASCII string.
         // - It must be a hierarchical key, where each segment is `lower_snake_case` and separated by a `.`.
         // - It must be at most 2^16-1/65535 bytes long.
         // Any keys that do not follow these rules are invalid.
-        String key = readString(fileChannel); // gguf_string_t key;
+        String key = readString(); // gguf_string_t key;
         assert key.length() < (1 << 16);
         assert key.codePoints().allMatch(cp -> ('a' <= cp && cp <= 'z') || ('0' <= cp && cp <= '9') || cp == '_' || cp == '.');
-        Object value = readMetadataValue(fileChannel);
-        return new Pair<>(key, value);
-    }
-
-    private Object readMetadataValue(FileChannel fileChannel) throws IOException {
         // The type of the value.
         // Must be one of the `gguf_metadata_value_type` values.
-        MetadataValueType value_type = readMetadataValueType(fileChannel); // gguf_metadata_value_type value_type;
+        MetadataValueType value_type = readMetadataValueType(); // gguf_metadata_value_type value_type;
+        metadataValueTypes.put(key, value_type);
         // The value.
-        return readMetadataValueOfType(value_type, fileChannel); // gguf_metadata_value_t value;
+        Object value;
+        if (value_type == MetadataValueType.ARRAY) {
+            // keep the element type, signed and unsigned arrays are read alike
+            MetadataValueType element_type = readMetadataValueType();
+            metadataArrayTypes.put(key, element_type);
+            // decoded on first access, only skipped over here
+            value = new LazyArray(element_type, position);
+            skipArrayOfType(element_type);
+        } else {
+            value = readMetadataValueOfType(value_type); // gguf_metadata_value_t value;
+        }
+        return new Pair<>(key, value);
     }
 
-    void readHeader(FileChannel fileChannel) throws IOException {
+    void readHeader() {
         // Magic number to announce that this is a GGUF file.
         // Must be `GGUF` at the byte level: `0x47` `0x47` `0x55` `0x46`.
         // Your executor might do little-endian byte order, so it might be
         // check for 0x46554747 and letting the endianness cancel out.
         // Consider being *very* explicit about the byte order here.
-        this.magic = readInt(fileChannel); //    uint32_t magic;
+        this.magic = readInt(); //    uint32_t magic;
         if (magic != GGUF_MAGIC) {
             throw new IllegalArgumentException("unsupported header.magic " + magic);
         }
@@ -289,81 +333,83 @@ public final class GGUF {
         // This version should only be increased for structural changes to the format.
         // Changes that do not affect the structure of the file should instead update the metadata
         // to signify the change.
-        this.version = readInt(fileChannel); // uint32_t version;
+        this.version = readInt(); // uint32_t version;
         if (!SUPPORTED_GGUF_VERSIONS.contains(version)) {
             throw new IllegalArgumentException("unsupported header.version " + version);
         }
         // The number of tensors in the file.
         // This is explicit, instead of being included in the metadata, to ensure it is always present
         // for loading the tensors.
-        this.tensorCount = Math.toIntExact(readLong(fileChannel)); // uint64_t tensor_count;
+        this.tensorCount = Math.toIntExact(readLong()); // uint64_t tensor_count;
         // The number of metadata key-value pairs.
-        this.metadata_kv_count = Math.toIntExact(readLong(fileChannel)); // uint64_t metadata_kv_count;
+        this.metadata_kv_count = Math.toIntExact(readLong()); // uint64_t metadata_kv_count;
         // The metadata key-value pairs.
         // gguf_metadata_kv_t metadata_kv[metadata_kv_count];
 
-        this.metadata = HashMap.newHashMap(metadata_kv_count);
+        this.metadata = new LazyMetadata(LinkedHashMap.newLinkedHashMap(metadata_kv_count));
+        this.metadataValueTypes = HashMap.newHashMap(metadata_kv_count);
+        this.metadataArrayTypes = new HashMap<>();
         for (int i = 0; i < metadata_kv_count; ++i) {
-            Pair<String, Object> keyValue = readKeyValuePair(fileChannel);
+            Pair<String, Object> keyValue = readKeyValuePair();
             assert !metadata.containsKey(keyValue.first());
-            metadata.put(keyValue.first(), keyValue.second());
+            metadata.values.put(keyValue.first(), keyValue.second());
         }
     }
 
-    private Object readArray(FileChannel fileChannel) throws IOException {
+    private Object readArray() {
         // Any value type is valid, including arrays.
-        MetadataValueType value_type = readMetadataValueType(fileChannel); // gguf_metadata_value_type type;
+        MetadataValueType value_type = readMetadataValueType(); // gguf_metadata_value_type type;
+        return readArrayOfType(value_type);
+    }
+
+    private Object readArrayOfType(MetadataValueType value_type) {
         // Number of elements, not bytes
-        int len = Math.toIntExact(readLong(fileChannel)); // uint64_t len;
+        int len = Math.toIntExact(readLong()); // uint64_t len;
         // The array of values.
         // gguf_metadata_value_t array[len];
         switch (value_type) {
             case UINT8, INT8 -> {
                 byte[] bytes = new byte[len];
-                for (int i = 0; i < len; ++i) {
-                    bytes[i] = readByte(fileChannel);
-                }
+                MemorySegment.copy(mapping, ValueLayout.JAVA_BYTE, position, bytes, 0, len);
+                position += len;
                 return bytes;
             }
             case UINT16, INT16 -> {
                 short[] shorts = new short[len];
-                for (int i = 0; i < len; ++i) {
-                    shorts[i] = readShort(fileChannel);
-                }
+                MemorySegment.copy(mapping, JAVA_SHORT_LE, position, shorts, 0, len);
+                position += (long) len * Short.BYTES;
                 return shorts;
             }
             case UINT32, INT32 -> {
                 int[] ints = new int[len];
-                for (int i = 0; i < len; ++i) {
-                    ints[i] = readInt(fileChannel);
-                }
+                MemorySegment.copy(mapping, JAVA_INT_LE, position, ints, 0, len);
+                position += (long) len * Integer.BYTES;
                 return ints;
             }
             case FLOAT32 -> {
                 float[] floats = new float[len];
-                for (int i = 0; i < len; ++i) {
-                    floats[i] = readFloat(fileChannel);
-                }
+                MemorySegment.copy(mapping, JAVA_FLOAT_LE, position, floats, 0, len);
+                position += (long) len * Float.BYTES;
                 return floats;
             }
             case BOOL -> {
                 boolean[] booleans = new boolean[len];
                 for (int i = 0; i < len; ++i) {
-                    booleans[i] = readBoolean(fileChannel);
+                    booleans[i] = readBoolean();
                 }
                 return booleans;
             }
             case STRING -> {
                 String[] strings = new String[len];
                 for (int i = 0; i < len; ++i) {
-                    strings[i] = readString(fileChannel);
+                    strings[i] = readString();
                 }
                 return strings;
             }
             case ARRAY -> {
                 Object[] arrays = new Object[len];
                 for (int i = 0; i < len; ++i) {
-                    arrays[i] = readArray(fileChannel);
+                    arrays[i] = readArray();
                 }
                 return arrays;
             }
@@ -371,61 +417,141 @@ public final class GGUF {
         }
     }
 
-    private Object readMetadataValueOfType(MetadataValueType valueType, FileChannel fileChannel) throws IOException {
+    private void skipArrayOfType(MetadataValueType value_type) {
+        long len = readLong(); // uint64_t len;
+        switch (value_type) {
+            case STRING -> {
+                for (long i = 0; i < len; ++i) {
+                    skipString();
+                }
+            }
+            case ARRAY -> {
+                for (long i = 0; i < len; ++i) {
+                    skipArrayOfType(readMetadataValueType());
+                }
+            }
+            case UINT8, INT8, UINT16, INT16, UINT32, INT32, FLOAT32, BOOL -> position += len * value_type.byteSize();
+            default -> throw new UnsupportedOperationException("read array of " + value_type);
+        }
+    }
+
+    private Object readMetadataValueOfType(MetadataValueType valueType) {
         return switch (valueType) {
-            case UINT8, INT8 -> readByte(fileChannel);
-            case UINT16, INT16 -> readShort(fileChannel);
-            case UINT32, INT32 -> readInt(fileChannel);
-            case FLOAT32 -> readFloat(fileChannel);
-            case UINT64, INT64 -> readLong(fileChannel);
-            case FLOAT64 -> readDouble(fileChannel);
-            case BOOL -> readBoolean(fileChannel);
-            case STRING -> readString(fileChannel);
-            case ARRAY -> readArray(fileChannel);
+            case UINT8, INT8 -> readByte();
+            case UINT16, INT16 -> readShort();
+            case UINT32, INT32 -> readInt();
+            case FLOAT32 -> readFloat();
+            case UINT64, INT64 -> readLong();
+            case FLOAT64 -> readDouble();
+            case BOOL -> readBoolean();
+            case STRING -> readString();
+            case ARRAY -> readArray();
         };
     }
 
-    private byte readByte(FileChannel fileChannel) throws IOException {
-        int bytesRead = fileChannel.read(BB_1);
-        assert bytesRead == 1;
-        return BB_1.clear().get(0);
+    private byte readByte() {
+        byte value = mapping.get(ValueLayout.JAVA_BYTE, position);
+        position += Byte.BYTES;
+        return value;
     }
 
-    private boolean readBoolean(FileChannel fileChannel) throws IOException {
-        return readByte(fileChannel) != 0;
+    private boolean readBoolean() {
+        return readByte() != 0;
     }
 
-    private short readShort(FileChannel fileChannel) throws IOException {
-        int bytesRead = fileChannel.read(BB_2);
-        assert bytesRead == 2;
-        return BB_2.clear().getShort(0);
+    private short readShort() {
+        short value = mapping.get(JAVA_SHORT_LE, position);
+        position += Short.BYTES;
+        return value;
     }
 
-    private int readInt(FileChannel fileChannel) throws IOException {
-        int bytesRead = fileChannel.read(BB_4);
-        assert bytesRead == 4;
-        return BB_4.clear().getInt(0);
+    private int readInt() {
+        int value = mapping.get(JAVA_INT_LE, position);
+        position += Integer.BYTES;
+        return value;
     }
 
-    private long readLong(FileChannel fileChannel) throws IOException {
-        int bytesRead = fileChannel.read(BB_8);
-        assert bytesRead == 8;
-        return BB_8.clear().getLong(0);
+    private long readLong() {
+        long value = mapping.get(JAVA_LONG_LE, position);
+        position += Long.BYTES;
+        return value;
     }
 
-    private float readFloat(FileChannel fileChannel) throws IOException {
-        return Float.intBitsToFloat(readInt(fileChannel));
+    private float readFloat() {
+        float value = mapping.get(JAVA_FLOAT_LE, position);
+        position += Float.BYTES;
+        return value;
     }
 
-    private double readDouble(FileChannel fileChannel) throws IOException {
-        return Double.longBitsToDouble(readLong(fileChannel));
+    private double readDouble() {
+        double value = mapping.get(JAVA_DOUBLE_LE, position);
+        position += Double.BYTES;
+        return value;
     }
 
-    private MetadataValueType readMetadataValueType(FileChannel fileChannel) throws IOException {
-        int index = readInt(fileChannel);
+    private MetadataValueType readMetadataValueType() {
+        int index = readInt();
         return MetadataValueType.fromIndex(index);
     }
 
+    /**
+     * An array value not decoded yet: its element type and the offset of its length in the mapping.
+     */
+    private record LazyArray(MetadataValueType elementType, long offset) {
+    }
+
+    /**
+     * Metadata map decoding {@link LazyArray} values on first access, e.g. when a tokenizer reads them, other values are read
+     * with the header. Read-only.
+     */
+    private final class LazyMetadata extends AbstractMap<String, Object> {
+        private final Map<String, Object> values;
+
+        LazyMetadata(Map<String, Object> values) {
+            this.values = values;
+        }
+
+        @Override
+        public synchronized Object get(Object key) {
+            Object value = values.get(key);
+            if (value instanceof LazyArray lazyArray) {
+                value = decode(lazyArray);
+                values.put((String) key, value);
+            }
+            return value;
+        }
+
+        private Object decode(LazyArray lazyArray) {
+            // the parser is done with the header, its read position can be reused
+            position = lazyArray.offset();
+            return readArrayOfType(lazyArray.elementType());
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return values.size();
+        }
+
+        @Override
+        public Set<String> keySet() {
+            return Collections.unmodifiableSet(values.keySet());
+        }
+
+        @Override
+        public synchronized Set<Entry<String, Object>> entrySet() {
+            // iterating the entries decodes every array
+            for (String key : values.keySet()) {
+                get(key);
+            }
+            return Collections.unmodifiableMap(values).entrySet();
+        }
+    }
+
     public int getAlignment() {
         if (alignment != 0) {
             return alignment;
@@ -0,0 +1,287 @@
+package org.beehive.gpullama3.tensor;
+
+import org.beehive.gpullama3.tensor.standard.FloatTensor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Writes GGUF (version 3) files, the counterpart of {@link GGUF}.
+ * <p>
+ * Metadata and tensor infos are collected first, then {@link #create} writes the header and returns the tensor-data section
+ * memory-mapped for writing. Each tensor is filled in place through {@link Output#tensorData}, from any thread, so large models
+ * are streamed to disk without being held on the heap.
+ */
+public final class GGUFWriter {
+    private static final int GGUF_MAGIC = 0x46554747;
+    private static final int GGUF_VERSION = 3;
+    private static final int DEFAULT_ALIGNMENT = 32;
+
+    private final Map<String, MetadataValue> metadata = new LinkedHashMap<>();
+    private final Map<String, TensorInfo> tensorInfos = new LinkedHashMap<>();
+    private long tensorDataSize;
+
+    private record MetadataValue(MetadataValueType valueType, MetadataValueType arrayType, Object value) {
+    }
+
+    private record TensorInfo(String name, int[] dimensions, GGMLType ggmlType, long offset, long sizeInBytes) {
+    }
+
+    /**
+     * Adds or replaces a scalar (or string) metadata value, boxed as {@link GGUF} reads it, e.g. an {@link Integer} for {@code UINT32}.
+     */
+    public GGUFWriter putMetadata(String key, MetadataValueType valueType, Object value) {
+        if (valueType == MetadataValueType.ARRAY) {
+            throw new IllegalArgumentException("use putArray for " + key);
+        }
+        if (key.equals("general.alignment") && !tensorInfos.isEmpty()) {
+            // tensor offsets are already aligned
+            throw new IllegalStateException("general.alignment must be set before adding tensors");
+        }
+        metadata.put(key, new MetadataValue(valueType, null, value));
+        return this;
+    }
+
+    /**
+     * Adds or replaces an array metadata value, a primitive or {@link String} array as {@link GGUF} reads it, e.g. an {@code int[]} for {@code UINT32}.
+     */
+    public GGUFWriter putArray(String key, MetadataValueType arrayType, Object array) {
+        metadata.put(key, new MetadataValue(MetadataValueType.ARRAY, arrayType, array));
+        return this;
+    }
+
+    /**
+     * Copies all the metadata of {@code gguf}, keeping the stored value types.
+     */
+    public GGUFWriter putAllMetadata(GGUF gguf) {
+        for (Map.Entry<String, Object> entry : gguf.getMetadata().entrySet()) {
+            String key = entry.getKey();
+            MetadataValueType valueType = gguf.getMetadataValueType(key);
+            if (valueType == MetadataValueType.ARRAY) {
+                putArray(key, gguf.getMetadataArrayType(key), entry.getValue());
+            } else {
+                putMetadata(key, valueType, entry.getValue());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds a tensor, its data is placed after the previous tensor at the next multiple of the alignment.
+     * The alignment ({@code general.alignment}) cannot change once tensors are added.
+     */
+    public GGUFWriter addTensor(String name, GGMLType ggmlType, int[] dimensions) {
+        if (tensorInfos.containsKey(name)) {
+            throw new IllegalArgumentException("duplicate tensor " + name);
+        }
+        long sizeInBytes = ggmlType.byteSizeFor(FloatTensor.numberOfElements(dimensions));
+        long offset = align(tensorDataSize, getAlignment());
+        tensorInfos.put(name, new TensorInfo(name, dimensions.clone(), ggmlType, offset, sizeInBytes));
+        tensorDataSize = offset + sizeInBytes;
+        return this;
+    }
+
+    public int getAlignment() {
+        MetadataValue alignment = metadata.get("general.alignment");
+        return alignment != null ? ((Number) alignment.value()).intValue() : DEFAULT_ALIGNMENT;
+    }
+
+    private static long align(long position, int alignment) {
+        return (position + alignment - 1) / alignment * alignment;
+    }
+
+    /**
+     * Writes the header, metadata and tensor infos to {@code path} (replacing it) and maps the tensor-data section for writing.
+     */
+    public Output create(Path path) throws IOException {
+        byte[] header = serializeHeader();
+        long tensorDataOffset = align(header.length, getAlignment());
+        FileChannel fileChannel = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, READ, WRITE);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(header);
+            while (buffer.hasRemaining()) {
+                fileChannel.write(buffer);
+            }
+            // padding and tensor data, sparse until written
+            long fileSize = tensorDataOffset + tensorDataSize;
+            fileChannel.write(ByteBuffer.allocate(1), fileSize - 1);
+            Arena arena = Arena.ofShared();
+            MemorySegment tensorData = fileChannel.map(FileChannel.MapMode.READ_WRITE, tensorDataOffset, Math.max(1, tensorDataSize), arena);
+            return new Output(fileChannel, arena, tensorData, Map.copyOf(tensorInfos));
+        } catch (IOException | RuntimeException e) {
+            fileChannel.close();
+            throw e;
+        }
+    }
+
+    private byte[] serializeHeader() {
+        LittleEndianOutput out = new LittleEndianOutput();
+        out.writeInt(GGUF_MAGIC);
+        out.writeInt(GGUF_VERSION);
+        out.writeLong(tensorInfos.size());
+        out.writeLong(metadata.size());
+        for (Map.Entry<String, MetadataValue> entry : metadata.entrySet()) {
+            MetadataValue value = entry.getValue();
+            out.writeString(entry.getKey());
+            out.writeInt(value.valueType().ordinal());
+            if (value.valueType() == MetadataValueType.ARRAY) {
+                out.writeInt(value.arrayType().ordinal());
+                writeArray(out, value.arrayType(), value.value());
+            } else {
+                writeValue(out, value.valueType(), value.value());
+            }
+        }
+        for (TensorInfo ti : tensorInfos.values()) {
+            out.writeString(ti.name());
+            out.writeInt(ti.dimensions().length);
+            for (int dimension : ti.dimensions()) {
+                out.writeLong(dimension);
+            }
+            out.writeInt(ti.ggmlType().ordinal());
+            out.writeLong(ti.offset());
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeValue(LittleEndianOutput out, MetadataValueType valueType, Object value) {
+        switch (valueType) {
+            case UINT8, INT8 -> out.writeByte((Byte) value);
+            case UINT16, INT16 -> out.writeShort((Short) value);
+            case UINT32, INT32 -> out.writeInt((Integer) value);
+            case FLOAT32 -> out.writeInt(Float.floatToRawIntBits((Float) value));
+            case UINT64, INT64 -> out.writeLong((Long) value);
+            case FLOAT64 -> out.writeLong(Double.doubleToRawLongBits((Double) value));
+            case BOOL -> out.writeByte((Boolean) value ? 1 : 0);
+            case STRING -> out.writeString((String) value);
+            case ARRAY -> throw new UnsupportedOperationException("nested array");
+        }
+    }
+
+    private static void writeArray(LittleEndianOutput out, MetadataValueType arrayType, Object array) {
+        switch (arrayType) {
+            case UINT8, INT8 -> {
+                byte[] bytes = (byte[]) array;
+                out.writeLong(bytes.length);
+                for (byte b : bytes) {
+                    out.writeByte(b);
+                }
+            }
+            case UINT16, INT16 -> {
+                short[] shorts = (short[]) array;
+                out.writeLong(shorts.length);
+                for (short s : shorts) {
+                    out.writeShort(s);
+                }
+            }
+            case UINT32, INT32 -> {
+                int[] ints = (int[]) array;
+                out.writeLong(ints.length);
+                for (int i : ints) {
+                    out.writeInt(i);
+                }
+            }
+            case FLOAT32 -> {
+                float[] floats = (float[]) array;
+                out.writeLong(floats.length);
+                for (float f : floats) {
+                    out.writeInt(Float.floatToRawIntBits(f));
+                }
+            }
+            case BOOL -> {
+                boolean[] booleans = (boolean[]) array;
+                out.writeLong(booleans.length);
+                for (boolean b : booleans) {
+                    out.writeByte(b ? 1 : 0);
+                }
+            }
+            case STRING -> {
+                String[] strings = (String[]) array;
+                out.writeLong(strings.length);
+                for (String s : strings) {
+                    out.writeString(s);
+                }
+            }
+            default -> throw new UnsupportedOperationException("write array of " + arrayType);
+        }
+    }
+
+    /**
+     * A GGUF file being written, its tensor data is memory-mapped. {@link #close} flushes it to disk.
+     */
+    public static final class Output implements AutoCloseable {
+        private final FileChannel fileChannel;
+        private final Arena arena;
+        private final MemorySegment tensorData;
+        private final Map<String, TensorInfo> tensorInfos;
+
+        private Output(FileChannel fileChannel, Arena arena, MemorySegment tensorData, Map<String, TensorInfo> tensorInfos) {
+            this.fileChannel = fileChannel;
+            this.arena = arena;
+            this.tensorData = tensorData;
+            this.tensorInfos = tensorInfos;
+        }
+
+        /**
+         * Writable slice holding the data of tensor {@code name}, {@code ggmlType.byteSizeFor(elements)} bytes.
+         */
+        public MemorySegment tensorData(String name) {
+            TensorInfo ti = tensorInfos.get(name);
+            if (ti == null) {
+                throw new IllegalArgumentException("unknown tensor " + name);
+            }
+            return tensorData.asSlice(ti.offset(), ti.sizeInBytes());
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                tensorData.force();
+            } finally {
+                arena.close();
+                fileChannel.close();
+            }
+        }
+    }
+
+    private static final class LittleEndianOutput extends ByteArrayOutputStream {
+
+        void writeByte(int value) {
+            write(value);
+        }
+
+        void writeShort(short value) {
+            write(value);
+            write(value >>> 8);
+        }
+
+        void writeInt(int value) {
+            writeShort((short) value);
+            writeShort((short) (value >>> 16));
+        }
+
+        void writeLong(long value) {
+            writeInt((int) value);
+            writeInt((int) (value >>> 32));
+        }
+
+        void writeString(String value) {
+            // gguf_string_t: uint64_t length in bytes, UTF-8 non-null-terminated string
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeLong(bytes.length);
+            writeBytes(bytes);
+        }
+    }
+}
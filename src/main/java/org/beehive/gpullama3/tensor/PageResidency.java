@@ -0,0 +1,220 @@
+package org.beehive.gpullama3.tensor;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+/**
+ * Page residency of the memory-mapped weights, opt-in with {@code -Dllama.Residency}, a comma-separated list of:
+ * <ul>
+ *   <li>{@code prefetch}: fault every page in, in parallel on a background thread, so the first tokens do not wait on page faults</li>
+ *   <li>{@code hugepages}: ask for transparent huge pages ({@code MADV_HUGEPAGE}, Linux), fewer TLB misses on large models</li>
+ *   <li>{@code mlock}: pin the weights in RAM so they are not evicted under memory pressure, bounded by {@code ulimit -l}</li>
+ * </ul>
+ * {@code madvise}, {@code mlock} and {@code mincore} are called through the FFM API. Residency is only a hint: failures are
+ * reported and otherwise ignored.
+ */
+public final class PageResidency {
+
+    private static final int MADV_WILLNEED = 3;
+    private static final int MADV_HUGEPAGE = 14; // Linux only
+    private static final long PREFETCH_CHUNK_SIZE = 4L << 20; // bytes touched per task
+
+    private static final MethodHandle MADVISE;
+    private static final MethodHandle MLOCK;
+    private static final MethodHandle MINCORE;
+    private static final long PAGE_SIZE;
+
+    static {
+        MethodHandle madvise = null, mlock = null, mincore = null;
+        long pageSize = 4096;
+        try {
+            Linker linker = Linker.nativeLinker();
+            SymbolLookup libc = linker.defaultLookup();
+            madvise = linker.downcallHandle(libc.find("madvise").orElseThrow(),
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT));
+            mlock = linker.downcallHandle(libc.find("mlock").orElseThrow(),
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG));
+            mincore = linker.downcallHandle(libc.find("mincore").orElseThrow(),
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG, ValueLayout.ADDRESS));
+            MethodHandle getpagesize = linker.downcallHandle(libc.find("getpagesize").orElseThrow(), FunctionDescriptor.of(ValueLayout.JAVA_INT));
+            pageSize = (int) getpagesize.invokeExact();
+        } catch (Throwable t) {
+            // e.g. Windows, residency options are then ignored
+            madvise = mlock = mincore = null;
+        }
+        MADVISE = madvise;
+        MLOCK = mlock;
+        MINCORE = mincore;
+        PAGE_SIZE = pageSize;
+    }
+
+    private static volatile long sink; // keeps the prefetch reads alive
+
+    private final List<MemorySegment> mappings;
+    private final long totalBytes;
+    private final boolean prefetch;
+    private final boolean hugePages;
+    private final boolean lock;
+    private final AtomicLong prefetchedBytes = new AtomicLong();
+
+    private PageResidency(List<MemorySegment> mappings, Set<String> options) {
+        for (String option : options) {
+            if (!Set.of("prefetch", "hugepages", "mlock").contains(option)) {
+                throw new IllegalArgumentException("Unknown residency option " + option + ", expected prefetch, hugepages or mlock");
+            }
+        }
+        this.mappings = mappings;
+        this.totalBytes = mappings.stream().mapToLong(MemorySegment::byteSize).sum();
+        this.prefetch = options.contains("prefetch");
+        this.hugePages = options.contains("hugepages");
+        this.lock = options.contains("mlock");
+    }
+
+    /**
+     * Applies the residency {@code options} ({@code -Dllama.Residency}) to the mappings backing {@code tensorEntries}.
+     * Huge pages are requested right away, prefetching and locking run on a background thread that reports progress on stderr.
+     */
+    public static PageResidency manage(Collection<GGMLTensorEntry> tensorEntries, String options) {
+        List<MemorySegment> mappings = tensorEntries.stream().map(GGMLTensorEntry::mappedFile).distinct().toList();
+        Set<String> optionSet = Set.of(options.toLowerCase(Locale.ROOT).split("\\s*,\\s*"));
+        PageResidency residency = new PageResidency(mappings, optionSet);
+        if (MADVISE == null) {
+            System.err.println("Weights residency: madvise/mlock not available on this platform, ignoring -Dllama.Residency=" + options);
+            return residency;
+        }
+        if (residency.hugePages) {
+            residency.adviseHugePages();
+        }
+        if (residency.prefetch || residency.lock) {
+            Thread thread = new Thread(residency::prefetchAndLock, "weights-residency");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return residency;
+    }
+
+    /**
+     * Bytes of the mapped weights currently in RAM, as reported by {@code mincore}.
+     */
+    public long residentBytes() {
+        if (MINCORE == null) {
+            return -1;
+        }
+        long resident = 0;
+        for (MemorySegment mapping : mappings) {
+            long start = pageStart(mapping);
+            long length = mapping.address() + mapping.byteSize() - start;
+            long pages = (length + PAGE_SIZE - 1) / PAGE_SIZE;
+            try (Arena arena = Arena.ofConfined()) {
+                MemorySegment vec = arena.allocate(pages);
+                if ((int) MINCORE.invokeExact(MemorySegment.ofAddress(start), length, vec) != 0) {
+                    return -1;
+                }
+                for (long i = 0; i < pages; i++) {
+                    resident += (vec.get(ValueLayout.JAVA_BYTE, i) & 1) * PAGE_SIZE;
+                }
+            } catch (Throwable t) {
+                return -1;
+            }
+        }
+        return Math.min(resident, totalBytes);
+    }
+
+    /**
+     * Bytes faulted in by the background prefetch so far.
+     */
+    public long prefetchedBytes() {
+        return prefetchedBytes.get();
+    }
+
+    public long totalBytes() {
+        return totalBytes;
+    }
+
+    private void adviseHugePages() {
+        if (!System.getProperty("os.name", "").toLowerCase(Locale.ROOT).contains("linux")) {
+            System.err.println("Weights residency: transparent huge pages are only supported on Linux");
+            return;
+        }
+        for (MemorySegment mapping : mappings) {
+            if (madvise(mapping, MADV_HUGEPAGE) != 0) {
+                // file-backed mappings need CONFIG_READ_ONLY_THP_FOR_FS, see /sys/kernel/mm/transparent_hugepage/enabled
+                System.err.println("Weights residency: madvise(MADV_HUGEPAGE) failed, transparent huge pages are disabled or unsupported for file mappings");
+                return;
+            }
+        }
+    }
+
+    private void prefetchAndLock() {
+        long startNanos = System.nanoTime();
+        if (prefetch) {
+            for (MemorySegment mapping : mappings) {
+                madvise(mapping, MADV_WILLNEED); // start the kernel read-ahead, the pages are touched below anyway
+                touchPages(mapping);
+            }
+        }
+        String locked = "";
+        if (lock) {
+            boolean success = mappings.stream().allMatch(mapping -> mlock(mapping) == 0);
+            locked = success ? ", locked" : ", mlock failed (raise ulimit -l)";
+        }
+        long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000;
+        System.err.printf("Weights residency: %.1f of %.1f MiB resident%s (%d ms)%n", residentBytes() / 1048576.0, totalBytes / 1048576.0, locked, elapsedMillis);
+    }
+
+    private void touchPages(MemorySegment mapping) {
+        long chunks = (mapping.byteSize() + PREFETCH_CHUNK_SIZE - 1) / PREFETCH_CHUNK_SIZE;
+        // common fork/join pool, the compute threads of Parallel stay free for inference
+        LongStream.range(0, chunks).parallel().forEach(chunk -> {
+            long from = chunk * PREFETCH_CHUNK_SIZE;
+            long to = Math.min(mapping.byteSize(), from + PREFETCH_CHUNK_SIZE);
+            long sum = 0;
+            for (long offset = from; offset < to; offset += PAGE_SIZE) {
+                sum += mapping.get(ValueLayout.JAVA_BYTE, offset);
+            }
+            sink += sum;
+            reportProgress(prefetchedBytes.getAndAdd(to - from), to - from);
+        });
+    }
+
+    private void reportProgress(long before, long bytes) {
+        // one line per 10%
+        long step = Math.max(1, totalBytes / 10);
+        if (before / step != (before + bytes) / step) {
+            System.err.printf("Weights residency: prefetched %d%%%n", Math.min(100, (before + bytes) * 100 / totalBytes));
+        }
+    }
+
+    private static long pageStart(MemorySegment segment) {
+        return segment.address() / PAGE_SIZE * PAGE_SIZE;
+    }
+
+    private static int madvise(MemorySegment segment, int advice) {
+        long start = pageStart(segment);
+        try {
+            return (int) MADVISE.invokeExact(MemorySegment.ofAddress(start), segment.address() + segment.byteSize() - start, advice);
+        } catch (Throwable t) {
+            return -1;
+        }
+    }
+
+    private static int mlock(MemorySegment segment) {
+        long start = pageStart(segment);
+        try {
+            return (int) MLOCK.invokeExact(MemorySegment.ofAddress(start), segment.address() + segment.byteSize() - start);
+        } catch (Throwable t) {
+            return -1;
+        }
+    }
+}
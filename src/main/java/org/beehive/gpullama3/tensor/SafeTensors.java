@@ -0,0 +1,386 @@
+package org.beehive.gpullama3.tensor;
+
+import org.beehive.gpullama3.auxiliary.Parallel;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * Reader of HuggingFace SafeTensors checkpoints, single file or sharded ({@code model.safetensors.index.json}).
+ * <p>
+ * A file is an 8-byte little-endian header length, a JSON header describing each tensor ({@code dtype}, {@code shape},
+ * {@code data_offsets} relative to the data region) and the data region. As in {@link GGUF#loadTensorsStandard}, the data region
+ * of every file is memory-mapped read-only and each tensor is a slice of it, nothing is copied onto the heap.
+ * <p>
+ * Shapes are reversed into the GGUF order, {@code shape[0]} is the row size.
+ */
+public final class SafeTensors {
+
+    private static final String INDEX_FILE = "model.safetensors.index.json";
+
+    // HF layer tensor name -> GGUF name, the same mapping as llama.cpp convert_hf_to_gguf.py
+    private static final Pattern LAYER_TENSOR = Pattern.compile("model\\.layers\\.(\\d+)\\.(.+)\\.(weight|bias)");
+    private static final Map<String, String> LAYER_TENSOR_NAMES = Map.ofEntries(
+            Map.entry("input_layernorm", "attn_norm"),
+            Map.entry("post_attention_layernorm", "ffn_norm"),
+            Map.entry("self_attn.q_proj", "attn_q"),
+            Map.entry("self_attn.k_proj", "attn_k"),
+            Map.entry("self_attn.v_proj", "attn_v"),
+            Map.entry("self_attn.o_proj", "attn_output"),
+            Map.entry("self_attn.qkv_proj", "attn_qkv"),
+            Map.entry("self_attn.q_norm", "attn_q_norm"),
+            Map.entry("self_attn.k_norm", "attn_k_norm"),
+            Map.entry("mlp.gate_proj", "ffn_gate"),
+            Map.entry("mlp.up_proj", "ffn_up"),
+            Map.entry("mlp.down_proj", "ffn_down"),
+            Map.entry("mlp.gate_up_proj", "ffn_up")); // Phi-3, gate and up fused as in GGUF
+    private static final Map<String, String> TENSOR_NAMES = Map.of(
+            "model.embed_tokens.weight", "token_embd.weight",
+            "model.norm.weight", "output_norm.weight",
+            "lm_head.weight", "output.weight");
+
+    private SafeTensors() {
+        // prevent instantiation
+    }
+
+    /**
+     * Maps the tensors of a checkpoint, {@code path} is a {@code .safetensors} file, an index file or a directory holding either.
+     *
+     * @return tensor entries keyed by their checkpoint (HF) names, with a {@code null} type for dtypes other than F32/F16/BF16
+     */
+    public static Map<String, GGMLTensorEntry> loadTensors(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            throw new FileNotFoundException("SafeTensors checkpoint not found: " + path);
+        }
+        Map<String, GGMLTensorEntry> tensorEntries = new LinkedHashMap<>();
+        for (Path file : checkpointFiles(path)) {
+            for (GGMLTensorEntry entry : loadFile(file)) {
+                if (tensorEntries.put(entry.name(), entry) != null) {
+                    throw new IllegalArgumentException("Duplicate tensor " + entry.name() + " in " + file);
+                }
+            }
+        }
+        return tensorEntries;
+    }
+
+    private static List<Path> checkpointFiles(Path path) throws IOException {
+        Path index = Files.isDirectory(path) ? path.resolve(INDEX_FILE) : path;
+        if (index.getFileName().toString().endsWith(".json")) {
+            // sharded: {"metadata": {...}, "weight_map": {"tensor name": "shard file name", ...}}
+            Map<?, ?> weightMap = (Map<?, ?>) ((Map<?, ?>) Json.parse(Files.readString(index))).get("weight_map");
+            Set<Path> shards = new LinkedHashSet<>();
+            for (Object shard : weightMap.values()) {
+                shards.add(index.resolveSibling((String) shard));
+            }
+            return List.copyOf(shards);
+        }
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> files = Files.list(path)) {
+                List<Path> shards = files.filter(file -> file.getFileName().toString().endsWith(".safetensors")).sorted().toList();
+                if (shards.isEmpty()) {
+                    throw new FileNotFoundException("No .safetensors file in " + path);
+                }
+                return shards;
+            }
+        }
+        return List.of(path);
+    }
+
+    private static List<GGMLTensorEntry> loadFile(Path file) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file, READ)) {
+            // uint64 header size, then the UTF-8 JSON header
+            ByteBuffer sizeBuffer = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            fileChannel.read(sizeBuffer, 0);
+            long headerSize = sizeBuffer.getLong(0);
+            if (headerSize <= 0 || Long.BYTES + headerSize > fileChannel.size()) {
+                throw new IllegalArgumentException("Invalid SafeTensors header size " + headerSize + " in " + file);
+            }
+            ByteBuffer headerBuffer = ByteBuffer.allocate(Math.toIntExact(headerSize));
+            while (headerBuffer.hasRemaining() && fileChannel.read(headerBuffer, Long.BYTES + headerBuffer.position()) > 0) {
+                // read the whole header
+            }
+            Map<?, ?> header = (Map<?, ?>) Json.parse(new String(headerBuffer.array(), StandardCharsets.UTF_8));
+
+            long dataOffset = Long.BYTES + headerSize;
+            // the mapping outlives the channel, same as GGUF.loadTensorsStandard
+            MemorySegment tensorData = fileChannel.map(FileChannel.MapMode.READ_ONLY, dataOffset, fileChannel.size() - dataOffset, Arena.ofAuto());
+
+            List<GGMLTensorEntry> entries = new ArrayList<>(header.size());
+            for (Map.Entry<?, ?> entry : header.entrySet()) {
+                String name = (String) entry.getKey();
+                if (name.equals("__metadata__")) {
+                    continue;
+                }
+                Map<?, ?> info = (Map<?, ?>) entry.getValue();
+                GGMLType ggmlType = ggmlType((String) info.get("dtype"));
+                List<?> shape = (List<?>) info.get("shape");
+                List<?> dataOffsets = (List<?>) info.get("data_offsets");
+                long begin = ((Number) dataOffsets.get(0)).longValue();
+                long end = ((Number) dataOffsets.get(1)).longValue();
+                int[] dimensions = new int[shape.size()];
+                for (int i = 0; i < dimensions.length; i++) {
+                    // row-major [rows, columns] -> GGUF [columns, rows]
+                    dimensions[i] = Math.toIntExact(((Number) shape.get(shape.size() - 1 - i)).longValue());
+                }
+                MemorySegment memorySegment = tensorData.asSlice(begin, end - begin);
+                entries.add(new GGMLTensorEntry(tensorData, name, ggmlType, dimensions, memorySegment));
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * GGML type of a SafeTensors dtype; other dtypes (integers, FP8) are kept as {@code null} and rejected when loaded.
+     */
+    private static GGMLType ggmlType(String dtype) {
+        return switch (dtype) {
+            case "F32" -> GGMLType.F32;
+            case "F16" -> GGMLType.F16;
+            case "BF16" -> GGMLType.BF16;
+            default -> null;
+        };
+    }
+
+    /**
+     * GGUF name of a HuggingFace tensor, e.g. {@code model.layers.0.self_attn.q_proj.weight} to {@code blk.0.attn_q.weight},
+     * {@code null} for tensors not used for inference (e.g. {@code rotary_emb.inv_freq}).
+     */
+    public static String ggufTensorName(String hfName) {
+        String name = TENSOR_NAMES.get(hfName);
+        if (name != null) {
+            return name;
+        }
+        Matcher matcher = LAYER_TENSOR.matcher(hfName);
+        if (matcher.matches()) {
+            String layerTensor = LAYER_TENSOR_NAMES.get(matcher.group(2));
+            return layerTensor != null ? "blk." + matcher.group(1) + "." + layerTensor + "." + matcher.group(3) : null;
+        }
+        return null;
+    }
+
+    /**
+     * Maps the tensors of a checkpoint under their GGUF names, ready for the standard (CPU) weight loaders.
+     * <p>
+     * GGUF files of the {@code llama} architecture store {@code attn_q}/{@code attn_k} rows permuted for the interleaved RoPE
+     * ({@code permute} in llama.cpp convert_hf_to_gguf.py). With {@code permuteQueryKey}, those two matrices per layer are
+     * permuted into off-heap copies, every other tensor stays a slice of the mapped files.
+     */
+    public static Map<String, GGMLTensorEntry> loadTensorsStandard(Path path, int numberOfHeads, int numberOfKeyValueHeads, boolean permuteQueryKey) throws IOException {
+        Map<String, GGMLTensorEntry> tensorEntries = HashMap.newHashMap(256);
+        for (GGMLTensorEntry entry : loadTensors(path).values()) {
+            String name = ggufTensorName(entry.name());
+            if (name == null) {
+                continue;
+            }
+            if (entry.ggmlType() == null) {
+                throw new UnsupportedOperationException("Unsupported SafeTensors dtype for " + entry.name() + ", expected F32, F16 or BF16");
+            }
+            GGMLTensorEntry ggufEntry = new GGMLTensorEntry(entry.mappedFile(), name, entry.ggmlType(), entry.shape(), entry.memorySegment());
+            if (permuteQueryKey && name.endsWith(".attn_q.weight")) {
+                ggufEntry = permuteRows(ggufEntry, numberOfHeads);
+            } else if (permuteQueryKey && name.endsWith(".attn_k.weight")) {
+                ggufEntry = permuteRows(ggufEntry, numberOfKeyValueHeads);
+            }
+            tensorEntries.put(name, ggufEntry);
+        }
+        return tensorEntries;
+    }
+
+    /**
+     * Reorders the rows of each head from halves ({@code [x0..x(n/2-1), y0..y(n/2-1)]}, HF rotate-half RoPE) to pairs
+     * ({@code [x0, y0, x1, y1, ...]}), into a new off-heap segment.
+     */
+    private static GGMLTensorEntry permuteRows(GGMLTensorEntry entry, int heads) {
+        int rowSize = entry.shape()[0];
+        int rows = entry.shape()[1];
+        int headSize = rows / heads;
+        long rowBytes = entry.ggmlType().byteSizeFor(rowSize);
+        MemorySegment src = entry.memorySegment();
+        MemorySegment dst = Arena.ofAuto().allocate(src.byteSize(), 64);
+        Parallel.parallelFor(0, rows, row -> {
+            int head = row / headSize;
+            int i = row % headSize;
+            int srcRow = head * headSize + (i % 2) * (headSize / 2) + i / 2;
+            MemorySegment.copy(src, srcRow * rowBytes, dst, row * rowBytes, rowBytes);
+        });
+        return new GGMLTensorEntry(dst, entry.name(), entry.ggmlType(), entry.shape(), dst);
+    }
+
+    /**
+     * Minimal JSON parser for SafeTensors headers and index files: objects, arrays, strings, numbers, booleans and null.
+     */
+    static final class Json {
+        private final String text;
+        private int pos;
+
+        private Json(String text) {
+            this.text = text;
+        }
+
+        static Object parse(String text) {
+            Json json = new Json(text);
+            Object value = json.parseValue();
+            json.skipWhitespace();
+            if (json.pos != text.length()) {
+                throw json.error("trailing characters");
+            }
+            return value;
+        }
+
+        private Object parseValue() {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                throw error("unexpected end");
+            }
+            char c = text.charAt(pos);
+            return switch (c) {
+                case '{' -> parseObject();
+                case '[' -> parseArray();
+                case '"' -> parseString();
+                case 't' -> literal("true", Boolean.TRUE);
+                case 'f' -> literal("false", Boolean.FALSE);
+                case 'n' -> literal("null", null);
+                default -> parseNumber();
+            };
+        }
+
+        private Map<String, Object> parseObject() {
+            Map<String, Object> object = new LinkedHashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return object;
+            }
+            do {
+                skipWhitespace();
+                String key = parseString();
+                skipWhitespace();
+                expect(':');
+                object.put(key, parseValue());
+                skipWhitespace();
+            } while (tryConsume(','));
+            expect('}');
+            return object;
+        }
+
+        private List<Object> parseArray() {
+            List<Object> array = new ArrayList<>();
+            expect('[');
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return array;
+            }
+            do {
+                array.add(parseValue());
+                skipWhitespace();
+            } while (tryConsume(','));
+            expect(']');
+            return array;
+        }
+
+        private String parseString() {
+            expect('"');
+            StringBuilder sb = new StringBuilder();
+            while (true) {
+                if (pos >= text.length()) {
+                    throw error("unterminated string");
+                }
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return sb.toString();
+                }
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                char escaped = text.charAt(pos++);
+                switch (escaped) {
+                    case '"', '\\', '/' -> sb.append(escaped);
+                    case 'b' -> sb.append('\b');
+                    case 'f' -> sb.append('\f');
+                    case 'n' -> sb.append('\n');
+                    case 'r' -> sb.append('\r');
+                    case 't' -> sb.append('\t');
+                    case 'u' -> {
+                        sb.append((char) Integer.parseInt(text, pos, pos + 4, 16));
+                        pos += 4;
+                    }
+                    default -> throw error("invalid escape \\" + escaped);
+                }
+            }
+        }
+
+        private Number parseNumber() {
+            int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0) {
+                pos++;
+            }
+            String number = text.substring(start, pos);
+            if (number.isEmpty()) {
+                throw error("unexpected character");
+            }
+            if (number.contains(".") || number.contains("e") || number.contains("E")) {
+                return Double.parseDouble(number);
+            }
+            return Long.parseLong(number);
+        }
+
+        private Object literal(String literal, Object value) {
+            if (!text.startsWith(literal, pos)) {
+                throw error("unexpected character");
+            }
+            pos += literal.length();
+            return value;
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private char peek() {
+            return pos < text.length() ? text.charAt(pos) : '\0';
+        }
+
+        private boolean tryConsume(char c) {
+            if (peek() == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!tryConsume(c)) {
+                throw error("expected '" + c + "'");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid JSON at offset " + pos + ": " + message);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package org.beehive.gpullama3.tensor.standard;
 
 import org.beehive.gpullama3.tensor.GGMLType;
 import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
 import jdk.incubator.vector.VectorSpecies;
 
 import java.lang.foreign.MemorySegment;
@@ -58,4 +59,224 @@ public final class ArrayFloatTensor extends FloatTensor {
         }
         return FloatVector.fromArray(species, values, index);
     }
+
+    // Fast paths over the backing float[]: plain loops, vectorized when possible, instead of the lambda-based defaults in FloatTensor.
+
+    @Override
+    float sum(int thisOffset, int size) {
+        float result = 0f;
+        int i = 0;
+        if (USE_VECTOR_API) {
+            FloatVector val = FloatVector.zero(F_SPECIES);
+            int upperBound = F_SPECIES.loopBound(size);
+            for (; i < upperBound; i += F_SPECIES.length()) {
+                val = val.add(FloatVector.fromArray(F_SPECIES, values, thisOffset + i));
+            }
+            result = val.reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < size; i++) {
+            result += values[thisOffset + i];
+        }
+        return result;
+    }
+
+    @Override
+    float max(int thisOffset, int size) {
+        float result = Float.NEGATIVE_INFINITY;
+        int i = 0;
+        if (USE_VECTOR_API) {
+            FloatVector val = FloatVector.broadcast(F_SPECIES, Float.NEGATIVE_INFINITY);
+            int upperBound = F_SPECIES.loopBound(size);
+            for (; i < upperBound; i += F_SPECIES.length()) {
+                val = val.max(FloatVector.fromArray(F_SPECIES, values, thisOffset + i));
+            }
+            result = val.reduceLanes(VectorOperators.MAX);
+        }
+        for (; i < size; i++) {
+            result = Math.max(result, values[thisOffset + i]);
+        }
+        return result;
+    }
+
+    @Override
+    public void copyTo(int thisOffset, FloatTensor that, int thatOffset, int size) {
+        if (that instanceof ArrayFloatTensor thatArray) {
+            System.arraycopy(values, thisOffset, thatArray.values, thatOffset, size);
+        } else {
+            super.copyTo(thisOffset, that, thatOffset, size);
+        }
+    }
+
+    @Override
+    FloatTensor addInPlace(int thisOffset, FloatTensor that, int thatOffset, int size) {
+        if (!(that instanceof ArrayFloatTensor thatArray)) {
+            return super.addInPlace(thisOffset, that, thatOffset, size);
+        }
+        float[] other = thatArray.values;
+        int i = 0;
+        if (USE_VECTOR_API) {
+            int upperBound = F_SPECIES.loopBound(size);
+            for (; i < upperBound; i += F_SPECIES.length()) {
+                FloatVector.fromArray(F_SPECIES, values, thisOffset + i).add(FloatVector.fromArray(F_SPECIES, other, thatOffset + i)).intoArray(values, thisOffset + i);
+            }
+        }
+        for (; i < size; i++) {
+            values[thisOffset + i] += other[thatOffset + i];
+        }
+        return this;
+    }
+
+    @Override
+    public FloatTensor multiplyInPlace(int thisOffset, FloatTensor that, int thatOffset, int size) {
+        if (!(that instanceof ArrayFloatTensor thatArray)) {
+            return super.multiplyInPlace(thisOffset, that, thatOffset, size);
+        }
+        float[] other = thatArray.values;
+        int i = 0;
+        if (USE_VECTOR_API) {
+            int upperBound = F_SPECIES.loopBound(size);
+            for (; i < upperBound; i += F_SPECIES.length()) {
+                FloatVector.fromArray(F_SPECIES, values, thisOffset + i).mul(FloatVector.fromArray(F_SPECIES, other, thatOffset + i)).intoArray(values, thisOffset + i);
+            }
+        }
+        for (; i < size; i++) {
+            values[thisOffset + i] *= other[thatOffset + i];
+        }
+        return this;
+    }
+
+    @Override
+    public float dot(int thisOffset, FloatTensor that, int thatOffset, int size) {
+        if (!USE_VECTOR_API || !(that instanceof ArrayFloatTensor thatArray)) {
+            return super.dot(thisOffset, that, thatOffset, size);
+        }
+        float[] other = thatArray.values;
+        FloatVector val = FloatVector.zero(F_SPECIES);
+        int upperBound = F_SPECIES.loopBound(size);
+        int i = 0;
+        for (; i < upperBound; i += F_SPECIES.length()) {
+            val = FloatVector.fromArray(F_SPECIES, values, thisOffset + i).fma(FloatVector.fromArray(F_SPECIES, other, thatOffset + i), val);
+        }
+        float result = val.reduceLanes(VectorOperators.ADD);
+        for (; i < size; i++) {
+            result += values[thisOffset + i] * other[thatOffset + i];
+        }
+        return result;
+    }
+
+    @Override
+    public FloatTensor scaleInPlace(int thisOffset, int size, float value) {
+        int i = 0;
+        if (USE_VECTOR_API) {
+            int upperBound = F_SPECIES.loopBound(size);
+            for (; i < upperBound; i += F_SPECIES.length()) {
+                FloatVector.fromArray(F_SPECIES, values, thisOffset + i).mul(value).intoArray(values, thisOffset + i);
+            }
+        }
+        for (; i < size; i++) {
+            values[thisOffset + i] *= value;
+        }
+        return this;
+    }
+
+    @Override
+    public FloatTensor divideInPlace(int thisOffset, int size, float value) {
+        int i = 0;
+        if (USE_VECTOR_API) {
+            int upperBound = F_SPECIES.loopBound(size);
+            for (; i < upperBound; i += F_SPECIES.length()) {
+                FloatVector.fromArray(F_SPECIES, values, thisOffset + i).div(value).intoArray(values, thisOffset + i);
+            }
+        }
+        for (; i < size; i++) {
+            values[thisOffset + i] /= value;
+        }
+        return this;
+    }
+
+    @Override
+    public FloatTensor saxpyInPlace(int thisOffset, FloatTensor that, int thatOffset, int size, float a) {
+        if (!(that instanceof ArrayFloatTensor thatArray)) {
+            return super.saxpyInPlace(thisOffset, that, thatOffset, size, a);
+        }
+        float[] other = thatArray.values;
+        int i = 0;
+        if (USE_VECTOR_API) {
+            FloatVector va = FloatVector.broadcast(F_SPECIES, a);
+            int upperBound = F_SPECIES.loopBound(size);
+            for (; i < upperBound; i += F_SPECIES.length()) {
+                FloatVector.fromArray(F_SPECIES, other, thatOffset + i).fma(va, FloatVector.fromArray(F_SPECIES, values, thisOffset + i)).intoArray(values, thisOffset + i);
+            }
+        }
+        for (; i < size; i++) {
+            values[thisOffset + i] = a * other[thatOffset + i] + values[thisOffset + i];
+        }
+        return this;
+    }
+
+    @Override
+    public FloatTensor siluInPlace(int thisOffset, int size) {
+        int endIndex = thisOffset + size;
+        for (int i = thisOffset; i < endIndex; i++) {
+            float value = values[i];
+            values[i] = value / (float) (1.0 + Math.exp(-value));
+        }
+        return this;
+    }
+
+    @Override
+    public FloatTensor softmaxInPlace(int thisOffset, int size) {
+        // find max value (for numerical stability)
+        float maxVal = max(thisOffset, size);
+        // exp and sum
+        float sum = 0f;
+        int endIndex = thisOffset + size;
+        for (int i = thisOffset; i < endIndex; i++) {
+            float e = (float) Math.exp(values[i] - maxVal);
+            values[i] = e;
+            sum += e;
+        }
+        // normalize
+        return divideInPlace(thisOffset, size, sum);
+    }
+
+    /**
+     * Root Mean Square Layer Normalization over {@code [offset, offset + size)}, see {@code InferenceCore.rmsnorm}.
+     * The weight is indexed from 0, {@code offset} must be a multiple of {@code size} (e.g. per-head normalization).
+     */
+    public static void rmsnorm(ArrayFloatTensor out, ArrayFloatTensor x, FloatTensor weight, int offset, int size, float rmsNormEps) {
+        assert offset % size == 0;
+        float[] xValues = x.values;
+        float[] outValues = out.values;
+        // calculate sum of squares
+        float ss = 0f;
+        int i = 0;
+        if (USE_VECTOR_API) {
+            FloatVector val = FloatVector.zero(F_SPECIES);
+            int upperBound = F_SPECIES.loopBound(size);
+            for (; i < upperBound; i += F_SPECIES.length()) {
+                FloatVector xi = FloatVector.fromArray(F_SPECIES, xValues, offset + i);
+                val = xi.fma(xi, val);
+            }
+            ss = val.reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < size; i++) {
+            float xi = xValues[offset + i];
+            ss += xi * xi;
+        }
+        ss /= size;
+        ss += rmsNormEps;
+        ss = (float) (1.0 / Math.sqrt(ss));
+        // normalize and scale
+        i = 0;
+        if (USE_VECTOR_API && (weight instanceof ArrayFloatTensor || weight instanceof FP32FloatTensor)) {
+            int upperBound = F_SPECIES.loopBound(size);
+            for (; i < upperBound; i += F_SPECIES.length()) {
+                weight.getFloatVector(F_SPECIES, i).mul(FloatVector.fromArray(F_SPECIES, xValues, offset + i).mul(ss)).intoArray(outValues, offset + i);
+            }
+        }
+        for (; i < size; i++) {
+            outValues[offset + i] = weight.getFloat(i) * (ss * xValues[offset + i]);
+        }
+    }
 }
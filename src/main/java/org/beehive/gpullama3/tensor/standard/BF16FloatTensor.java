@@ -0,0 +1,149 @@
+package org.beehive.gpullama3.tensor.standard;
+
+import org.beehive.gpullama3.tensor.GGMLType;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+/**
+ * {@link FloatTensor} stored in the {@link GGMLType#BF16} format.
+ * <p>
+ * A bfloat16 value is the upper half of a float32, so widening is a 16-bit left shift, no exponent rebias as in
+ * {@link FP16FloatTensor}.
+ */
+public final class BF16FloatTensor extends FloatTensor {
+
+    final int size;
+    final MemorySegment memorySegment;
+
+    public BF16FloatTensor(int size, MemorySegment memorySegment) {
+        this.size = size;
+        this.memorySegment = memorySegment;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void setFloat(int index, float value) {
+        throw new UnsupportedOperationException("setFloat");
+    }
+
+    @Override
+    public FloatVector getFloatVector(VectorSpecies<Float> species, int index) {
+        throw new UnsupportedOperationException("getFloatVector");
+    }
+
+    @Override
+    public GGMLType type() {
+        return GGMLType.BF16;
+    }
+
+    @Override
+    public MemorySegment asMemorySegment() {
+        return memorySegment;
+    }
+
+    @Override
+    public float getFloat(int index) {
+        assert 0 <= index && index < size;
+        return bfloat16ToFloat(readShort(memorySegment, (long) index * GGMLType.BFLOAT16_BYTES));
+    }
+
+    static float bfloat16ToFloat(short bits16) {
+        return Float.intBitsToFloat(bits16 << 16);
+    }
+
+    @Override
+    public float dot(int thisOffset, FloatTensor that, int thatOffset, int size) {
+        if (FloatTensor.USE_VECTOR_API && that instanceof ArrayFloatTensor thatArray) {
+            return vectorDot(this, thisOffset, thatArray, thatOffset, size);
+        } else {
+            return FloatTensor.scalarDot(this, thisOffset, that, thatOffset, size);
+        }
+    }
+
+    private static float vectorDot(BF16FloatTensor thiz, int thisOffset, ArrayFloatTensor that, int thatOffset, int size) {
+        assert S_SPECIES_HALF.length() == F_SPECIES.length();
+        FloatVector val = FloatVector.zero(F_SPECIES);
+        int upperBound = F_SPECIES.loopBound(size);
+        for (int i = 0; i < upperBound; i += F_SPECIES.length()) {
+            FloatVector thatVector = that.getFloatVector(F_SPECIES, thatOffset + i);
+            ShortVector bits16 = ShortVector.fromMemorySegment(S_SPECIES_HALF, thiz.memorySegment, (thisOffset + i) * (long) GGMLType.BFLOAT16_BYTES, ByteOrder.LITTLE_ENDIAN);
+            val = bfloat16ToFloat(bits16).fma(thatVector, val);
+        }
+        float result = val.reduceLanes(VectorOperators.ADD);
+        // Remaining entries.
+        if (upperBound < size) {
+            result += scalarDot(thiz, thisOffset + upperBound, that, thatOffset + upperBound, size - upperBound);
+        }
+
+        return result;
+    }
+
+    private static FloatVector bfloat16ToFloat(ShortVector bits16) {
+        // The sign extension of the widening cast is shifted out, NaNs and infinities are preserved.
+        return bits16.castShape(I_SPECIES, 0).reinterpretAsInts().lanewise(VectorOperators.LSHL, 16).reinterpretAsFloats();
+    }
+
+    @Override
+    public void matmulRows(FloatTensor that, FloatTensor out, int dim1, int fromRow, int toRow) {
+        if (!FloatTensor.USE_VECTOR_API || !(that instanceof ArrayFloatTensor thatArray)) {
+            super.matmulRows(that, out, dim1, fromRow, toRow);
+            return;
+        }
+        int i = fromRow;
+        for (; i + 4 <= toRow; i += 4) {
+            vectorDot4Rows(this, i, thatArray, out, dim1);
+        }
+        for (; i < toRow; i++) {
+            out.setFloat(i, vectorDot(this, i * dim1, thatArray, 0, dim1));
+        }
+    }
+
+    /**
+     * Computes rows {@code [row, row + 4)} in a single pass over {@code that}: each activation vector is loaded once for the 4 rows.
+     */
+    private static void vectorDot4Rows(BF16FloatTensor thiz, int row, ArrayFloatTensor that, FloatTensor out, int dim1) {
+        long offset0 = (long) row * dim1 * GGMLType.BFLOAT16_BYTES;
+        long offset1 = offset0 + (long) dim1 * GGMLType.BFLOAT16_BYTES;
+        long offset2 = offset1 + (long) dim1 * GGMLType.BFLOAT16_BYTES;
+        long offset3 = offset2 + (long) dim1 * GGMLType.BFLOAT16_BYTES;
+
+        FloatVector acc0 = FloatVector.zero(F_SPECIES);
+        FloatVector acc1 = FloatVector.zero(F_SPECIES);
+        FloatVector acc2 = FloatVector.zero(F_SPECIES);
+        FloatVector acc3 = FloatVector.zero(F_SPECIES);
+        int upperBound = F_SPECIES.loopBound(dim1);
+        for (int j = 0; j < upperBound; j += F_SPECIES.length()) {
+            FloatVector x = that.getFloatVector(F_SPECIES, j);
+            long byteOffset = (long) j * GGMLType.BFLOAT16_BYTES;
+            acc0 = bfloat16ToFloat(ShortVector.fromMemorySegment(S_SPECIES_HALF, thiz.memorySegment, offset0 + byteOffset, ByteOrder.LITTLE_ENDIAN)).fma(x, acc0);
+            acc1 = bfloat16ToFloat(ShortVector.fromMemorySegment(S_SPECIES_HALF, thiz.memorySegment, offset1 + byteOffset, ByteOrder.LITTLE_ENDIAN)).fma(x, acc1);
+            acc2 = bfloat16ToFloat(ShortVector.fromMemorySegment(S_SPECIES_HALF, thiz.memorySegment, offset2 + byteOffset, ByteOrder.LITTLE_ENDIAN)).fma(x, acc2);
+            acc3 = bfloat16ToFloat(ShortVector.fromMemorySegment(S_SPECIES_HALF, thiz.memorySegment, offset3 + byteOffset, ByteOrder.LITTLE_ENDIAN)).fma(x, acc3);
+        }
+        float result0 = acc0.reduceLanes(VectorOperators.ADD);
+        float result1 = acc1.reduceLanes(VectorOperators.ADD);
+        float result2 = acc2.reduceLanes(VectorOperators.ADD);
+        float result3 = acc3.reduceLanes(VectorOperators.ADD);
+        // Remaining entries.
+        if (upperBound < dim1) {
+            int size = dim1 - upperBound;
+            result0 += scalarDot(thiz, row * dim1 + upperBound, that, upperBound, size);
+            result1 += scalarDot(thiz, (row + 1) * dim1 + upperBound, that, upperBound, size);
+            result2 += scalarDot(thiz, (row + 2) * dim1 + upperBound, that, upperBound, size);
+            result3 += scalarDot(thiz, (row + 3) * dim1 + upperBound, that, upperBound, size);
+        }
+        out.setFloat(row, result0);
+        out.setFloat(row + 1, result1);
+        out.setFloat(row + 2, result2);
+        out.setFloat(row + 3, result3);
+    }
+}
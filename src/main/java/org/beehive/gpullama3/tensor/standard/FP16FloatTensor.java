@@ -67,37 +67,7 @@ public final class FP16FloatTensor extends FloatTensor {
             FloatVector thatVector = that.getFloatVector(F_SPECIES, thatOffset + i);
             ShortVector bits16 = ShortVector.fromMemorySegment(S_SPECIES_HALF, thiz.memorySegment, (thisOffset + i) * (long) GGMLType.FLOAT16_BYTES, ByteOrder.LITTLE_ENDIAN);
 
-            var bits32 = bits16.castShape(I_SPECIES, 0).reinterpretAsInts(); // (int) bits16
-            // Does not support infinities nor NaNs, preserves sign, emulate DAZ (denormals-are-zero).
-            // Expects well-formed float16 values only (e.g. model weights).
-            // Fast Float16 to Float32 Conversion:
-            //
-            // ┌─[15]─┬─[14]───···───[10]─┬─[9]────····────[0]─┐
-            // │ Sign │ Exponent (5 bits) │ Mantissa (10 bits) │ Float16 Layout (16 bits)
-            // └──────┴───────────────────┴────────────────────┘
-            //    │             │                    │
-            //    ▼             ▼                    ▼
-            // ┌─[31]─┬─[30]───···───[23]─┬─[22]────···────[0]─┐
-            // │ Sign │ Exponent (8 bits) │ Mantissa (23 bits) │ Float32 Layout (32 bits)
-            // └──────┴───────────────────┴────────────────────┘
-            //
-            // Shifts and adjustments:
-            // - Sign:       float16[15] -> float32[31] (shift 16 bits up)
-            // - Exponent:   float16[10-14] -> float32[23-30] (+ bias adjustment)
-            // - Mantissa:   float16[0-9] -> float32[13-22] (shift 13 bits up)
-            //
-            // exp = bits32 & 0x7C00
-            // zeroExponentMask = exp == 0 ? 0 : ~0
-            var zeroExponentMask = bits32.and(0x7C00).neg().lanewise(VectorOperators.ASHR, 31); // = (-exp) >> 31
-            bits32 = bits32.and(0x8000).lanewise(VectorOperators.LSHL, 16) // sign
-                    .or(
-                            // exponent and mantissa combined
-                            bits32.and(0x7FFF).add(0x1C000).lanewise(VectorOperators.LSHL, 13)
-                                    .and(zeroExponentMask) // -0, +0 and DAZ (denormals-are-zero)
-
-                    );
-
-            FloatVector thizVector = bits32.reinterpretAsFloats(); // Float.intBitsToFloat(vi)
+            FloatVector thizVector = float16ToFloat(bits16);
             val = thizVector.fma(thatVector, val);
         }
         float result = val.reduceLanes(VectorOperators.ADD);
@@ -108,4 +78,37 @@ public final class FP16FloatTensor extends FloatTensor {
 
         return result;
     }
-}
\ No newline at end of file
+
+    private static FloatVector float16ToFloat(ShortVector bits16) {
+        var bits32 = bits16.castShape(I_SPECIES, 0).reinterpretAsInts(); // (int) bits16
+        // Does not support infinities nor NaNs, preserves sign, emulate DAZ (denormals-are-zero).
+        // Expects well-formed float16 values only (e.g. model weights).
+        // Fast Float16 to Float32 Conversion:
+        //
+        // ┌─[15]─┬─[14]───···───[10]─┬─[9]────····────[0]─┐
+        // │ Sign │ Exponent (5 bits) │ Mantissa (10 bits) │ Float16 Layout (16 bits)
+        // └──────┴───────────────────┴────────────────────┘
+        //    │             │                    │
+        //    ▼             ▼                    ▼
+        // ┌─[31]─┬─[30]───···───[23]─┬─[22]────···────[0]─┐
+        // │ Sign │ Exponent (8 bits) │ Mantissa (23 bits) │ Float32 Layout (32 bits)
+        // └──────┴───────────────────┴────────────────────┘
+        //
+        // Shifts and adjustments:
+        // - Sign:       float16[15] -> float32[31] (shift 16 bits up)
+        // - Exponent:   float16[10-14] -> float32[23-30] (+ bias adjustment)
+        // - Mantissa:   float16[0-9] -> float32[13-22] (shift 13 bits up)
+        //
+        // exp = bits32 & 0x7C00
+        // zeroExponentMask = exp == 0 ? 0 : ~0
+        var zeroExponentMask = bits32.and(0x7C00).neg().lanewise(VectorOperators.ASHR, 31); // = (-exp) >> 31
+        bits32 = bits32.and(0x8000).lanewise(VectorOperators.LSHL, 16) // sign
+                .or(
+                        // exponent and mantissa combined
+                        bits32.and(0x7FFF).add(0x1C000).lanewise(VectorOperators.LSHL, 13)
+                                .and(zeroExponentMask) // -0, +0 and DAZ (denormals-are-zero)
+
+                );
+        return bits32.reinterpretAsFloats(); // Float.intBitsToFloat(vi)
+    }
+}
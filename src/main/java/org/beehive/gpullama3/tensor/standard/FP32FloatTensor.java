@@ -6,6 +6,7 @@ import jdk.incubator.vector.VectorSpecies;
 
 import java.lang.foreign.MemorySegment;
 import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
 
 public final class FP32FloatTensor extends FloatTensor {
     final int size;
@@ -43,6 +44,9 @@ public final class FP32FloatTensor extends FloatTensor {
 
     @Override
     protected FloatVector getFloatVector(VectorSpecies<Float> species, int offset) {
-        throw new UnsupportedOperationException("getFloatVector is not yet implemented.");
+        if (!USE_VECTOR_API) {
+            throw new UnsupportedOperationException();
+        }
+        return FloatVector.fromMemorySegment(species, segment, offset * (long) Float.BYTES, ByteOrder.nativeOrder());
     }
 }
@@ -95,18 +95,45 @@ public abstract class FloatTensor {
         return scalarDot(this, thisOffset, that, thatOffset, size);
     }
 
+    // Number of output rows computed together by matmulRows, sharing the loads of the activation vector.
+    public static final int MATMUL_ROW_BLOCK = 4;
+
     public void matmul(FloatTensor that, FloatTensor out, int dim0, int dim1) {
-        Parallel.parallelFor(0, dim0, i -> out.setFloat(i, dot(i * dim1, that, 0, dim1)));
+        // Each thread gets a contiguous range of row blocks
+        int rowBlocks = (dim0 + MATMUL_ROW_BLOCK - 1) / MATMUL_ROW_BLOCK;
+        Parallel.parallelForRange(0, rowBlocks, (fromBlock, toBlock) -> matmulRows(that, out, dim1, fromBlock * MATMUL_ROW_BLOCK, Math.min(dim0, toBlock * MATMUL_ROW_BLOCK)));
+    }
+
+    /**
+     * Computes rows {@code [fromRow, toRow)} of the matrix-vector product, {@code out[i] = dot(row i, that)}.
+     * <p>
+     * BF16 overrides this with a register-blocked kernel that computes several rows per pass.
+     * Building block for matmul and for fused multi-matrix kernels, ranges should start at a multiple of {@link #MATMUL_ROW_BLOCK}.
+     */
+    public void matmulRows(FloatTensor that, FloatTensor out, int dim1, int fromRow, int toRow) {
+        for (int i = fromRow; i < toRow; i++) {
+            out.setFloat(i, dot(i * dim1, that, 0, dim1));
+        }
     }
 
-   public void matmul(int context, FloatTensor[] that, FloatTensor[] out, int dim0, int dim1) {
+    /**
+     * Matrix-matrix product for a batch of {@code context} activations, e.g. prompt tokens during prefill.
+     * <p>
+     * Rows are the outer (parallel) dimension: each weight row is streamed from memory once and then reused,
+     * from cache, for every activation in the batch, instead of re-reading the whole matrix once per activation.
+     */
+    public void matmul(int context, FloatTensor[] that, FloatTensor[] out, int dim0, int dim1) {
         if (that.length != out.length) {
             throw new IllegalArgumentException(String.format("that.len=%d, out.len=%d", that.length, out.length));
         }
-        Parallel.parallelForLong(0, dim0 * context, ti -> {
-            int idxArr = (int) (ti / dim0);
-            int i = (int) (ti % dim0);
-            out[idxArr].setFloat(i, dot(i * dim1, that[idxArr], 0, dim1));
+        if (context > that.length) {
+            throw new IllegalArgumentException(String.format("context=%d, that.len=%d", context, that.length));
+        }
+        Parallel.parallelFor(0, dim0, i -> {
+            int rowOffset = i * dim1;
+            for (int b = 0; b < context; b++) {
+                out[b].setFloat(i, dot(rowOffset, that[b], 0, dim1));
+            }
         });
     }
 
@@ -192,7 +219,7 @@ public abstract class FloatTensor {
         return addInPlace(0, that, 0, size());
     }
 
-    FloatTensor multiplyInPlace(int thisOffset, FloatTensor that, int thatOffset, int size) {
+    public FloatTensor multiplyInPlace(int thisOffset, FloatTensor that, int thatOffset, int size) {
         return mapWithIndexInPlace(thisOffset, size, (value, index) -> value * that.getFloat(index - thisOffset + thatOffset));
     }
 
@@ -200,6 +227,10 @@ public abstract class FloatTensor {
         return multiplyInPlace(0, that, 0, size());
     }
 
+    public FloatTensor scaleInPlace(int thisOffset, int size, float value) {
+        return mapInPlace(thisOffset, size, f -> f * value);
+    }
+
     public FloatTensor divideInPlace(int thisOffset, int size, float value) {
         return mapInPlace(thisOffset, size, f -> f / value);
     }
@@ -208,6 +239,15 @@ public abstract class FloatTensor {
         return mapInPlace(thisOffset, size, unused -> value);
     }
 
+    public FloatTensor siluInPlace(int thisOffset, int size) {
+        // silu(x)=x*σ(x), where σ(x) is the logistic sigmoid
+        return mapInPlace(thisOffset, size, value -> value / (float) (1.0 + Math.exp(-value)));
+    }
+
+    public FloatTensor siluInPlace() {
+        return siluInPlace(0, size());
+    }
+
     public FloatTensor softmaxInPlace(int thisOffset, int size) {
         // find max value (for numerical stability)
         float maxVal = max(thisOffset, size);
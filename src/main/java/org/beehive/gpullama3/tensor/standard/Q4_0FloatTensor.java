@@ -9,6 +9,7 @@ import jdk.incubator.vector.VectorOperators;
 import jdk.incubator.vector.VectorSpecies;
 
 import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
 import java.nio.ByteOrder;
 
 /**
@@ -28,6 +29,37 @@ public final class Q4_0FloatTensor extends FloatTensor {
         this.memorySegment = memorySegment;
     }
 
+    /**
+     * Quantizes {@code size} floats from {@code src} into Q4_0 blocks written at {@code dstOffset} (in bytes) of {@code dst}.
+     * Same rounding as llama.cpp {@code quantize_row_q4_0}: the value of largest magnitude {@code max} maps to -8,
+     * {@code d = max / -8}, {@code q = min(15, (int) (x / d + 8.5))}.
+     * {@code size} must be a multiple of the block size.
+     */
+    public static void quantize(FloatTensor src, int srcOffset, MemorySegment dst, long dstOffset, int size) {
+        final int blockSize = GGMLType.Q4_0.getBlockSize();
+        final int halfBlock = blockSize / 2;
+        assert size % blockSize == 0;
+        for (int j = 0; j < size; j += blockSize, dstOffset += GGMLType.Q4_0.getTypeSize()) {
+            float amax = 0f;
+            float max = 0f;
+            for (int k = 0; k < blockSize; k++) {
+                float value = src.getFloat(srcOffset + j + k);
+                if (Math.abs(value) > amax) {
+                    amax = Math.abs(value);
+                    max = value;
+                }
+            }
+            float d = max / -8f;
+            float id = d != 0f ? 1f / d : 0f;
+            dst.set(Q8_0FloatTensor.JAVA_SHORT_LE_UNALIGNED, dstOffset, Float.floatToFloat16(d));
+            for (int k = 0; k < halfBlock; k++) {
+                int lo = Math.min(15, (int) (src.getFloat(srcOffset + j + k) * id + 8.5f));
+                int hi = Math.min(15, (int) (src.getFloat(srcOffset + j + halfBlock + k) * id + 8.5f));
+                dst.set(ValueLayout.JAVA_BYTE, dstOffset + Float16.BYTES + k, (byte) (lo | (hi << 4)));
+            }
+        }
+    }
+
     @Override
     public int size() {
         return size;
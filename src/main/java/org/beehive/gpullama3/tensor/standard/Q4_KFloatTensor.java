@@ -0,0 +1,176 @@
+package org.beehive.gpullama3.tensor.standard;
+
+import org.beehive.gpullama3.LlamaApp;
+import org.beehive.gpullama3.tensor.GGMLType;
+import org.beehive.gpullama3.tensor.Float16;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+/**
+ * {@link FloatTensor} quantized in the {@link GGMLType#Q4_K} format.
+ * <p>
+ * A super-block of {@link GGMLType#QK_K} values is stored as a float16 scale {@code d}, a float16 minimum {@code dmin},
+ * 12 bytes packing the 6-bit scale and minimum of each of the 8 sub-blocks of 32 values, and 128 bytes of 4-bit quants.
+ * Every 32 quant bytes hold two sub-blocks: the low nibbles the first one, the high nibbles the second one. A value is
+ * {@code d * scale * q - dmin * min}.
+ * <p>
+ * This tensor implementation is not compatible with {@link FloatTensor}, but
+ * {@link #dot(int, FloatTensor, int, int)} has a vectorized implementation that is used when
+ * the second argument is an {@link ArrayFloatTensor}.
+ */
+public final class Q4_KFloatTensor extends FloatTensor {
+
+    static final int SCALES_OFFSET = 2 * Float16.BYTES;
+    static final int QS_OFFSET = SCALES_OFFSET + 12;
+
+    final int size;
+    final MemorySegment memorySegment;
+
+    public Q4_KFloatTensor(int size, MemorySegment memorySegment) {
+        this.size = size;
+        this.memorySegment = memorySegment;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void setFloat(int index, float value) {
+        throw new UnsupportedOperationException("setFloat");
+    }
+
+    @Override
+    protected FloatVector getFloatVector(VectorSpecies<Float> species, int index) {
+        throw new UnsupportedOperationException("getFloatVector");
+    }
+
+    @Override
+    public GGMLType type() {
+        return GGMLType.Q4_K;
+    }
+
+    @Override
+    public MemorySegment asMemorySegment() {
+        return memorySegment;
+    }
+
+    /**
+     * 6-bit scale of sub-block {@code j} (0 to 7), from the 12 packed scale bytes starting at {@code scalesOffset}.
+     * Shared with {@link Q5_KFloatTensor}, which packs its scales the same way.
+     */
+    static int scale(MemorySegment memorySegment, long scalesOffset, int j) {
+        if (j < 4) {
+            return readByte(memorySegment, scalesOffset + j) & 63;
+        }
+        return (readByte(memorySegment, scalesOffset + j + 4) & 0xF) | ((readByte(memorySegment, scalesOffset + j - 4) & 0xFF) >>> 6 << 4);
+    }
+
+    /**
+     * 6-bit minimum of sub-block {@code j} (0 to 7), see {@link #scale}.
+     */
+    static int min(MemorySegment memorySegment, long scalesOffset, int j) {
+        if (j < 4) {
+            return readByte(memorySegment, scalesOffset + j + 4) & 63;
+        }
+        return ((readByte(memorySegment, scalesOffset + j + 4) & 0xFF) >>> 4) | ((readByte(memorySegment, scalesOffset + j) & 0xFF) >>> 6 << 4);
+    }
+
+    @Override
+    public float getFloat(int index) {
+        assert 0 <= index && index < size;
+        int blockIndex = index / GGMLType.Q4_K.getBlockSize();
+        long blockOffset = (long) blockIndex * GGMLType.Q4_K.getTypeSize();
+        int modIndex = index % GGMLType.Q4_K.getBlockSize();
+        int chunk = modIndex / 64; // 64 values (two sub-blocks) per 32 quant bytes
+        int inChunk = modIndex % 64;
+        int subBlock = 2 * chunk + inChunk / 32;
+        byte quants = readByte(memorySegment, blockOffset + QS_OFFSET + chunk * 32 + inChunk % 32);
+        int quant = inChunk < 32 ? quants & 0xF : (quants >>> 4) & 0xF;
+        float d = Float.float16ToFloat(readShort(memorySegment, blockOffset));
+        float dmin = Float.float16ToFloat(readShort(memorySegment, blockOffset + Float16.BYTES));
+        long scalesOffset = blockOffset + SCALES_OFFSET;
+        return d * scale(memorySegment, scalesOffset, subBlock) * quant - dmin * min(memorySegment, scalesOffset, subBlock);
+    }
+
+    @Override
+    public float dot(int thisOffset, FloatTensor that, int thatOffset, int size) {
+        if (LlamaApp.USE_VECTOR_API && that instanceof ArrayFloatTensor thatArray && F_SPECIES.length() <= 16) {
+            return vectorDot(this, thisOffset, thatArray, thatOffset, size);
+        } else {
+            return FloatTensor.scalarDot(this, thisOffset, that, thatOffset, size);
+        }
+    }
+
+    private static float vectorDot(Q4_KFloatTensor thiz, int thisOffset, ArrayFloatTensor that, int thatOffset, int size) {
+        final int blockSize = GGMLType.Q4_K.getBlockSize();
+        final int typeSize = GGMLType.Q4_K.getTypeSize();
+        float result = 0f;
+        int j = 0;
+
+        // Align thisOffset + j to the super-block size.
+        int alignmentBound = Math.min(size, -thisOffset & (blockSize - 1));
+        if (alignmentBound > 0) {
+            result += FloatTensor.scalarDot(thiz, thisOffset, that, thatOffset, alignmentBound);
+            j += alignmentBound;
+        }
+        assert (thisOffset + j) % blockSize == 0;
+
+        var B_SPECIES = ByteVector.SPECIES_128;
+        // 16 quants widen into (16 / F_SPECIES.length()) float vectors.
+        final int parts = B_SPECIES.length() / F_SPECIES.length();
+        FloatVector val = FloatVector.zero(F_SPECIES);
+        long blockOffset = (long) (thisOffset + j) / blockSize * typeSize;
+        int upperBound = j + (size - j) / blockSize * blockSize;
+        for (; j < upperBound; j += blockSize, blockOffset += typeSize) {
+            float d = Float.float16ToFloat(readShort(thiz.memorySegment, blockOffset));
+            float dmin = Float.float16ToFloat(readShort(thiz.memorySegment, blockOffset + Float16.BYTES));
+            long scalesOffset = blockOffset + SCALES_OFFSET;
+            for (int chunk = 0; chunk < 4; chunk++) {
+                long qsOffset = blockOffset + QS_OFFSET + chunk * 32;
+                var w0 = ByteVector.fromMemorySegment(B_SPECIES, thiz.memorySegment, qsOffset, ByteOrder.LITTLE_ENDIAN);
+                var w1 = ByteVector.fromMemorySegment(B_SPECIES, thiz.memorySegment, qsOffset + 16, ByteOrder.LITTLE_ENDIAN);
+                var lo0 = w0.and((byte) 0xF);
+                var lo1 = w1.and((byte) 0xF);
+                var hi0 = w0.lanewise(VectorOperators.LSHR, 4);
+                var hi1 = w1.lanewise(VectorOperators.LSHR, 4);
+
+                int x = thatOffset + j + chunk * 64;
+                FloatVector sumLo = FloatVector.zero(F_SPECIES);
+                FloatVector sumHi = FloatVector.zero(F_SPECIES);
+                FloatVector xSumLo = FloatVector.zero(F_SPECIES);
+                FloatVector xSumHi = FloatVector.zero(F_SPECIES);
+                for (int p = 0; p < parts; p++) {
+                    int k = p * F_SPECIES.length();
+                    var x0 = that.getFloatVector(F_SPECIES, x + k);
+                    var x1 = that.getFloatVector(F_SPECIES, x + 16 + k);
+                    var x2 = that.getFloatVector(F_SPECIES, x + 32 + k);
+                    var x3 = that.getFloatVector(F_SPECIES, x + 48 + k);
+                    sumLo = x1.fma(lo1.castShape(F_SPECIES, p), x0.fma(lo0.castShape(F_SPECIES, p), sumLo));
+                    sumHi = x3.fma(hi1.castShape(F_SPECIES, p), x2.fma(hi0.castShape(F_SPECIES, p), sumHi));
+                    xSumLo = xSumLo.add(x0).add(x1);
+                    xSumHi = xSumHi.add(x2).add(x3);
+                }
+                int subBlock = 2 * chunk;
+                val = sumLo.fma(FloatVector.broadcast(F_SPECIES, d * scale(thiz.memorySegment, scalesOffset, subBlock)), val);
+                val = xSumLo.fma(FloatVector.broadcast(F_SPECIES, -dmin * min(thiz.memorySegment, scalesOffset, subBlock)), val);
+                val = sumHi.fma(FloatVector.broadcast(F_SPECIES, d * scale(thiz.memorySegment, scalesOffset, subBlock + 1)), val);
+                val = xSumHi.fma(FloatVector.broadcast(F_SPECIES, -dmin * min(thiz.memorySegment, scalesOffset, subBlock + 1)), val);
+            }
+        }
+        result += val.reduceLanes(VectorOperators.ADD);
+
+        // Remaining entries.
+        if (j < size) {
+            result += FloatTensor.scalarDot(thiz, thisOffset + j, that, thatOffset + j, size - j);
+        }
+
+        return result;
+    }
+}
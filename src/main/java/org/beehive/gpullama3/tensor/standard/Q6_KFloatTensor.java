@@ -0,0 +1,144 @@
+package org.beehive.gpullama3.tensor.standard;
+
+import org.beehive.gpullama3.LlamaApp;
+import org.beehive.gpullama3.tensor.GGMLType;
+import org.beehive.gpullama3.tensor.Float16;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+/**
+ * {@link FloatTensor} quantized in the {@link GGMLType#Q6_K} format.
+ * <p>
+ * A super-block of {@link GGMLType#QK_K} values is stored as 128 bytes with the low 4 bits of the quants, 64 bytes with
+ * their high 2 bits, 16 signed 8-bit scales (one per 16 values) and a float16 scale {@code d}. Each half of 128 values
+ * uses 64 low-bit bytes and 32 high-bit bytes: value {@code l} of quarter {@code k} takes the low or high nibble
+ * ({@code k < 2} or not) of low-bit byte {@code (k % 2) * 32 + l} and bits {@code 2 * k} of high-bit byte {@code l}.
+ * A value is {@code d * scale * (q - 32)}.
+ * <p>
+ * This tensor implementation is not compatible with {@link FloatTensor}, but
+ * {@link #dot(int, FloatTensor, int, int)} has a vectorized implementation that is used when
+ * the second argument is an {@link ArrayFloatTensor}.
+ */
+public final class Q6_KFloatTensor extends FloatTensor {
+
+    static final int QH_OFFSET = GGMLType.QK_K / 2;
+    static final int SCALES_OFFSET = QH_OFFSET + GGMLType.QK_K / 4;
+    static final int D_OFFSET = SCALES_OFFSET + GGMLType.QK_K / 16;
+
+    final int size;
+    final MemorySegment memorySegment;
+
+    public Q6_KFloatTensor(int size, MemorySegment memorySegment) {
+        this.size = size;
+        this.memorySegment = memorySegment;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void setFloat(int index, float value) {
+        throw new UnsupportedOperationException("setFloat");
+    }
+
+    @Override
+    protected FloatVector getFloatVector(VectorSpecies<Float> species, int index) {
+        throw new UnsupportedOperationException("getFloatVector");
+    }
+
+    @Override
+    public GGMLType type() {
+        return GGMLType.Q6_K;
+    }
+
+    @Override
+    public MemorySegment asMemorySegment() {
+        return memorySegment;
+    }
+
+    @Override
+    public float getFloat(int index) {
+        assert 0 <= index && index < size;
+        int blockIndex = index / GGMLType.Q6_K.getBlockSize();
+        long blockOffset = (long) blockIndex * GGMLType.Q6_K.getTypeSize();
+        int modIndex = index % GGMLType.Q6_K.getBlockSize();
+        int half = modIndex / 128;
+        int quarter = (modIndex % 128) / 32;
+        int l = modIndex % 32;
+        byte lowBits = readByte(memorySegment, blockOffset + half * 64 + (quarter & 1) * 32 + l);
+        byte highBits = readByte(memorySegment, blockOffset + QH_OFFSET + half * 32 + l);
+        int quant = quarter < 2 ? lowBits & 0xF : (lowBits >>> 4) & 0xF;
+        quant |= ((highBits >>> (2 * quarter)) & 3) << 4;
+        byte scale = readByte(memorySegment, blockOffset + SCALES_OFFSET + half * 8 + 2 * quarter + l / 16);
+        float d = Float.float16ToFloat(readShort(memorySegment, blockOffset + D_OFFSET));
+        return d * scale * (quant - 32);
+    }
+
+    @Override
+    public float dot(int thisOffset, FloatTensor that, int thatOffset, int size) {
+        if (LlamaApp.USE_VECTOR_API && that instanceof ArrayFloatTensor thatArray && F_SPECIES.length() <= 16) {
+            return vectorDot(this, thisOffset, thatArray, thatOffset, size);
+        } else {
+            return FloatTensor.scalarDot(this, thisOffset, that, thatOffset, size);
+        }
+    }
+
+    private static float vectorDot(Q6_KFloatTensor thiz, int thisOffset, ArrayFloatTensor that, int thatOffset, int size) {
+        final int blockSize = GGMLType.Q6_K.getBlockSize();
+        final int typeSize = GGMLType.Q6_K.getTypeSize();
+        float result = 0f;
+        int j = 0;
+
+        // Align thisOffset + j to the super-block size.
+        int alignmentBound = Math.min(size, -thisOffset & (blockSize - 1));
+        if (alignmentBound > 0) {
+            result += FloatTensor.scalarDot(thiz, thisOffset, that, thatOffset, alignmentBound);
+            j += alignmentBound;
+        }
+        assert (thisOffset + j) % blockSize == 0;
+
+        var B_SPECIES = ByteVector.SPECIES_128;
+        // 16 quants, the values sharing a scale, widen into (16 / F_SPECIES.length()) float vectors.
+        final int parts = B_SPECIES.length() / F_SPECIES.length();
+        FloatVector val = FloatVector.zero(F_SPECIES);
+        long blockOffset = (long) (thisOffset + j) / blockSize * typeSize;
+        int upperBound = j + (size - j) / blockSize * blockSize;
+        for (; j < upperBound; j += blockSize, blockOffset += typeSize) {
+            float d = Float.float16ToFloat(readShort(thiz.memorySegment, blockOffset + D_OFFSET));
+            for (int half = 0; half < 2; half++) {
+                for (int group = 0; group < 2; group++) {
+                    // the high bits of the four quarters are packed in the same bytes
+                    var highBits = ByteVector.fromMemorySegment(B_SPECIES, thiz.memorySegment, blockOffset + QH_OFFSET + half * 32 + group * 16, ByteOrder.LITTLE_ENDIAN);
+                    for (int quarter = 0; quarter < 4; quarter++) {
+                        var lowBits = ByteVector.fromMemorySegment(B_SPECIES, thiz.memorySegment, blockOffset + half * 64 + (quarter & 1) * 32 + group * 16, ByteOrder.LITTLE_ENDIAN);
+                        var nibbles = quarter < 2 ? lowBits.and((byte) 0xF) : lowBits.lanewise(VectorOperators.LSHR, 4);
+                        var quants = nibbles.or(highBits.lanewise(VectorOperators.LSHR, 2 * quarter).and((byte) 3).lanewise(VectorOperators.LSHL, 4)).sub((byte) 32);
+
+                        int x = thatOffset + j + half * 128 + quarter * 32 + group * 16;
+                        FloatVector sum = FloatVector.zero(F_SPECIES);
+                        for (int p = 0; p < parts; p++) {
+                            sum = that.getFloatVector(F_SPECIES, x + p * F_SPECIES.length()).fma(quants.castShape(F_SPECIES, p), sum);
+                        }
+                        byte scale = readByte(thiz.memorySegment, blockOffset + SCALES_OFFSET + half * 8 + 2 * quarter + group);
+                        val = sum.fma(FloatVector.broadcast(F_SPECIES, d * scale), val);
+                    }
+                }
+            }
+        }
+        result += val.reduceLanes(VectorOperators.ADD);
+
+        // Remaining entries.
+        if (j < size) {
+            result += FloatTensor.scalarDot(thiz, thisOffset + j, that, thatOffset + j, size - j);
+        }
+
+        return result;
+    }
+}
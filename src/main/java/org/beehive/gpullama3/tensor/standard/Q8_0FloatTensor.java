@@ -22,6 +22,30 @@ public final class Q8_0FloatTensor extends FloatTensor {
         this.memorySegment = memorySegment;
     }
 
+    /**
+     * Quantizes {@code size} floats from {@code src} into Q8_0 blocks written at {@code dstOffset} (in bytes) of {@code dst}.
+     * Same rounding as llama.cpp {@code quantize_row_q8_0}: per-block scale {@code d = max|x| / 127}, {@code q = roundf(x / d)},
+     * with halves rounded away from zero.
+     * {@code size} must be a multiple of the block size.
+     */
+    public static void quantize(FloatTensor src, int srcOffset, MemorySegment dst, long dstOffset, int size) {
+        final int blockSize = GGMLType.Q8_0.getBlockSize();
+        assert size % blockSize == 0;
+        for (int j = 0; j < size; j += blockSize, dstOffset += GGMLType.Q8_0.getTypeSize()) {
+            float amax = 0f;
+            for (int k = 0; k < blockSize; k++) {
+                amax = Math.max(amax, Math.abs(src.getFloat(srcOffset + j + k)));
+            }
+            float d = amax / 127f;
+            float id = d != 0f ? 1f / d : 0f;
+            dst.set(JAVA_SHORT_LE_UNALIGNED, dstOffset, Float.floatToFloat16(d));
+            for (int k = 0; k < blockSize; k++) {
+                float x = src.getFloat(srcOffset + j + k) * id;
+                dst.set(ValueLayout.JAVA_BYTE, dstOffset + Float16.BYTES + k, (byte) (x < 0 ? -Math.round(-x) : Math.round(x)));
+            }
+        }
+    }
+
     @Override
     public int size() {
         return size;
@@ -64,6 +88,7 @@ public final class Q8_0FloatTensor extends FloatTensor {
 
 
     public static final ValueLayout.OfShort JAVA_SHORT_LE = ValueLayout.JAVA_SHORT.withOrder(ByteOrder.LITTLE_ENDIAN);
+    static final ValueLayout.OfShort JAVA_SHORT_LE_UNALIGNED = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
 
     @Override
     public float dot(int thisOffset, FloatTensor that, int thatOffset, int size) {
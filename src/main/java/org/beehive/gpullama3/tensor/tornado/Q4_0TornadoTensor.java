@@ -0,0 +1,38 @@
+package org.beehive.gpullama3.tensor.tornado;
+
+import org.beehive.gpullama3.tensor.GGMLType;
+import uk.ac.manchester.tornado.api.types.arrays.ByteArray;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * This class represents a quantized tensor in the {@link GGMLType#Q4_0} format.
+ * It is backed by a {@link ByteArray} containing both the quantized values and the scale factors.
+ * The underlying {@link ByteArray} contains N Q4_0 blocks, where N is the tensor size divided by 32.
+ * Each Q4_0 Block has the following layout:
+ * [Scale Factor (fp16) - 2 bytes] [Packed Values 0 and 16 (2 x uint4) - 1 byte] ... [Packed Values 15 and 31 (2 x uint4) - 1 byte]
+ * The low nibble of byte i holds value i and the high nibble holds value i + 16, both offset by 8.
+ */
+public class Q4_0TornadoTensor extends TornadoTensor {
+
+    private final ByteArray tornadoNativeArray; // Unified Q4_0 tensor in the memorySegment of the ByteArray
+
+    public Q4_0TornadoTensor(ByteArray byteArray) {
+        this.tornadoNativeArray = byteArray;
+    }
+
+    public static Q4_0TornadoTensor fromTornadoMemorySegment(MemorySegment segment) {
+        return new Q4_0TornadoTensor(ByteArray.fromSegmentShallow(segment));
+    }
+
+    @Override
+    public ByteArray asByteArray() {
+        return tornadoNativeArray;
+    }
+
+    @Override
+    public GGMLType type() {
+        return GGMLType.Q4_0;
+    }
+
+}
@@ -7,6 +7,7 @@ import org.beehive.gpullama3.tensor.GGMLType;
 import org.beehive.gpullama3.tornadovm.layerplanner.base.QuantizationPlannerFactory;
 import uk.ac.manchester.tornado.api.ImmutableTaskGraph;
 import uk.ac.manchester.tornado.api.TornadoExecutionPlan;
+import uk.ac.manchester.tornado.api.TornadoExecutionResult;
 import uk.ac.manchester.tornado.api.types.arrays.FloatArray;
 
 public class TornadoVMMasterPlan {
@@ -146,11 +147,20 @@ public class TornadoVMMasterPlan {
         state.tempLogits.clear(); // Clear the intermediate logits tensor -> set to 0f
         state.wrapLogits.clear(); // Clear the output logits tensor -> set to 0f
         // 3. Execute the final graph that projects the last hidden state to output logits
-        executionPlan.withGraph(getFinalLogitsGraphIndex())
+        TornadoExecutionResult logitsResult = executionPlan.withGraph(getFinalLogitsGraphIndex())
                 .withGridScheduler(tornadoVMLayerPlanner.getGridScheduler())
                 .execute();
 
         // @formatter:on
+        // Only the top-k came back if the logits were reduced on the device
+        if (state.wrapLogitsTopKTokens != null) {
+            if (state.logitsCandidates != null) {
+                state.logitsCandidates.load(state.wrapLogitsTopKValues, state.wrapLogitsTopKTokens);
+            } else {
+                // the sampler of this generation needs all the logits
+                logitsResult.transferToHost(state.wrapLogits);
+            }
+        }
         // Return the logits (used for token prediction)
         return state.wrapLogits;
     }
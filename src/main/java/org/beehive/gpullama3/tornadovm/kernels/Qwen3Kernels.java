@@ -566,6 +566,56 @@ public class Qwen3Kernels {
         }
     }
 
+    /**
+     * Fused RMSNorm apply + Q/K/V projection for Qwen3 GQA with Q4_0 quantized weights.
+     * Same row assignment as {@link #fusedRmsNormQKVMatmulQ8_0}, rows are computed with
+     * {@link TransformerComputeKernelsLayered#matrixVectorRowPartialRmsNormQ4_0Byte}.
+     */
+    public static void fusedRmsNormQKVMatmulQ4_0(
+            KernelContext context,
+            FloatArray x,               // raw input (FP32)
+            FloatArray q,               // output Q
+            FloatArray k,               // output K
+            FloatArray v,               // output V
+            FloatArray rmsWeights,      // RMS norm weights
+            FloatArray rmsScale,        // temp[0] = scale factor
+            ByteArray wq,               // Q weight matrix (Q4_0)
+            ByteArray wk,               // K weight matrix (Q4_0)
+            ByteArray wv,               // V weight matrix (Q4_0)
+            int inputDim,               // input dimension (config.dim())
+            int qDim,                   // Q output dimension
+            int kvDim,                  // KV output dimension
+            int localWorkGroupSize) {
+
+        int rowId = context.groupIdx;
+        int localId = context.localIdx;
+
+        float scale = rmsScale.get(0);
+        float[] localSums = context.allocateFloatLocalArray(localWorkGroupSize);
+
+        if (rowId < qDim) {
+            float partialSum = TransformerComputeKernelsLayered.matrixVectorRowPartialRmsNormQ4_0Byte(localId, localWorkGroupSize, x, rmsWeights, scale, wq, rowId, inputDim);
+            float sum = TransformerComputeKernelsLayered.reduceWorkGroupQ4_0(context, localSums, localWorkGroupSize, partialSum);
+            if (localId == 0) {
+                q.set(rowId, sum);
+            }
+        } else if (rowId < qDim + kvDim) {
+            int kRow = rowId - qDim;
+            float partialSum = TransformerComputeKernelsLayered.matrixVectorRowPartialRmsNormQ4_0Byte(localId, localWorkGroupSize, x, rmsWeights, scale, wk, kRow, inputDim);
+            float sum = TransformerComputeKernelsLayered.reduceWorkGroupQ4_0(context, localSums, localWorkGroupSize, partialSum);
+            if (localId == 0) {
+                k.set(kRow, sum);
+            }
+        } else if (rowId < qDim + 2 * kvDim) {
+            int vRow = rowId - qDim - kvDim;
+            float partialSum = TransformerComputeKernelsLayered.matrixVectorRowPartialRmsNormQ4_0Byte(localId, localWorkGroupSize, x, rmsWeights, scale, wv, vRow, inputDim);
+            float sum = TransformerComputeKernelsLayered.reduceWorkGroupQ4_0(context, localSums, localWorkGroupSize, partialSum);
+            if (localId == 0) {
+                v.set(vRow, sum);
+            }
+        }
+    }
+
     /**
      * Fused RMSNorm apply + Q/K/V projection for Qwen3 GQA with Q8_0 quantized weights.
      * Uses the same Q8_0 block structure as matrixVectorRowMajorOptimizedQ8_0Byte.
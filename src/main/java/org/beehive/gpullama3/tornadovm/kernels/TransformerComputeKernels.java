@@ -1,6 +1,7 @@
 package org.beehive.gpullama3.tornadovm.kernels;
 
 import uk.ac.manchester.tornado.api.KernelContext;
+import uk.ac.manchester.tornado.api.annotations.Parallel;
 import uk.ac.manchester.tornado.api.math.TornadoMath;
 import uk.ac.manchester.tornado.api.types.HalfFloat;
 import uk.ac.manchester.tornado.api.types.HalfFloat;
@@ -10,6 +11,7 @@ import uk.ac.manchester.tornado.api.types.arrays.FloatArray;
 import uk.ac.manchester.tornado.api.types.arrays.HalfFloatArray;
 
 import uk.ac.manchester.tornado.api.types.arrays.HalfFloatArray;
+import uk.ac.manchester.tornado.api.types.arrays.IntArray;
 
 public class TransformerComputeKernels {
 
@@ -83,6 +85,33 @@ public class TransformerComputeKernels {
         wrapX.set(globalId, dequantizedValue);
     }
 
+    public static void convertQ4_0toFP32(KernelContext context, ByteArray x, FloatArray wrapX) {
+        int globalId = context.globalIdx;
+        int totalElements = wrapX.getSize();
+
+        if (globalId >= totalElements) {
+            return;
+        }
+
+        // Q4_0 block structure constants
+        int blockSize = 32;
+        int Q4_0_BLOCK_BYTES = 18; // 2 bytes scale + 16 bytes quants
+
+        // Calculate which block and position within block
+        int blockIdx = globalId / blockSize;
+        int withinBlockIdx = globalId % blockSize;
+        int blockByteOffset = blockIdx * Q4_0_BLOCK_BYTES;
+
+        HalfFloat scale = x.getHalfFloat(blockByteOffset);
+        float scaleFloat = scale.getFloat32();
+
+        // Values 0-15 are in the low nibbles of the 16 quant bytes, values 16-31 in the high nibbles
+        int quants = x.get(blockByteOffset + 2 + (withinBlockIdx % 16)) & 0xFF;
+        int quantValue = (withinBlockIdx < 16 ? quants & 0x0F : quants >> 4) - 8;
+
+        wrapX.set(globalId, ((float) quantValue) * scaleFloat);
+    }
+
     public static void convertFP32toFP16(KernelContext context,  FloatArray wrapX, HalfFloatArray x) {
         int i = context.globalIdx;
         float valInput = wrapX.get(i);
@@ -173,4 +202,117 @@ public class TransformerComputeKernels {
         output.set(gid, new HalfFloat(interim));
     }
 
+    /**
+     * First level of the device top-k: each thread scans one contiguous block of the logits and keeps its {@code k} largest
+     * in its own slice of {@code values}/{@code tokens}, sorted in descending order (ties: lower token first, as argmax).
+     * Slots a block cannot fill are padded with token {@code -1}.
+     * Plain Java loops, running the levels in order on the host gives the candidates of {@code Sampler.TENSOR_ARGMAX}.
+     *
+     * @param logits Logits of the whole vocabulary
+     * @param size Vocabulary size
+     * @param values Output logits, {@code k} per block, the number of blocks is {@code tokens.getSize() / k}
+     * @param tokens Output tokens, same layout
+     * @param k Number of candidates
+     */
+    public static void logitsTopK(FloatArray logits, int size, FloatArray values, IntArray tokens, int k) {
+        int blocks = tokens.getSize() / k;
+        int blockSize = (size + blocks - 1) / blocks;
+        for (@Parallel int b = 0; b < blocks; b++) {
+            int base = b * k;
+            int end = Math.min(size, (b + 1) * blockSize);
+            int count = 0;
+            for (int i = b * blockSize; i < end; i++) {
+                count = insertTopK(values, tokens, base, count, k, logits.get(i), i);
+            }
+            for (int i = count; i < k; i++) {
+                values.set(base + i, Float.NEGATIVE_INFINITY);
+                tokens.set(base + i, -1);
+            }
+        }
+    }
+
+    /**
+     * Next levels of the device top-k: the sorted candidate lists of the previous level are merged in groups of consecutive
+     * lists, one output list of {@code k} candidates per group, until a single list is left.
+     * <p>
+     * One thread per input candidate: its rank in the merged group is its position in its own list plus the number of
+     * candidates ahead of it in each other list of the group (binary search, ties go to the earlier list), and it is written
+     * to that slot if the rank is below {@code k}. The ranks of a group are distinct, so every output slot is written once.
+     *
+     * @param inValues Candidate logits of the previous level, {@code k} per list
+     * @param inTokens Candidate tokens of the previous level, {@code -1} for padding
+     * @param values Output logits, {@code k} per merged list, the number of lists is {@code tokens.getSize() / k}
+     * @param tokens Output tokens, same layout
+     * @param k Number of candidates
+     */
+    public static void mergeTopK(FloatArray inValues, IntArray inTokens, FloatArray values, IntArray tokens, int k) {
+        int inLists = inTokens.getSize() / k;
+        int lists = tokens.getSize() / k;
+        int listsPerGroup = (inLists + lists - 1) / lists;
+        for (@Parallel int i = 0; i < inLists * k; i++) {
+            int list = i / k;
+            int group = list / listsPerGroup;
+            float value = inValues.get(i);
+            int token = inTokens.get(i);
+            int rank = i - list * k;
+            int endList = Math.min(inLists, (group + 1) * listsPerGroup);
+            for (int other = group * listsPerGroup; other < endList && rank < k; other++) {
+                if (other != list) {
+                    int low = other * k;
+                    int high = low + k;
+                    while (low < high) {
+                        int mid = (low + high) >>> 1;
+                        boolean ahead = other < list ? !isAheadTopK(value, token, inValues.get(mid), inTokens.get(mid)) : isAheadTopK(inValues.get(mid), inTokens.get(mid), value, token);
+                        if (ahead) {
+                            low = mid + 1;
+                        } else {
+                            high = mid;
+                        }
+                    }
+                    rank += low - other * k;
+                }
+            }
+            if (rank < k) {
+                values.set(group * k + rank, value);
+                tokens.set(group * k + rank, token);
+            }
+        }
+    }
+
+    /**
+     * Candidate order of the device top-k: larger logit first, on ties the lower token first (as argmax), padding last.
+     */
+    private static boolean isAheadTopK(float value, int token, float otherValue, int otherToken) {
+        if (value != otherValue) {
+            return value > otherValue;
+        }
+        return otherToken < 0 ? token >= 0 : token >= 0 && token < otherToken;
+    }
+
+    /**
+     * Inserts a candidate into the sorted list at {@code base} holding {@code count} candidates, dropping the smallest one if
+     * the list is full, and returns the new count.
+     */
+    private static int insertTopK(FloatArray values, IntArray tokens, int base, int count, int k, float value, int token) {
+        if (count == k) {
+            float last = values.get(base + k - 1);
+            if (value < last || (value == last && token > tokens.get(base + k - 1))) {
+                return count;
+            }
+        }
+        int i = count < k ? count : k - 1;
+        while (i > 0) {
+            float previous = values.get(base + i - 1);
+            if (value < previous || (value == previous && token > tokens.get(base + i - 1))) {
+                break;
+            }
+            values.set(base + i, previous);
+            tokens.set(base + i, tokens.get(base + i - 1));
+            i--;
+        }
+        values.set(base + i, value);
+        tokens.set(base + i, token);
+        return count < k ? count + 1 : count;
+    }
+
 }
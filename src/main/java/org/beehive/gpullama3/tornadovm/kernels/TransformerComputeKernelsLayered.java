@@ -2849,4 +2849,238 @@ public class TransformerComputeKernelsLayered {
             output.set(rowId, silu * upResult);
         }
     }
+
+    // ============ Q4_0 ============
+    //
+    // Q4_0 block: [scale (fp16) - 2 bytes] [16 bytes of 4-bit quants]. Quant byte i of a block holds value i in its
+    // low nibble and value i + 16 in its high nibble, both stored with an offset of 8. Rows must be a multiple of
+    // the block size (32), which GGUF guarantees for Q4_0 tensors.
+
+    /**
+     * This thread's share of the dot product of Q4_0 row {@code row} with {@code x}, not yet reduced across the workgroup.
+     * Each step covers 4 consecutive quant bytes, that is 8 values of a block.
+     */
+    public static float matrixVectorRowPartialQ4_0Byte(int localId, int localSize, FloatArray x, ByteArray w, int row, int n) {
+        final int blockSize = 32;
+        final int Q4_0_BLOCK_BYTES = 18; // 2 bytes scale + 16 bytes quants
+        int rowByteOffset = row * (n / blockSize) * Q4_0_BLOCK_BYTES;
+
+        float partialSum = 0.0f;
+        for (int i = localId * 4; i < n / 2; i += localSize * 4) {
+            int blockIdx = i / 16;
+            int withinBlockIdx = i % 16;
+            int blockByteOffset = rowByteOffset + blockIdx * Q4_0_BLOCK_BYTES;
+
+            HalfFloat scale = w.getHalfFloat(blockByteOffset);
+            float scaleFloat = scale.getFloat32();
+
+            int quantsOffset = blockByteOffset + 2 + withinBlockIdx;
+            int j = blockIdx * blockSize + withinBlockIdx;
+            float blockSum = 0.0f;
+            for (int b = 0; b < 4; b++) {
+                int quants = w.get(quantsOffset + b) & 0xFF;
+                blockSum += (float) ((quants & 0x0F) - 8) * x.get(j + b);
+                blockSum += (float) ((quants >> 4) - 8) * x.get(j + b + 16);
+            }
+            partialSum += blockSum * scaleFloat;
+        }
+        return partialSum;
+    }
+
+    /**
+     * Same as {@link #matrixVectorRowPartialQ4_0Byte} with RMS normalization applied inline to {@code x}: {@code rmsWeights[j] * scale * x[j]}.
+     */
+    public static float matrixVectorRowPartialRmsNormQ4_0Byte(int localId, int localSize, FloatArray x, FloatArray rmsWeights, float scale, ByteArray w, int row, int n) {
+        final int blockSize = 32;
+        final int Q4_0_BLOCK_BYTES = 18; // 2 bytes scale + 16 bytes quants
+        int rowByteOffset = row * (n / blockSize) * Q4_0_BLOCK_BYTES;
+
+        float partialSum = 0.0f;
+        for (int i = localId * 4; i < n / 2; i += localSize * 4) {
+            int blockIdx = i / 16;
+            int withinBlockIdx = i % 16;
+            int blockByteOffset = rowByteOffset + blockIdx * Q4_0_BLOCK_BYTES;
+
+            HalfFloat blockScale = w.getHalfFloat(blockByteOffset);
+            float scaleFloat = blockScale.getFloat32();
+
+            int quantsOffset = blockByteOffset + 2 + withinBlockIdx;
+            int j = blockIdx * blockSize + withinBlockIdx;
+            float blockSum = 0.0f;
+            for (int b = 0; b < 4; b++) {
+                int quants = w.get(quantsOffset + b) & 0xFF;
+                float normLo = rmsWeights.get(j + b) * scale * x.get(j + b);
+                float normHi = rmsWeights.get(j + b + 16) * scale * x.get(j + b + 16);
+                blockSum += (float) ((quants & 0x0F) - 8) * normLo;
+                blockSum += (float) ((quants >> 4) - 8) * normHi;
+            }
+            partialSum += blockSum * scaleFloat;
+        }
+        return partialSum;
+    }
+
+    /**
+     * Sums {@code partialSum} across the workgroup, the result is returned to every thread.
+     */
+    public static float reduceWorkGroupQ4_0(KernelContext context, float[] localSums, int localSize, float partialSum) {
+        int localId = context.localIdx;
+        localSums[localId] = partialSum;
+        context.localBarrier();
+
+        for (int stride = localSize / 2; stride > 0; stride >>= 1) {
+            if (localId < stride) {
+                localSums[localId] += localSums[localId + stride];
+            }
+            context.localBarrier();
+        }
+        float result = localSums[0];
+        // localSums may be reused right after
+        context.localBarrier();
+        return result;
+    }
+
+    public static void matrixVectorGenericQ4_0Byte(KernelContext context, FloatArray x, FloatArray output, ByteArray w, int dim1, int dim0, int localWorkGroupSize) {
+        int rowId = context.groupIdx;
+        int localId = context.localIdx;
+
+        if (rowId >= dim0) {
+            return;
+        }
+
+        float[] localSums = context.allocateFloatLocalArray(localWorkGroupSize);
+        float sum = reduceWorkGroupQ4_0(context, localSums, localWorkGroupSize, matrixVectorRowPartialQ4_0Byte(localId, localWorkGroupSize, x, w, rowId, dim1));
+
+        // Thread 0 writes the result
+        if (localId == 0) {
+            output.set(rowId, sum);
+        }
+    }
+
+    public static void matrixVectorGenericWithResidualQ4_0Byte(KernelContext context, FloatArray x, FloatArray hb, ByteArray w, int n, int d, int localWorkGroupSize) {
+        // One row per workgroup (not per thread)
+        int rowId = context.groupIdx;
+        int localId = context.localIdx;
+
+        if (rowId >= d) {
+            return;
+        }
+
+        float[] localSums = context.allocateFloatLocalArray(localWorkGroupSize);
+        float sum = reduceWorkGroupQ4_0(context, localSums, localWorkGroupSize, matrixVectorRowPartialQ4_0Byte(localId, localWorkGroupSize, x, w, rowId, n));
+
+        // Thread 0 in each workgroup writes the final result
+        if (localId == 0) {
+            hb.set(rowId, hb.get(rowId) + sum);
+        }
+    }
+
+    /**
+     * Fused Q/K/V matrix-vector multiplication for Q4_0 quantized weights, see {@link #fusedQKVMatmulQ8}.
+     *
+     * Workgroup assignment: - rowId [0, dim): Q projection - rowId [dim, dim+kvDim): K projection - rowId [dim+kvDim, dim+2*kvDim): V projection
+     */
+    public static void fusedQKVMatmulQ4_0(KernelContext context, FloatArray x, FloatArray q, FloatArray k, FloatArray v, ByteArray wq, ByteArray wk, ByteArray wv, int dim, int kvDim,
+            int localWorkGroupSize) {
+        int rowId = context.groupIdx;
+        int localId = context.localIdx;
+
+        float[] localSums = context.allocateFloatLocalArray(localWorkGroupSize);
+
+        if (rowId < dim) {
+            float sum = reduceWorkGroupQ4_0(context, localSums, localWorkGroupSize, matrixVectorRowPartialQ4_0Byte(localId, localWorkGroupSize, x, wq, rowId, dim));
+            if (localId == 0) {
+                q.set(rowId, sum);
+            }
+        } else if (rowId < dim + kvDim) {
+            int kRow = rowId - dim;
+            float sum = reduceWorkGroupQ4_0(context, localSums, localWorkGroupSize, matrixVectorRowPartialQ4_0Byte(localId, localWorkGroupSize, x, wk, kRow, dim));
+            if (localId == 0) {
+                k.set(kRow, sum);
+            }
+        } else if (rowId < dim + 2 * kvDim) {
+            int vRow = rowId - dim - kvDim;
+            float sum = reduceWorkGroupQ4_0(context, localSums, localWorkGroupSize, matrixVectorRowPartialQ4_0Byte(localId, localWorkGroupSize, x, wv, vRow, dim));
+            if (localId == 0) {
+                v.set(vRow, sum);
+            }
+        }
+    }
+
+    /**
+     * Fully fused RMS normalization + FFN W1/W3 matmul with SiLU/GLU for Q4_0 weights, see {@link #fullyFusedRmsNormFFNGateUpQ8}.
+     * Each workgroup redundantly computes RMS scale to avoid cross-workgroup sync.
+     */
+    public static void fullyFusedRmsNormFFNGateUpQ4_0(
+            KernelContext context,
+            FloatArray x,               // raw input (FP32)
+            FloatArray hb,              // output
+            FloatArray rmsWeights,      // RMS norm weights
+            ByteArray w1,               // Q4_0 quantized
+            ByteArray w3,               // Q4_0 quantized
+            int dim,                    // input dimension
+            int hiddenDim,              // output dimension
+            int localWorkGroupSize) {
+
+        int rowId = context.groupIdx;
+        int localId = context.localIdx;
+
+        if (rowId >= hiddenDim) {
+            return;
+        }
+
+        float[] localSum = context.allocateFloatLocalArray(localWorkGroupSize);
+
+        // ========== RMS Norm: Compute scale (each workgroup does this redundantly) ==========
+        float sumSquares = 0.0f;
+        for (int j = localId; j < dim; j += localWorkGroupSize) {
+            float val = x.get(j);
+            sumSquares += val * val;
+        }
+        float scale = 1.0f / TornadoMath.sqrt(reduceWorkGroupQ4_0(context, localSum, localWorkGroupSize, sumSquares) / dim + 1e-5f);
+
+        // ========== W1 and W3 matmuls with inline RMS normalization ==========
+        float result1 = reduceWorkGroupQ4_0(context, localSum, localWorkGroupSize, matrixVectorRowPartialRmsNormQ4_0Byte(localId, localWorkGroupSize, x, rmsWeights, scale, w1, rowId, dim));
+        float result3 = reduceWorkGroupQ4_0(context, localSum, localWorkGroupSize, matrixVectorRowPartialRmsNormQ4_0Byte(localId, localWorkGroupSize, x, rmsWeights, scale, w3, rowId, dim));
+
+        // ========== SiLU + GLU ==========
+        if (localId == 0) {
+            float silu = result1 / (1.0f + TornadoMath.exp(-result1));
+            hb.set(rowId, silu * result3);
+        }
+    }
+
+    /**
+     * Fused RMSNorm apply + Gate/Up projection + SiLU + GLU for Q4_0 weights, see {@link #fusedRmsNormFFNGateUpQ8_0}.
+     */
+    public static void fusedRmsNormFFNGateUpQ4_0(
+            KernelContext context,
+            FloatArray x,               // raw input (FP32)
+            FloatArray hb,              // output: SiLU(x·W1) ⊙ (x·W3)
+            FloatArray rmsWeights,      // RMS norm weights
+            FloatArray rmsScale,        // tempFFN[0] = scale factor
+            ByteArray w1,               // W1 (gate) Q4_0 weights
+            ByteArray w3,               // W3 (up) Q4_0 weights
+            int inputDim,               // input dimension
+            int hiddenDim,              // hidden dimension
+            int localWorkGroupSize) {
+
+        int rowId = context.groupIdx;
+        int localId = context.localIdx;
+
+        if (rowId >= hiddenDim) {
+            return;
+        }
+
+        float scale = rmsScale.get(0);
+        float[] localSums = context.allocateFloatLocalArray(localWorkGroupSize);
+
+        float sum1 = reduceWorkGroupQ4_0(context, localSums, localWorkGroupSize, matrixVectorRowPartialRmsNormQ4_0Byte(localId, localWorkGroupSize, x, rmsWeights, scale, w1, rowId, inputDim));
+        float sum3 = reduceWorkGroupQ4_0(context, localSums, localWorkGroupSize, matrixVectorRowPartialRmsNormQ4_0Byte(localId, localWorkGroupSize, x, rmsWeights, scale, w3, rowId, inputDim));
+
+        // === SiLU + GLU ===
+        if (localId == 0) {
+            float silu = sum1 / (1.0f + TornadoMath.exp(-sum1));
+            hb.set(rowId, silu * sum3);
+        }
+    }
 }
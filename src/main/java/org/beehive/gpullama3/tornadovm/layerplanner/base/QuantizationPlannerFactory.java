@@ -12,6 +12,9 @@ import org.beehive.gpullama3.tornadovm.layerplanner.model.fp16.LlamaFP16LayerPla
 import org.beehive.gpullama3.tornadovm.layerplanner.model.fp16.Phi3FP16LayerPlanner;
 import org.beehive.gpullama3.tornadovm.layerplanner.model.fp16.Qwen2FP16LayerPlanner;
 import org.beehive.gpullama3.tornadovm.layerplanner.model.fp16.Qwen3FP16LayerPlanner;
+import org.beehive.gpullama3.tornadovm.layerplanner.model.q4_0.LlamaQ4_0LayerPlanner;
+import org.beehive.gpullama3.tornadovm.layerplanner.model.q4_0.Qwen2Q4_0LayerPlanner;
+import org.beehive.gpullama3.tornadovm.layerplanner.model.q4_0.Qwen3Q4_0LayerPlanner;
 import org.beehive.gpullama3.tornadovm.layerplanner.model.q8_0.LlamaQ8_0LayerPlanner;
 import org.beehive.gpullama3.tornadovm.layerplanner.model.q8_0.Phi3Q8_0LayerPlanner;
 import org.beehive.gpullama3.tornadovm.layerplanner.model.q8_0.Qwen2Q8_0LayerPlanner;
@@ -43,7 +46,7 @@ public class QuantizationPlannerFactory {
             case F32 -> createFP32Planner(state, model);
             case F16 -> createFP16Planner(state, model);
             case Q8_0 -> createQ8_0Planner(state, model);
-            case Q4_0  -> createQ4_0Planner(state, model);
+            case Q4_0 -> createQ4_0Planner(state, model);
             default -> throw new UnsupportedOperationException("Quantization not supported: " + quantization);
         };
     }
@@ -72,13 +75,20 @@ public class QuantizationPlannerFactory {
         };
     }
 
+    // ============ Q4_0 Planners ============
+    private static GenericLayerPlanner createQ4_0Planner(State state, Model model) {
+        return switch (model.getModelType()) {
+            case LLAMA_3, MISTRAL -> new LlamaQ4_0LayerPlanner((LlamaState) state, model);
+            case QWEN_2 -> new Qwen2Q4_0LayerPlanner((Qwen2State) state, model);
+            case QWEN_3 -> new Qwen3Q4_0LayerPlanner((Qwen3State) state, model);
+            case DEEPSEEK_R1_DISTILL_QWEN -> new Qwen2Q4_0LayerPlanner((Qwen2State) state, model);
+            default -> throw new UnsupportedOperationException("Q4_0 not supported for model: " + model.getModelType());
+        };
+    }
+
     // ============ FP32 Planners (FUTURE) ============
     private static GenericLayerPlanner createFP32Planner(State state, Model model) {
         throw new UnsupportedOperationException("FP32 planners not yet implemented");
     }
 
-    private static GenericLayerPlanner createQ4_0Planner(State state, Model model) {
-        throw new UnsupportedOperationException("Q4 planners not yet implemented");
-    }
-
 }
@@ -3,10 +3,14 @@ package org.beehive.gpullama3.tornadovm.layers;
 import org.beehive.gpullama3.inference.state.State;
 import org.beehive.gpullama3.inference.weights.Weights;
 import org.beehive.gpullama3.model.Configuration;
+import org.beehive.gpullama3.tornadovm.kernels.TransformerComputeKernels;
 import uk.ac.manchester.tornado.api.GridScheduler;
 import uk.ac.manchester.tornado.api.ImmutableTaskGraph;
 import uk.ac.manchester.tornado.api.KernelContext;
 import uk.ac.manchester.tornado.api.TaskGraph;
+import uk.ac.manchester.tornado.api.enums.DataTransferMode;
+import uk.ac.manchester.tornado.api.types.arrays.FloatArray;
+import uk.ac.manchester.tornado.api.types.arrays.IntArray;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -19,6 +23,9 @@ public abstract class AbstractLayer {
     /** Common constants used in tasks & worker-grid sizing. */
     protected static final int LOCAL_WORK_GROUP_SIZE_ALLOC = 32;
     protected static final int THREAD_SCALE_FOR_LOGITS = 8;
+    /** Device top-k of the logits: blocks of the first level (at most), lists merged per group on the next levels. */
+    protected static final int LOGITS_TOPK_BLOCKS = 1024;
+    protected static final int LOGITS_TOPK_FAN_IN = 32;
     protected static String lastTaskGraphID;
     protected final Weights weights;
     protected final Configuration config;
@@ -59,6 +66,40 @@ public abstract class AbstractLayer {
         return tg;
     }
 
+    /**
+     * Ends a logits task graph: copies the logits back to the host, or, if the sampler only needs the top-k
+     * ({@code state.logitsCandidates} set before the plan is built), reduces them on the device and only copies back the
+     * {@code k} candidates ({@code state.wrapLogitsTopKValues/Tokens}). The logits can still be copied on demand for a
+     * later generation whose sampler needs all of them.
+     */
+    protected void transferLogitsToHost(TaskGraph logits) {
+        if (state.logitsCandidates == null) {
+            logits.transferToHost(DataTransferMode.EVERY_EXECUTION, state.wrapLogits);
+            return;
+        }
+        int k = state.logitsCandidates.k();
+        int vocabularySize = config.vocabularySize();
+        // blocks of at least 4k logits, so that inserting into the candidates does not dominate the scan
+        int blocks = Math.max(1, Math.min(LOGITS_TOPK_BLOCKS, vocabularySize / (4 * k)));
+        FloatArray values = new FloatArray(blocks * k);
+        IntArray tokens = new IntArray(blocks * k);
+        logits.transferToDevice(DataTransferMode.FIRST_EXECUTION, values, tokens);
+        logits.task("topk_0", TransformerComputeKernels::logitsTopK, state.wrapLogits, vocabularySize, values, tokens, k);
+        for (int level = 1; blocks > 1; level++) {
+            blocks = (blocks + LOGITS_TOPK_FAN_IN - 1) / LOGITS_TOPK_FAN_IN;
+            FloatArray mergedValues = new FloatArray(blocks * k);
+            IntArray mergedTokens = new IntArray(blocks * k);
+            logits.transferToDevice(DataTransferMode.FIRST_EXECUTION, mergedValues, mergedTokens);
+            logits.task("topk_" + level, TransformerComputeKernels::mergeTopK, values, tokens, mergedValues, mergedTokens, k);
+            values = mergedValues;
+            tokens = mergedTokens;
+        }
+        state.wrapLogitsTopKValues = values;
+        state.wrapLogitsTopKTokens = tokens;
+        logits.transferToHost(DataTransferMode.EVERY_EXECUTION, values, tokens);
+        logits.transferToHost(DataTransferMode.UNDER_DEMAND, state.wrapLogits);
+    }
+
     public String getLastTaskGraphID() {
         return lastTaskGraphID;
     }
@@ -37,6 +37,12 @@ public class Activation extends AbstractLayer {
                         .task("updateX", TransformerComputeKernels::convertQ8_0toFP32, kernelContext, (ByteArray) state.embeddingX, state.wrapX)
                         .persistOnDevice(state.wrapX);
             }
+            case "Q4_0" -> {
+                this.activationUpdate = new TaskGraph(taskGraphHandle)
+                        .transferToDevice(DataTransferMode.EVERY_EXECUTION, state.embeddingX)
+                        .task("updateX", TransformerComputeKernels::convertQ4_0toFP32, kernelContext, (ByteArray) state.embeddingX, state.wrapX)
+                        .persistOnDevice(state.wrapX);
+            }
             default -> throw new UnsupportedOperationException("Unsupported quantization format: " + config.quantization());
         }
         // @formatter:on
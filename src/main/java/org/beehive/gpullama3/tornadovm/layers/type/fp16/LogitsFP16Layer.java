@@ -88,8 +88,8 @@ public class LogitsFP16Layer extends AbstractLayer {
                 config.vocabularySize(),                       // output dimension
                 LOCAL_WORK_GROUP_SIZE_ALLOC * THREAD_SCALE_FOR_LOGITS);
 
-        // === Transfer Results to Host ===
-        logits.transferToHost(DataTransferMode.EVERY_EXECUTION, state.wrapLogits);
+        // === Transfer Results to Host (or only the top-k, see transferLogitsToHost) ===
+        transferLogitsToHost(logits);
         return logits;
     }
     // @formatter:on
@@ -91,8 +91,8 @@ public class LogitsQ8_0Layer extends AbstractLayer {
                 config.vocabularySize(), 
                 LOCAL_WORK_GROUP_SIZE_ALLOC * THREAD_SCALE_FOR_LOGITS);
 
-        // === Transfer Results to Host ===
-        logits.transferToHost(DataTransferMode.EVERY_EXECUTION, state.wrapLogits);
+        // === Transfer Results to Host (or only the top-k, see transferLogitsToHost) ===
+        transferLogitsToHost(logits);
         return logits;
     }
     // @formatter:on
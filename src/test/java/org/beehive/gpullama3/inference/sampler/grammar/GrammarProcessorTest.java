@@ -0,0 +1,156 @@
+package org.beehive.gpullama3.inference.sampler.grammar;
+
+import org.beehive.gpullama3.tensor.standard.ArrayFloatTensor;
+import org.beehive.gpullama3.tensor.standard.FloatTensor;
+import org.beehive.gpullama3.tokenizer.Tokenizer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the token masks of {@link GrammarProcessor}, computed over the sorted vocabulary with shared prefixes, against
+ * advancing the grammar with every token on its own.
+ */
+public class GrammarProcessorTest {
+
+    private static final int SPECIAL = 0;
+    private static final int STOP = 1;
+
+    private static final String SCHEMA = """
+            {"type":"object","properties":{
+               "name":{"type":"string","maxLength":12},
+               "age":{"type":"integer"},
+               "tags":{"type":"array","items":{"enum":["a","b\\"c",3]},"minItems":1,"maxItems":3},
+               "score":{"type":["number","null"]}},
+             "required":["name","age"]}
+            """;
+
+    private static final String[] PIECES = { "{", "}", "[", "]", ",", ":", "\"", "\":", "\",", "{\"", "\"}", " ", "\n", "  ", "true", "false", "null",
+            "name", "age", "tags", "score", "\\", "\\\"", "\\n", "\\u", "0", "1", "12", "-", ".", "e", "a", "b\\\"c", "3", "é" };
+
+    private static String[] vocabulary(int size, long seed) {
+        Random random = new Random(seed);
+        List<String> vocabulary = new ArrayList<>(List.of("<s>", "</s>"));
+        vocabulary.addAll(List.of(PIECES));
+        String alphabet = "abcdefghijklmnopqrstuvwxyz ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789\"{}[],:.-_\\\n\té";
+        while (vocabulary.size() < size) {
+            StringBuilder text = new StringBuilder(random.nextInt(4) == 0 ? " " : "");
+            for (int i = 1 + random.nextInt(8); i > 0; i--) {
+                text.append(alphabet.charAt(random.nextInt(random.nextInt(4) == 0 ? alphabet.length() : 26)));
+            }
+            vocabulary.add(text.toString());
+        }
+        return vocabulary.toArray(new String[0]);
+    }
+
+    private static Tokenizer tokenizer(String[] vocabulary) {
+        return new Tokenizer() {
+            @Override
+            public String regexPattern() {
+                return null;
+            }
+
+            @Override
+            public Map<String, Integer> getSpecialTokens() {
+                return Map.of(vocabulary[SPECIAL], SPECIAL);
+            }
+
+            @Override
+            public boolean isSpecialToken(int tokenIndex) {
+                return tokenIndex == SPECIAL;
+            }
+
+            @Override
+            public boolean shouldDisplayToken(int token) {
+                return true;
+            }
+
+            @Override
+            public List<Integer> encode(String text, Set<String> allowedSpecial) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public List<Integer> encodeAsList(String text) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public String decode(List<Integer> tokens) {
+                StringBuilder text = new StringBuilder();
+                tokens.forEach(token -> text.append(vocabulary[token]));
+                return text.toString();
+            }
+        };
+    }
+
+    private static void assertMask(Grammar grammar, String[] vocabulary, GrammarState state, long[] mask) {
+        for (int token = 0; token < vocabulary.length; token++) {
+            boolean expected = switch (token) {
+                case SPECIAL -> false;
+                case STOP -> state.isAccepting();
+                default -> grammar.advance(state, vocabulary[token].codePoints().toArray()) != null;
+            };
+            boolean allowed = (mask[token >>> 6] & (1L << token)) != 0;
+            assertEquals("token " + token + " '" + vocabulary[token] + "'", expected, allowed);
+        }
+    }
+
+    @Test
+    public void masksMatchBruteForceAlongGenerations() {
+        String[] vocabulary = vocabulary(20000, 1);
+        Grammar grammar = JsonSchemaGrammar.compile(SCHEMA);
+        GrammarProcessor processor = new GrammarProcessor(grammar, tokenizer(vocabulary), vocabulary.length, Set.of(STOP));
+        Random random = new Random(2);
+        for (int run = 0; run < 3; run++) {
+            GrammarState state = grammar.start();
+            StringBuilder text = new StringBuilder();
+            for (int step = 0; step < 200; step++) {
+                long[] mask = processor.computeMask(state);
+                assertMask(grammar, vocabulary, state, mask);
+                // pick a random allowed token, stop half of the time once the text is complete
+                List<Integer> allowed = new ArrayList<>();
+                for (int token = 0; token < vocabulary.length; token++) {
+                    if ((mask[token >>> 6] & (1L << token)) != 0) {
+                        allowed.add(token);
+                    }
+                }
+                int token = allowed.contains(STOP) && random.nextBoolean() ? STOP : allowed.get(random.nextInt(allowed.size()));
+                if (token == STOP) {
+                    break;
+                }
+                text.append(vocabulary[token]);
+                state = grammar.advance(state, vocabulary[token].codePoints().toArray());
+            }
+            assertTrue("generated text is a prefix of the grammar: " + text, grammar.advance(grammar.start(), text.toString().codePoints().toArray()) != null);
+        }
+    }
+
+    @Test
+    public void processMasksDisallowedLogits() {
+        String[] vocabulary = vocabulary(2000, 3);
+        Grammar grammar = Grammar.parse("root ::= \"true\" | \"false\"");
+        GrammarProcessor processor = new GrammarProcessor(grammar, tokenizer(vocabulary), vocabulary.length, Set.of(STOP));
+        FloatTensor logits = ArrayFloatTensor.allocate(vocabulary.length);
+        processor.process(logits);
+        for (int token = 0; token < vocabulary.length; token++) {
+            boolean allowed = token != SPECIAL && token != STOP && ("true".startsWith(vocabulary[token]) || "false".startsWith(vocabulary[token]));
+            assertEquals("token " + token + " '" + vocabulary[token] + "'", allowed ? 0f : Float.NEGATIVE_INFINITY, logits.getFloat(token), 0f);
+        }
+        processor.accept(List.of(PIECES).indexOf("true") + 2);
+        assertTrue(processor.isAccepting());
+        logits = ArrayFloatTensor.allocate(vocabulary.length);
+        processor.process(logits);
+        assertEquals(0f, logits.getFloat(STOP), 0f);
+        processor.accept(STOP);
+        assertFalse(processor.isAccepting());
+    }
+}
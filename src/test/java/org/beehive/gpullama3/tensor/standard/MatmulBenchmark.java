@@ -0,0 +1,120 @@
+package org.beehive.gpullama3.tensor.standard;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded matrix-vector product of a weight matrix: {@link FloatTensor#matmulRows} against one {@link FloatTensor#dot}
+ * per output row, i.e. the per-row {@code vectorDot} of each type. Only BF16 overrides {@code matmulRows}, for the other types
+ * both benchmarks run the same per-row dot and measure a candidate multi-row kernel once one is added.
+ * <p>
+ * Run with {@code mvn test-compile} followed by
+ * {@code java -cp target/test-classes:target/classes:<test classpath> org.beehive.gpullama3.tensor.standard.MatmulBenchmark},
+ * or with any JMH runner.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+// the per-row Q8_0 and Q4_0 dots support 128 and 256-bit vectors only
+@Fork(value = 1, jvmArgsAppend = { "--enable-preview", "--add-modules", "jdk.incubator.vector", "-Dllama.VectorBitSize=256" })
+public class MatmulBenchmark {
+
+    @Param({ "Q8_0", "Q4_0", "F16", "BF16" })
+    String type;
+
+    // rows x columns of the weight matrix, e.g. the attention projections of a 2048-dim model
+    @Param({ "2048" })
+    int dim0;
+
+    @Param({ "2048" })
+    int dim1;
+
+    FloatTensor weights;
+    FloatTensor x;
+    FloatTensor out;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        int size = dim0 * dim1;
+        weights = switch (type) {
+            case "Q8_0" -> new Q8_0FloatTensor(size, blocks(size, 34, random));
+            case "Q4_0" -> new Q4_0FloatTensor(size, blocks(size, 18, random));
+            case "F16" -> new FP16FloatTensor(size, halfFloats(size, random, false));
+            case "BF16" -> new BF16FloatTensor(size, halfFloats(size, random, true));
+            default -> throw new IllegalArgumentException("Unsupported type: " + type);
+        };
+        float[] values = new float[dim1];
+        for (int i = 0; i < dim1; i++) {
+            values[i] = random.nextFloat() * 2 - 1;
+        }
+        x = new ArrayFloatTensor(values);
+        out = ArrayFloatTensor.allocate(dim0);
+    }
+
+    // Blocks of 32 values: a random F16 scale followed by random quants.
+    private static MemorySegment blocks(int size, int blockBytes, Random random) {
+        byte[] bytes = new byte[size / 32 * blockBytes];
+        random.nextBytes(bytes);
+        for (int offset = 0; offset < bytes.length; offset += blockBytes) {
+            short scale = Float.floatToFloat16(random.nextFloat() * 0.02f);
+            bytes[offset] = (byte) scale;
+            bytes[offset + 1] = (byte) (scale >> 8);
+        }
+        return copy(bytes);
+    }
+
+    private static MemorySegment halfFloats(int size, Random random, boolean bfloat16) {
+        byte[] bytes = new byte[size * 2];
+        for (int i = 0; i < size; i++) {
+            float x = random.nextFloat() * 2 - 1;
+            short value = bfloat16 ? (short) (Float.floatToRawIntBits(x) >>> 16) : Float.floatToFloat16(x);
+            bytes[2 * i] = (byte) value;
+            bytes[2 * i + 1] = (byte) (value >> 8);
+        }
+        return copy(bytes);
+    }
+
+    private static MemorySegment copy(byte[] bytes) {
+        MemorySegment segment = Arena.ofAuto().allocate(bytes.length, 64);
+        segment.copyFrom(MemorySegment.ofArray(bytes));
+        return segment;
+    }
+
+    @Benchmark
+    public FloatTensor perRowDot() {
+        for (int i = 0; i < dim0; i++) {
+            out.setFloat(i, weights.dot(i * dim1, x, 0, dim1));
+        }
+        return out;
+    }
+
+    @Benchmark
+    public FloatTensor multiRow() {
+        weights.matmulRows(x, out, dim1, 0, dim0);
+        return out;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(MatmulBenchmark.class.getSimpleName()).build()).run();
+    }
+}
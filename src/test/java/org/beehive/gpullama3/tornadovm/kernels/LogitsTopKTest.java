@@ -0,0 +1,93 @@
+package org.beehive.gpullama3.tornadovm.kernels;
+
+import org.beehive.gpullama3.inference.sampler.Sampler;
+import org.junit.Test;
+import uk.ac.manchester.tornado.api.types.arrays.FloatArray;
+import uk.ac.manchester.tornado.api.types.arrays.IntArray;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the device top-k kernels ({@link TransformerComputeKernels#logitsTopK}, {@link TransformerComputeKernels#mergeTopK})
+ * as plain Java, level by level, and checks the candidates against a full sort of the logits and against
+ * {@link Sampler#TENSOR_ARGMAX}.
+ */
+public class LogitsTopKTest {
+
+    /**
+     * Candidates of the whole vocabulary, reduced from {@code blocks} first-level lists by merging {@code fanIn} lists at a time.
+     */
+    private static IntArray topK(FloatArray logits, int k, int blocks, int fanIn, FloatArray[] valuesOut) {
+        FloatArray values = new FloatArray(blocks * k);
+        IntArray tokens = new IntArray(blocks * k);
+        TransformerComputeKernels.logitsTopK(logits, logits.getSize(), values, tokens, k);
+        while (blocks > 1) {
+            blocks = (blocks + fanIn - 1) / fanIn;
+            FloatArray mergedValues = new FloatArray(blocks * k);
+            IntArray mergedTokens = new IntArray(blocks * k);
+            TransformerComputeKernels.mergeTopK(values, tokens, mergedValues, mergedTokens, k);
+            values = mergedValues;
+            tokens = mergedTokens;
+        }
+        valuesOut[0] = values;
+        return tokens;
+    }
+
+    private static void assertTopK(FloatArray logits, int k, int blocks, int fanIn) {
+        FloatArray[] values = new FloatArray[1];
+        IntArray tokens = topK(logits, k, blocks, fanIn, values);
+        int[] expected = IntStream.range(0, logits.getSize())
+                .boxed()
+                .sorted(Comparator.<Integer>comparingDouble(logits::get).reversed().thenComparingInt(token -> token))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        String config = "k=" + k + " blocks=" + blocks + " fanIn=" + fanIn + " vocabulary=" + logits.getSize();
+        for (int i = 0; i < k; i++) {
+            if (i < expected.length) {
+                assertEquals(config + " candidate " + i, expected[i], tokens.get(i));
+                assertEquals(config + " candidate " + i, logits.get(expected[i]), values[0].get(i), 0f);
+            } else {
+                assertEquals(config + " padding " + i, -1, tokens.get(i));
+            }
+        }
+        assertEquals(config + " argmax", Sampler.TENSOR_ARGMAX.sampleToken(logits), tokens.get(0));
+    }
+
+    private static FloatArray logits(int size, int distinctValues, long seed) {
+        Random random = new Random(seed);
+        FloatArray logits = new FloatArray(size);
+        for (int i = 0; i < size; i++) {
+            // few distinct values: many ties, which must be broken by token as argmax does
+            logits.set(i, distinctValues > 0 ? random.nextInt(distinctValues) : (float) random.nextGaussian() * 4);
+        }
+        return logits;
+    }
+
+    @Test
+    public void matchesFullSort() {
+        for (int k : new int[] { 1, 2, 40 }) {
+            for (int blocks : new int[] { 1, 7, 100, 1024 }) {
+                assertTopK(logits(32000, 0, k * blocks), k, blocks, 32);
+                assertTopK(logits(5000, 0, k + blocks), k, blocks, 3);
+            }
+        }
+    }
+
+    @Test
+    public void breaksTiesLikeArgmax() {
+        for (int k : new int[] { 1, 5, 40 }) {
+            assertTopK(logits(20000, 7, k), k, 1024, 32);
+            assertTopK(logits(20000, 1, k), k, 100, 4);
+        }
+    }
+
+    @Test
+    public void padsSmallVocabularies() {
+        assertTopK(logits(10, 0, 1), 40, 1, 32);
+        assertTopK(logits(30, 0, 2), 40, 8, 2);
+    }
+}
@@ -0,0 +1,85 @@
+package org.beehive.gpullama3.tornadovm.kernels;
+
+import org.beehive.gpullama3.tensor.standard.Q4_0FloatTensor;
+import org.junit.Test;
+import uk.ac.manchester.tornado.api.types.arrays.ByteArray;
+import uk.ac.manchester.tornado.api.types.arrays.FloatArray;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs the per-thread parts of the Q4_0 matrix-vector kernels ({@link TransformerComputeKernelsLayered#matrixVectorRowPartialQ4_0Byte},
+ * {@link TransformerComputeKernelsLayered#matrixVectorRowPartialRmsNormQ4_0Byte}) as plain Java, summed over every thread of
+ * the workgroup, and checks them against the dot products of the dequantized {@link Q4_0FloatTensor} rows.
+ */
+public class Q4_0KernelsTest {
+
+    private static final int BLOCK_SIZE = 32;
+    private static final int BLOCK_BYTES = 18;
+
+    private static final int ROWS = 64;
+    private static final int COLUMNS = 256;
+
+    private static byte[] randomBlocks(int rows, int columns, Random random) {
+        byte[] bytes = new byte[rows * columns / BLOCK_SIZE * BLOCK_BYTES];
+        random.nextBytes(bytes);
+        for (int offset = 0; offset < bytes.length; offset += BLOCK_BYTES) {
+            short scale = Float.floatToFloat16((random.nextBoolean() ? 1 : -1) * (0.01f + random.nextFloat() * 0.02f));
+            bytes[offset] = (byte) scale;
+            bytes[offset + 1] = (byte) (scale >> 8);
+        }
+        return bytes;
+    }
+
+    private static float[] randomVector(int size, float min, float max, Random random) {
+        float[] values = new float[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = min + random.nextFloat() * (max - min);
+        }
+        return values;
+    }
+
+    @Test
+    public void partialsMatchQ4_0FloatTensor() {
+        Random random = new Random(1);
+        byte[] bytes = randomBlocks(ROWS, COLUMNS, random);
+        MemorySegment segment = Arena.ofAuto().allocate(bytes.length);
+        segment.copyFrom(MemorySegment.ofArray(bytes));
+        Q4_0FloatTensor tensor = new Q4_0FloatTensor(ROWS * COLUMNS, segment);
+        ByteArray w = ByteArray.fromArray(bytes);
+
+        float[] xs = randomVector(COLUMNS, -1f, 1f, random);
+        float[] rmsWeights = randomVector(COLUMNS, 0.9f, 1.1f, random);
+        float ss = 0f;
+        for (float value : xs) {
+            ss += value * value;
+        }
+        float scale = (float) (1.0 / Math.sqrt(ss / COLUMNS + 1e-5f));
+        FloatArray x = FloatArray.fromArray(xs);
+        FloatArray rms = FloatArray.fromArray(rmsWeights);
+
+        for (int row = 0; row < ROWS; row++) {
+            float expected = 0f;
+            float expectedNorm = 0f;
+            for (int j = 0; j < COLUMNS; j++) {
+                float weight = tensor.getFloat(row * COLUMNS + j);
+                expected += weight * xs[j];
+                expectedNorm += weight * rmsWeights[j] * scale * xs[j];
+            }
+            for (int localSize : new int[] { 1, 2, 4, 8, 16, 32 }) {
+                float sum = 0f;
+                float sumNorm = 0f;
+                for (int localId = 0; localId < localSize; localId++) {
+                    sum += TransformerComputeKernelsLayered.matrixVectorRowPartialQ4_0Byte(localId, localSize, x, w, row, COLUMNS);
+                    sumNorm += TransformerComputeKernelsLayered.matrixVectorRowPartialRmsNormQ4_0Byte(localId, localSize, x, rms, scale, w, row, COLUMNS);
+                }
+                assertEquals("row " + row + " localSize " + localSize, expected, sum, 1e-3f);
+                assertEquals("row " + row + " localSize " + localSize + " rms", expectedNorm, sumNorm, 1e-3f);
+            }
+        }
+    }
+}